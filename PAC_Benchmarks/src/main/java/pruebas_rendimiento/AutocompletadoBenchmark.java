@@ -0,0 +1,76 @@
+package pruebas_rendimiento;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_index.IndicePrefijos;
+import data_index.Sugerencia;
+
+/**
+ * Pruebas de rendimiento de las sugerencias del autocompletado
+ *
+ * El índice de prefijos se llena directamente, sin base de datos ni límite de memoria, con el
+ * número de títulos del parámetro "titulos" (200.000 por defecto), formados con palabras de un
+ * vocabulario de 50.000. La prueba sugerir pide 10 sugerencias para prefijos de ese vocabulario,
+ * y sugerirPrefijoComun para un prefijo que comparten todos los títulos. Los resultados se dan en
+ * microsegundos por consulta.
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AutocompletadoBenchmark {
+	//Número de prefijos distintos que se repiten en orden
+	private static final int CONSULTAS = 4096;
+
+	@Param("200000")
+	public int titulos;
+
+	private IndicePrefijos indice;
+	private String[] prefijos;
+	private int siguiente;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		this.indice = new IndicePrefijos(Long.MAX_VALUE);
+		Random aleatorio = new Random(7);
+		for (int i = 1; i <= this.titulos; i++) {
+			this.indice.anadir(i, "palabra" + aleatorio.nextInt(50000) + " de la palabra" + aleatorio.nextInt(50000));
+		}
+		this.prefijos = new String[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			this.prefijos[i] = "palabra" + aleatorio.nextInt(5000);
+		}
+		System.out.printf("%nÍndice de prefijos: %d títulos, %d MB estimados%n", this.indice.getNumElementos(),
+				this.indice.getMemoriaUsada() / (1024 * 1024));
+	}
+
+	@Benchmark
+	public List<Sugerencia> sugerir() {
+		this.siguiente = (this.siguiente + 1) % CONSULTAS;
+		return this.indice.sugerir(this.prefijos[this.siguiente], 10);
+	}
+
+	@Benchmark
+	public List<Sugerencia> sugerirPrefijoComun() {
+		return this.indice.sugerir("palabra", 10);
+	}
+}
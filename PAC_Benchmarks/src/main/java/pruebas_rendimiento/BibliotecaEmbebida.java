@@ -0,0 +1,163 @@
+package pruebas_rendimiento;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import data_access_object.FactoriaSesiones;
+
+/**
+ * Estado compartido por las pruebas de rendimiento
+ *
+ * Crea una SessionFactory con la configuración de la aplicación (hibernate.cfg.xml) y el perfil
+ * de base de datos "h2" (H2 en memoria, ver FactoriaSesiones), y la llena con un volumen de datos que se elige
+ * con el parámetro "prestamos": 10.000 por defecto, o 1.000.000 y 10.000.000 con
+ * -p prestamos=1000000. Por cada préstamo hay 1/20 libros y 1/100 lectores, de forma que cada
+ * libro tiene 20 préstamos y cada lector 100, repartidos en los últimos años.
+ *
+ * Los libros cuyo id es múltiplo de 10 tienen su último préstamo pendiente y vencido (no están
+ * disponibles); el resto están disponibles. Los datos se insertan con sentencias INSERT ... SELECT
+ * de H2 en bloques, sin pasar por Hibernate, para que la preparación no dure más que las pruebas.
+ *
+ * Como la configuración se lee con FactoriaSesiones, puede cambiarse en cada ejecución con
+ * propiedades de sistema para comparar configuraciones, por ejemplo
+ * -jvmArgs "-Dhibernate.cache.use_second_level_cache=false".
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+public class BibliotecaEmbebida {
+	public static final int PRESTAMOS_POR_LIBRO = 20;
+	public static final int PRESTAMOS_POR_LECTOR = 100;
+	//Días entre dos préstamos consecutivos del mismo libro
+	public static final int DIAS_ENTRE_PRESTAMOS = 20;
+	//Filas que se insertan en cada transacción al llenar la base de datos
+	private static final int FILAS_POR_BLOQUE = 100000;
+	//Números de desde a hasta en la columna n (la columna X de SYSTEM_RANGE, que no admite minúsculas)
+	private static final String RANGO = "(SELECT \"X\" AS n FROM SYSTEM_RANGE(%d, %d))";
+
+	@Param("10000")
+	public int prestamos;
+
+	public SessionFactory sessionFactory;
+	public int numLibros;
+	public int numLectores;
+
+	/*
+	 * Método para crear y llenar la base de datos antes de cada serie de pruebas.
+	 */
+	@Setup(Level.Trial)
+	public void preparar() {
+		this.numLibros = Math.max(this.prestamos / PRESTAMOS_POR_LIBRO, 10);
+		this.numLectores = Math.max(this.prestamos / PRESTAMOS_POR_LECTOR, 1);
+		this.sessionFactory = crearSessionFactory(new Properties());
+		long inicio = System.nanoTime();
+		llenar();
+		System.out.printf("%nBase de datos preparada en %d ms: %d libros, %d lectores, %d préstamos%n",
+				(System.nanoTime() - inicio) / 1000000, this.numLibros, this.numLectores, this.prestamos);
+	}
+
+	@TearDown(Level.Trial)
+	public void cerrar() {
+		if (this.sessionFactory != null) {
+			this.sessionFactory.close();
+		}
+	}
+
+	/*
+	 * Método para crear una SessionFactory con el perfil de la base de datos en memoria.
+	 *
+	 * Recibe propiedades de Hibernate que se superponen a las de la aplicación.
+	 * La base de datos se crea vacía (hibernate.hbm2ddl.auto = create).
+	 */
+	public static SessionFactory crearSessionFactory(Properties propiedades) {
+		Properties configuracion = new Properties();
+		//Con las estadísticas activas Hibernate escribe las métricas de cada sesión, y se mediría la escritura en consola
+		configuracion.setProperty("hibernate.session.events.log", "false");
+		configuracion.putAll(propiedades);
+		return FactoriaSesiones.crearSessionFactory(FactoriaSesiones.PERFIL_EMBEBIDO, configuracion);
+	}
+
+	//Id de un libro cualquiera
+	public int libroAleatorio() {
+		return ThreadLocalRandom.current().nextInt(this.numLibros) + 1;
+	}
+
+	//Id de un libro que al llenar la base de datos estaba disponible
+	public int libroDisponibleAleatorio() {
+		int idLibro = libroAleatorio();
+		return idLibro % 10 == 0 ? idLibro - 1 : idLibro;
+	}
+
+	//Id de un lector cualquiera
+	public int lectorAleatorio() {
+		return ThreadLocalRandom.current().nextInt(this.numLectores) + 1;
+	}
+
+	/*
+	 * Método para llenar la base de datos.
+	 *
+	 * El préstamo n es del libro (n - 1) % numLibros + 1 y del lector (n - 1) % numLectores + 1.
+	 * Los préstamos se hacen por rondas: en cada ronda se presta una vez cada libro, y cada
+	 * ronda es DIAS_ENTRE_PRESTAMOS días posterior a la anterior. La última ronda empezó hace
+	 * DIAS_ENTRE_PRESTAMOS días, así que sus préstamos pendientes ya han vencido.
+	 */
+	private void llenar() {
+		int rondas = (this.prestamos + this.numLibros - 1) / this.numLibros;
+		insertarPorBloques(this.numLibros, "INSERT INTO biblioteca.libro "
+				+ "(id_libro, version, titulo, autor, ano_publicacion, disponible) "
+				+ "SELECT n, 0, CONCAT('Libro ', n), CONCAT('Autor ', MOD(n, 1000)), 1900 + MOD(n, 124), MOD(n, 10) <> 0 "
+				+ "FROM " + RANGO);
+		insertarPorBloques(this.numLectores, "INSERT INTO biblioteca.lector "
+				+ "(id_lector, version, nombre, apellidos, email, fecha_nacimiento) "
+				+ "SELECT n, 0, CONCAT('Nombre ', MOD(n, 500)), CONCAT('Apellido ', MOD(n, 2000)), "
+				+ "CONCAT('lector', n, '@biblioteca.es'), DATEADD('DAY', -6570 - MOD(n, 20000), CURRENT_DATE) "
+				+ "FROM " + RANGO);
+		//Ronda del préstamo n: (n - 1) / numLibros. Fecha del préstamo: hace (rondas - ronda) * DIAS_ENTRE_PRESTAMOS días
+		String fechaPrestamo = "DATEADD('DAY', -(" + rondas + " - (n - 1) / " + this.numLibros + ") * "
+				+ DIAS_ENTRE_PRESTAMOS + ", CURRENT_DATE)";
+		String pendiente = "(n > " + (this.prestamos - this.numLibros) + " AND MOD(MOD(n - 1, " + this.numLibros
+				+ ") + 1, 10) = 0)";
+		insertarPorBloques(this.prestamos, "INSERT INTO biblioteca.prestamo "
+				+ "(id_prestamo, version, id_libro_fk, id_lector_fk, fecha_prestamo, fecha_devolucion, fecha_vencimiento) "
+				+ "SELECT n, 0, MOD(n - 1, " + this.numLibros + ") + 1, MOD(n - 1, " + this.numLectores + ") + 1, "
+				+ fechaPrestamo + ", CASE WHEN " + pendiente + " THEN NULL ELSE DATEADD('DAY', 10, " + fechaPrestamo + ") END, "
+				+ "DATEADD('DAY', 15, " + fechaPrestamo + ") "
+				+ "FROM " + RANGO);
+		//Las secuencias de los ids continúan después de los datos insertados
+		reiniciarSecuencia("libro_seq", this.numLibros);
+		reiniciarSecuencia("lector_seq", this.numLectores);
+		reiniciarSecuencia("prestamo_seq", this.prestamos);
+		this.sessionFactory.getCache().evictAllRegions();
+	}
+
+	//Ejecuta una sentencia INSERT ... SELECT FROM RANGO en bloques de FILAS_POR_BLOQUE filas
+	private void insertarPorBloques(int filas, String sentencia) {
+		for (int desde = 1; desde <= filas; desde += FILAS_POR_BLOQUE) {
+			int hasta = Math.min(desde + FILAS_POR_BLOQUE - 1, filas);
+			ejecutar(String.format(sentencia, desde, hasta));
+		}
+	}
+
+	//La secuencia debe devolver un valor mayor que el último id más el tamaño de su bloque (increment_size)
+	private void reiniciarSecuencia(String secuencia, int ultimoId) {
+		ejecutar("ALTER SEQUENCE " + secuencia + " RESTART WITH " + (ultimoId + 1000));
+	}
+
+	private void ejecutar(String sentencia) {
+		try (Session session = this.sessionFactory.openSession()) {
+			Transaction tx = session.beginTransaction();
+			session.createNativeQuery(sentencia).executeUpdate();
+			tx.commit();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package pruebas_rendimiento;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import app.BibliotecaService;
+import data_access_object.ConflictoConcurrenciaException;
+
+/**
+ * Prueba de rendimiento del préstamo y la devolución de un libro
+ *
+ * Cada operación presta un libro disponible a un lector con BibliotecaService.prestar y lo
+ * devuelve con BibliotecaService.devolver, el mismo camino que siguen los menús de la aplicación.
+ * Con varios hilos (-t) dos hilos pueden elegir el mismo libro; en ese caso el préstamo se
+ * rechaza o la devolución lanza ConflictoConcurrenciaException, y la operación se cuenta igual.
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BibliotecaServiceBenchmark {
+	private BibliotecaService servicio;
+	private BibliotecaEmbebida biblioteca;
+
+	@Setup(Level.Trial)
+	public void preparar(BibliotecaEmbebida biblioteca) {
+		this.biblioteca = biblioteca;
+		this.servicio = new BibliotecaService(biblioteca.sessionFactory);
+	}
+
+	@Benchmark
+	public void prestarYDevolver(Blackhole blackhole) {
+		int idLibro = this.biblioteca.libroDisponibleAleatorio();
+		blackhole.consume(this.servicio.prestar(idLibro, this.biblioteca.lectorAleatorio()));
+		try {
+			blackhole.consume(this.servicio.devolver(idLibro, null));
+		} catch (ConflictoConcurrenciaException e) {
+			blackhole.consume(e);
+		}
+	}
+}
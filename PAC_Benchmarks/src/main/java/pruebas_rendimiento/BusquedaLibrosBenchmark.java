@@ -0,0 +1,78 @@
+package pruebas_rendimiento;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_index.IndiceTextoLibros;
+import data_index.ResultadoBusqueda;
+
+/**
+ * Pruebas de rendimiento de la búsqueda por palabras del índice de libros
+ *
+ * El índice se llena directamente, sin base de datos, con el número de libros del parámetro
+ * "libros" (300.000 por defecto). Cada título tiene tres palabras de un vocabulario de 20.000,
+ * y el 10% de los títulos tiene además la palabra "Historia". La prueba buscar alterna
+ * consultas de la palabra frecuente con otra palabra y de una palabra del título con el autor;
+ * buscarPalabraFrecuente busca solo la palabra que aparece en el 10% de los libros. Los resultados
+ * se dan en microsegundos por consulta.
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BusquedaLibrosBenchmark {
+	//Número de consultas distintas que se repiten en orden
+	private static final int CONSULTAS = 4096;
+
+	@Param("300000")
+	public int libros;
+
+	private IndiceTextoLibros indice;
+	private String[] consultas;
+	private int siguiente;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		this.indice = new IndiceTextoLibros();
+		Random aleatorio = new Random(42);
+		for (int i = 1; i <= this.libros; i++) {
+			String titulo = (i % 10 == 0 ? "Historia " : "") + "palabra" + aleatorio.nextInt(20000) + " palabra"
+					+ aleatorio.nextInt(20000) + " palabra" + aleatorio.nextInt(20000);
+			this.indice.indexar(i, titulo, "Autor" + aleatorio.nextInt(2000));
+		}
+		this.consultas = new String[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			this.consultas[i] = i % 2 == 0 ? "historia palabra" + aleatorio.nextInt(20000)
+					: "palabra" + aleatorio.nextInt(20000) + " autor" + aleatorio.nextInt(2000);
+		}
+	}
+
+	@Benchmark
+	public List<ResultadoBusqueda> buscar() {
+		this.siguiente = (this.siguiente + 1) % CONSULTAS;
+		return this.indice.buscar(this.consultas[this.siguiente], 10);
+	}
+
+	@Benchmark
+	public List<ResultadoBusqueda> buscarPalabraFrecuente() {
+		return this.indice.buscar("historia", 10);
+	}
+}
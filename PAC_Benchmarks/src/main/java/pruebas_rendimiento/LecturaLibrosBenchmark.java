@@ -0,0 +1,65 @@
+package pruebas_rendimiento;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_access_object.LibroDAO;
+import data_model.Libro;
+
+/**
+ * Pruebas de rendimiento de la lectura de solo lectura
+ *
+ * Comparan la lectura de todos los libros con una transacción normal, en la que Hibernate
+ * guarda una copia del estado de cada entidad para el dirty checking y hace flush en el commit,
+ * y con la transacción de solo lectura de LibroDAO.obtenerLibros. Los resultados se dan en
+ * milisegundos por operación; la memoria reservada por operación se obtiene añadiendo
+ * "-prof gc" a la ejecución (gc.alloc.rate.norm).
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LecturaLibrosBenchmark {
+	private SessionFactory sessionFactory;
+
+	@Setup(Level.Trial)
+	public void preparar(BibliotecaEmbebida biblioteca) {
+		this.sessionFactory = biblioteca.sessionFactory;
+	}
+
+	@Benchmark
+	public List<Libro> lecturaEscritura() {
+		try (Session sesion = this.sessionFactory.openSession()) {
+			Transaction tx = sesion.beginTransaction();
+			List<Libro> libros = sesion.createQuery("FROM Libro", Libro.class).getResultList();
+			tx.commit();
+			return libros;
+		}
+	}
+
+	@Benchmark
+	public List<Libro> soloLectura() {
+		try (Session sesion = this.sessionFactory.openSession()) {
+			return new LibroDAO(sesion).obtenerLibros();
+		}
+	}
+}
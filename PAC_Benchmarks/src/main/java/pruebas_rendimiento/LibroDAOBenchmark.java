@@ -0,0 +1,64 @@
+package pruebas_rendimiento;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_access_object.LibroDAO;
+import data_model.Libro;
+
+/**
+ * Pruebas de rendimiento de LibroDAO
+ *
+ * Miden la inserción de un libro, la lectura de un libro por su id y la lista de libros
+ * disponibles sobre la base de datos de BibliotecaEmbebida. Los resultados se dan en
+ * microsegundos por operación, con sus percentiles (modo SampleTime).
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LibroDAOBenchmark {
+	private LibroDAO libroDAO;
+	private BibliotecaEmbebida biblioteca;
+
+	@Setup(Level.Trial)
+	public void preparar(BibliotecaEmbebida biblioteca) {
+		this.biblioteca = biblioteca;
+		this.libroDAO = new LibroDAO(biblioteca.sessionFactory);
+	}
+
+	@Benchmark
+	public int insertarLibro() {
+		Libro libro = new Libro();
+		libro.setTitulo("Libro de prueba");
+		libro.setAutor("Autor de prueba");
+		libro.setAnoPublicacion(2024);
+		return this.libroDAO.insertarLibro(libro);
+	}
+
+	@Benchmark
+	public Libro obtenerLibro() {
+		return this.libroDAO.obtenerLibro(this.biblioteca.libroAleatorio());
+	}
+
+	@Benchmark
+	public List<Libro> obtenerLibrosDisponibles() {
+		return this.libroDAO.obtenerLibrosDisponibles();
+	}
+}
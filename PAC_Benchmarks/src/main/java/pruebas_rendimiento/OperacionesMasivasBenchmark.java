@@ -0,0 +1,129 @@
+package pruebas_rendimiento;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_access_object.LectorDAO;
+import data_access_object.LibroDAO;
+import data_access_object.PrestamoDAO;
+import data_access_object.ResultadoDevolucion;
+import data_model.Lector;
+import data_model.Libro;
+import data_model.Prestamo;
+
+/**
+ * Pruebas de rendimiento de las operaciones masivas
+ *
+ * Miden la inserción de TAMANO_LOTE libros y préstamos con insertarLibros e insertarPrestamos,
+ * la devolución de TAMANO_DEVOLUCION libros en una transacción y el recorrido por bloques de
+ * todos los préstamos vencidos. Los resultados se dan en milisegundos por operación.
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OperacionesMasivasBenchmark {
+	public static final int TAMANO_LOTE = 1000;
+	public static final int TAMANO_DEVOLUCION = 100;
+
+	private LibroDAO libroDAO;
+	private PrestamoDAO prestamoDAO;
+	//Libros y lectores ya guardados a los que se asignan los préstamos insertados
+	private List<Libro> libros;
+	private List<Lector> lectores;
+
+	@Setup(Level.Trial)
+	public void preparar(BibliotecaEmbebida biblioteca) {
+		this.libroDAO = new LibroDAO(biblioteca.sessionFactory);
+		this.prestamoDAO = new PrestamoDAO(biblioteca.sessionFactory);
+		this.libros = this.libroDAO.obtenerLibros(0, TAMANO_LOTE);
+		this.lectores = new LectorDAO(biblioteca.sessionFactory).obtenerLectores(0, TAMANO_LOTE);
+	}
+
+	/**
+	 * Libros prestados antes de cada devolución
+	 *
+	 * Antes de cada llamada presta TAMANO_DEVOLUCION libros disponibles consecutivos, a partir
+	 * de uno elegido al azar, para que la prueba solo mida su devolución.
+	 */
+	@State(Scope.Thread)
+	public static class LotePrestado {
+		public List<Integer> idsLibro = new ArrayList<>();
+
+		@Setup(Level.Invocation)
+		public void prestar(BibliotecaEmbebida biblioteca) {
+			PrestamoDAO prestamoDAO = new PrestamoDAO(biblioteca.sessionFactory);
+			this.idsLibro.clear();
+			int idLibro = biblioteca.libroAleatorio();
+			for (int i = 0; i < biblioteca.numLibros && this.idsLibro.size() < TAMANO_DEVOLUCION; i++) {
+				idLibro = idLibro % biblioteca.numLibros + 1;
+				if (idLibro % 10 != 0) {
+					prestamoDAO.prestar(idLibro, biblioteca.lectorAleatorio());
+					this.idsLibro.add(idLibro);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public List<Integer> insertarLibros() {
+		List<Libro> lote = new ArrayList<>(TAMANO_LOTE);
+		for (int i = 0; i < TAMANO_LOTE; i++) {
+			Libro libro = new Libro();
+			libro.setTitulo("Libro en lote " + i);
+			libro.setAutor("Autor en lote");
+			libro.setAnoPublicacion(2024);
+			lote.add(libro);
+		}
+		return this.libroDAO.insertarLibros(lote);
+	}
+
+	@Benchmark
+	public List<Integer> insertarPrestamos() {
+		ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+		List<Prestamo> lote = new ArrayList<>(TAMANO_LOTE);
+		for (int i = 0; i < TAMANO_LOTE; i++) {
+			Prestamo prestamo = new Prestamo(this.libros.get(aleatorio.nextInt(this.libros.size())),
+					this.lectores.get(aleatorio.nextInt(this.lectores.size())));
+			//Préstamos ya devueltos, para no cambiar la disponibilidad de los libros
+			prestamo.setFechaDevolucion(prestamo.getFechaPrestamo());
+			lote.add(prestamo);
+		}
+		return this.prestamoDAO.insertarPrestamos(lote);
+	}
+
+	@Benchmark
+	public Map<Integer, ResultadoDevolucion> devolverLote(LotePrestado lote) {
+		return this.prestamoDAO.devolver(lote.idsLibro, null);
+	}
+
+	@Benchmark
+	public long procesarPrestamosVencidos() {
+		long[] dias = new long[1];
+		LocalDate hoy = LocalDate.now();
+		this.prestamoDAO.procesarPrestamosVencidos(hoy, PrestamoDAO.TAMANO_BLOQUE_VENCIDOS,
+				bloque -> bloque.forEach(fila -> dias[0] += ChronoUnit.DAYS.between(fila.getFechaVencimiento(), hoy)));
+		return dias[0];
+	}
+}
@@ -0,0 +1,56 @@
+package pruebas_rendimiento;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_access_object.PrestamoDAO;
+import data_model.FilaPrestamo;
+import data_model.Prestamo;
+
+/**
+ * Pruebas de rendimiento de las consultas de PrestamoDAO
+ *
+ * Miden el historial de préstamos de un lector (PRESTAMOS_POR_LECTOR préstamos con su libro
+ * y su lector) y la lectura de una página de préstamos vencidos.
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PrestamoDAOBenchmark {
+	private PrestamoDAO prestamoDAO;
+	private BibliotecaEmbebida biblioteca;
+
+	@Setup(Level.Trial)
+	public void preparar(BibliotecaEmbebida biblioteca) {
+		this.biblioteca = biblioteca;
+		this.prestamoDAO = new PrestamoDAO(biblioteca.sessionFactory);
+	}
+
+	@Benchmark
+	public List<Prestamo> obtenerHistorialPrestamos() {
+		return this.prestamoDAO.obtenerHistorialPrestamos(this.biblioteca.lectorAleatorio());
+	}
+
+	@Benchmark
+	public List<FilaPrestamo> obtenerPrestamosVencidos() {
+		return this.prestamoDAO.obtenerPrestamosVencidos(LocalDate.now(), null, PrestamoDAO.TAMANO_BLOQUE_VENCIDOS);
+	}
+}
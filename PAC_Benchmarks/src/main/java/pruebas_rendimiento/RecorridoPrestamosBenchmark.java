@@ -0,0 +1,60 @@
+package pruebas_rendimiento;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import data_access_object.PrestamoDAO;
+
+/**
+ * Pruebas de rendimiento del recorrido de los préstamos para un listado
+ *
+ * Comparan el recorrido de todos los préstamos cargando las entidades con su libro y su
+ * lector (recorrerPrestamos) y con la proyección en FilaPrestamo (recorrerFilasPrestamos),
+ * leyendo en ambos casos el título del libro y el nombre del lector. Los resultados se dan en
+ * milisegundos por operación; la memoria reservada por operación se obtiene añadiendo
+ * "-prof gc" a la ejecución (gc.alloc.rate.norm).
+ *
+ * @author Simon Gil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RecorridoPrestamosBenchmark {
+	private PrestamoDAO prestamoDAO;
+
+	@Setup(Level.Trial)
+	public void preparar(BibliotecaEmbebida biblioteca) {
+		this.prestamoDAO = new PrestamoDAO(biblioteca.sessionFactory);
+	}
+
+	@Benchmark
+	public long recorrerPrestamos(Blackhole agujero) {
+		return this.prestamoDAO.recorrerPrestamos(p -> {
+			agujero.consume(p.getLibro().getTitulo());
+			agujero.consume(p.getLector().getNombre());
+		});
+	}
+
+	@Benchmark
+	public long recorrerFilasPrestamos(Blackhole agujero) {
+		return this.prestamoDAO.recorrerFilasPrestamos(f -> {
+			agujero.consume(f.getTituloLibro());
+			agujero.consume(f.getNombreLector());
+		});
+	}
+}
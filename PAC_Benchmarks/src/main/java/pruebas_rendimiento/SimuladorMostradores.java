@@ -0,0 +1,376 @@
+package pruebas_rendimiento;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import app.BibliotecaService;
+import data_access_object.ConflictoConcurrenciaException;
+import data_access_object.HistogramaLatencias;
+import data_access_object.MetricasDAO;
+import data_access_object.MetricasPool;
+import data_access_object.ResultadoDevolucion;
+import data_access_object.ResultadoPrestamo;
+import data_index.MapaDisponibilidad;
+import data_model.Prestamo;
+
+/**
+ * Simulador de carga de varios mostradores de la biblioteca a la vez
+ *
+ * Cada mostrador es un hilo con su propio BibliotecaService que repite, hasta que termina la
+ * simulación, una pausa (el tiempo que tarda en atender al siguiente lector) y una operación
+ * elegida al azar según la mezcla configurada: préstamo de un libro, devolución, consulta del
+ * historial de un lector o lista de libros disponibles. La pausa sigue una distribución
+ * exponencial con la media indicada, como las llegadas de lectores independientes.
+ *
+ * Los libros que se prestan se guardan en una cola común y las devoluciones los sacan de ella,
+ * de forma que cada mostrador devuelve libros que ha prestado cualquier otro. Al empezar, la cola
+ * contiene los libros que BibliotecaEmbebida deja prestados. Si la cola está vacía cuando toca una
+ * devolución, el mostrador pasa al siguiente lector sin contar la operación.
+ *
+ * Al terminar muestra, por operación, las operaciones por segundo, los percentiles de latencia
+ * y el porcentaje de rechazos (el libro ya estaba prestado o devuelto por otro mostrador),
+ * conflictos (ConflictoConcurrenciaException) y errores, seguidos de las métricas del pool de
+ * conexiones y de los DAO. Las operaciones del calentamiento no se cuentan.
+ *
+ * La base de datos es la de BibliotecaEmbebida (H2 en memoria), así que no necesita un servidor.
+ * Se ejecuta con "java -cp benchmarks.jar pruebas_rendimiento.SimuladorMostradores", seguido de
+ * parámetros clave=valor:
+ * mostradores=200 duracion=60 calentamiento=10 pausa=100 prestamos=10000
+ * mezcla=prestamo:35,devolucion:35,historial:20,disponibles:10
+ * La duración y el calentamiento se indican en segundos y la pausa media en milisegundos. La
+ * configuración de Hibernate puede cambiarse con propiedades de sistema, por ejemplo
+ * -Dhibernate.hikari.maximumPoolSize=50 (ver FactoriaSesiones).
+ *
+ * @author Simon Gil
+ */
+public class SimuladorMostradores {
+	//Segundos entre dos mensajes de progreso
+	private static final int SEGUNDOS_PROGRESO = 10;
+
+	//Operaciones que realiza un mostrador
+	public enum Operacion {
+		PRESTAMO, DEVOLUCION, HISTORIAL, DISPONIBLES;
+
+		public String getNombre() {
+			return name().toLowerCase();
+		}
+	}
+
+	//Resultado de una operación. NINGUNO: no había libros prestados que devolver, y no se cuenta
+	private enum Desenlace {
+		CORRECTO, RECHAZADO, CONFLICTO, ERROR, NINGUNO
+	}
+
+	//Latencias y resultados de un tipo de operación
+	private static class EstadisticasOperacion {
+		private HistogramaLatencias latencias = new HistogramaLatencias();
+		private LongAdder rechazos = new LongAdder();
+		private LongAdder conflictos = new LongAdder();
+	}
+
+	private int mostradores = 200;
+	private int duracion = 60;
+	private int calentamiento = 10;
+	private int pausa = 100;
+	private int prestamos = 10000;
+	private Map<Operacion, Integer> mezcla = new EnumMap<>(Operacion.class);
+
+	private BibliotecaEmbebida biblioteca;
+	private Map<Operacion, EstadisticasOperacion> estadisticas = new EnumMap<>(Operacion.class);
+	//Libros prestados pendientes de devolución
+	private Queue<Integer> prestados = new ConcurrentLinkedQueue<>();
+	private LongAdder realizadas = new LongAdder();
+	private volatile long inicioMedicion;
+	private volatile long fin;
+
+	public SimuladorMostradores() {
+		this.mezcla.put(Operacion.PRESTAMO, 35);
+		this.mezcla.put(Operacion.DEVOLUCION, 35);
+		this.mezcla.put(Operacion.HISTORIAL, 20);
+		this.mezcla.put(Operacion.DISPONIBLES, 10);
+		for (Operacion operacion : Operacion.values()) {
+			this.estadisticas.put(operacion, new EstadisticasOperacion());
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		SimuladorMostradores simulador = new SimuladorMostradores();
+		try {
+			simulador.configurar(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Uso: SimuladorMostradores [mostradores=200] [duracion=60] [calentamiento=10] [pausa=100] "
+					+ "[prestamos=10000] [mezcla=prestamo:35,devolucion:35,historial:20,disponibles:10]");
+			return;
+		}
+		simulador.ejecutar();
+	}
+
+	/*
+	 * Método para leer la configuración de la simulación.
+	 *
+	 * Recibe parámetros con el formato clave=valor. Lanza IllegalArgumentException si alguno
+	 * no es válido.
+	 */
+	public void configurar(String[] args) {
+		for (String arg : args) {
+			int igual = arg.indexOf('=');
+			if (igual < 0) {
+				throw new IllegalArgumentException("Parámetro no válido: " + arg);
+			}
+			String clave = arg.substring(0, igual).trim();
+			String valor = arg.substring(igual + 1).trim();
+			switch (clave) {
+			case "mostradores":
+				this.mostradores = leerEntero(clave, valor, 1);
+				break;
+			case "duracion":
+				this.duracion = leerEntero(clave, valor, 1);
+				break;
+			case "calentamiento":
+				this.calentamiento = leerEntero(clave, valor, 0);
+				break;
+			case "pausa":
+				this.pausa = leerEntero(clave, valor, 0);
+				break;
+			case "prestamos":
+				this.prestamos = leerEntero(clave, valor, 1);
+				break;
+			case "mezcla":
+				this.mezcla = leerMezcla(valor);
+				break;
+			default:
+				throw new IllegalArgumentException("Parámetro desconocido: " + clave);
+			}
+		}
+	}
+
+	/*
+	 * Método para ejecutar la simulación.
+	 *
+	 * Prepara la base de datos, lanza los mostradores, muestra el progreso cada
+	 * SEGUNDOS_PROGRESO segundos y, al terminar, el informe de resultados.
+	 */
+	public void ejecutar() throws InterruptedException {
+		this.biblioteca = new BibliotecaEmbebida();
+		this.biblioteca.prestamos = this.prestamos;
+		this.biblioteca.preparar();
+		//Como la aplicación, construye el mapa de disponibilidad antes de la primera operación
+		MapaDisponibilidad.de(this.biblioteca.sessionFactory);
+		try {
+			for (int idLibro = 10; idLibro <= this.biblioteca.numLibros; idLibro += 10) {
+				this.prestados.add(idLibro);
+			}
+			System.out.printf("Simulando %d mostradores durante %d s (%d s de calentamiento), pausa media %d ms, mezcla %s%n",
+					this.mostradores, this.duracion, this.calentamiento, this.pausa, mezclaComoTexto());
+			long inicio = System.nanoTime();
+			this.inicioMedicion = inicio + TimeUnit.SECONDS.toNanos(this.calentamiento);
+			this.fin = this.inicioMedicion + TimeUnit.SECONDS.toNanos(this.duracion);
+			ExecutorService hilos = Executors.newFixedThreadPool(this.mostradores);
+			for (int i = 0; i < this.mostradores; i++) {
+				hilos.execute(this::atender);
+			}
+			hilos.shutdown();
+			while (!hilos.awaitTermination(SEGUNDOS_PROGRESO, TimeUnit.SECONDS)) {
+				System.out.printf("%d s: %d operaciones%n",
+						TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - inicio), this.realizadas.sum());
+			}
+			System.out.println(informe());
+			MetricasPool.Metricas pool = MetricasPool.de(this.biblioteca.sessionFactory);
+			if (pool != null) {
+				System.out.println(pool.resumen());
+			}
+			System.out.println(MetricasDAO.de(this.biblioteca.sessionFactory).resumen());
+		} finally {
+			this.biblioteca.cerrar();
+		}
+	}
+
+	//Bucle de un mostrador: pausa, operación y registro del resultado hasta el final de la simulación
+	private void atender() {
+		BibliotecaService servicio = new BibliotecaService(this.biblioteca.sessionFactory);
+		ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+		while (esperar(aleatorio)) {
+			Operacion operacion = elegirOperacion(aleatorio);
+			long inicio = System.nanoTime();
+			Desenlace desenlace;
+			try {
+				desenlace = realizar(operacion, servicio);
+			} catch (ConflictoConcurrenciaException e) {
+				desenlace = Desenlace.CONFLICTO;
+			} catch (RuntimeException e) {
+				desenlace = Desenlace.ERROR;
+			}
+			long nanos = System.nanoTime() - inicio;
+			if (desenlace == Desenlace.NINGUNO) {
+				continue;
+			}
+			this.realizadas.increment();
+			if (inicio >= this.inicioMedicion) {
+				registrar(operacion, desenlace, nanos);
+			}
+		}
+	}
+
+	//Realiza una operación con el servicio del mostrador
+	private Desenlace realizar(Operacion operacion, BibliotecaService servicio) {
+		switch (operacion) {
+		case PRESTAMO:
+			int idLibro = this.biblioteca.libroDisponibleAleatorio();
+			ResultadoPrestamo prestamo = servicio.prestar(idLibro, this.biblioteca.lectorAleatorio());
+			if (prestamo == ResultadoPrestamo.REALIZADO) {
+				this.prestados.add(idLibro);
+				return Desenlace.CORRECTO;
+			}
+			return prestamo == ResultadoPrestamo.LIBRO_NO_DISPONIBLE ? Desenlace.RECHAZADO : Desenlace.ERROR;
+		case DEVOLUCION:
+			Integer idDevuelto = this.prestados.poll();
+			if (idDevuelto == null) {
+				return Desenlace.NINGUNO;
+			}
+			ResultadoDevolucion devolucion = servicio.devolver(idDevuelto, null);
+			if (devolucion == ResultadoDevolucion.DEVUELTO) {
+				return Desenlace.CORRECTO;
+			}
+			return devolucion == ResultadoDevolucion.SIN_PRESTAMO_PENDIENTE ? Desenlace.RECHAZADO : Desenlace.ERROR;
+		case HISTORIAL:
+			List<Prestamo> historial = servicio.historialPrestamos(this.biblioteca.lectorAleatorio());
+			return historial != null ? Desenlace.CORRECTO : Desenlace.ERROR;
+		default:
+			servicio.librosDisponibles();
+			return Desenlace.CORRECTO;
+		}
+	}
+
+	private void registrar(Operacion operacion, Desenlace desenlace, long nanos) {
+		EstadisticasOperacion estadisticasOperacion = this.estadisticas.get(operacion);
+		estadisticasOperacion.latencias.registrar(nanos, desenlace == Desenlace.ERROR);
+		if (desenlace == Desenlace.RECHAZADO) {
+			estadisticasOperacion.rechazos.increment();
+		} else if (desenlace == Desenlace.CONFLICTO) {
+			estadisticasOperacion.conflictos.increment();
+		}
+	}
+
+	//Espera el tiempo de atención al siguiente lector. Devuelve false si la simulación ha terminado
+	private boolean esperar(ThreadLocalRandom aleatorio) {
+		if (this.pausa > 0) {
+			long nanos = (long) (-Math.log(1 - aleatorio.nextDouble()) * TimeUnit.MILLISECONDS.toNanos(this.pausa));
+			long restante = this.fin - System.nanoTime();
+			if (nanos >= restante) {
+				return false;
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(nanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return System.nanoTime() < this.fin;
+	}
+
+	//Elige una operación con probabilidad proporcional a su peso en la mezcla
+	private Operacion elegirOperacion(ThreadLocalRandom aleatorio) {
+		int total = 0;
+		for (int peso : this.mezcla.values()) {
+			total += peso;
+		}
+		int valor = aleatorio.nextInt(total);
+		for (Map.Entry<Operacion, Integer> entrada : this.mezcla.entrySet()) {
+			valor -= entrada.getValue();
+			if (valor < 0) {
+				return entrada.getKey();
+			}
+		}
+		throw new IllegalStateException("La mezcla de operaciones está vacía");
+	}
+
+	/*
+	 * Método para obtener el informe de resultados.
+	 *
+	 * Devuelve un String con una línea por operación y una línea con el total,
+	 * apto para mostrarse por consola.
+	 */
+	public String informe() {
+		StringBuilder informe = new StringBuilder();
+		informe.append(String.format("%nResultados de %d mostradores en %d s:%n", this.mostradores, this.duracion));
+		informe.append(String.format("%-12s %10s %10s %9s %10s %8s %10s %10s %10s %10s%n", "Operación", "Llamadas",
+				"Op/s", "Rechazos", "Conflictos", "Errores", "p50 (ms)", "p95 (ms)", "p99 (ms)", "Máx (ms)"));
+		long llamadas = 0, rechazos = 0, conflictos = 0, errores = 0;
+		for (Operacion operacion : Operacion.values()) {
+			EstadisticasOperacion e = this.estadisticas.get(operacion);
+			HistogramaLatencias h = e.latencias;
+			informe.append(String.format("%-12s %10d %10.1f %8.2f%% %9.2f%% %7.2f%% %10.3f %10.3f %10.3f %10.3f%n",
+					operacion.getNombre(), h.getLlamadas(), h.getLlamadas() / (double) this.duracion,
+					porcentaje(e.rechazos.sum(), h.getLlamadas()), porcentaje(e.conflictos.sum(), h.getLlamadas()),
+					porcentaje(h.getErrores(), h.getLlamadas()), h.getP50Millis(), h.getPercentilMillis(0.95),
+					h.getP99Millis(), h.getMaximoMillis()));
+			llamadas += h.getLlamadas();
+			rechazos += e.rechazos.sum();
+			conflictos += e.conflictos.sum();
+			errores += h.getErrores();
+		}
+		informe.append(String.format("%-12s %10d %10.1f %8.2f%% %9.2f%% %7.2f%%", "total", llamadas,
+				llamadas / (double) this.duracion, porcentaje(rechazos, llamadas), porcentaje(conflictos, llamadas),
+				porcentaje(errores, llamadas)));
+		return informe.toString();
+	}
+
+	private static double porcentaje(long parte, long total) {
+		return total == 0 ? 0 : 100.0 * parte / total;
+	}
+
+	private static int leerEntero(String clave, String valor, int minimo) {
+		try {
+			int numero = Integer.parseInt(valor);
+			if (numero >= minimo) {
+				return numero;
+			}
+		} catch (NumberFormatException e) {
+			//Se informa del error igual que si el número fuera menor que el mínimo
+		}
+		throw new IllegalArgumentException("El valor de " + clave + " debe ser un número entero mayor o igual que " + minimo);
+	}
+
+	//Lee una mezcla con el formato "prestamo:35,devolucion:35,historial:20,disponibles:10"
+	private static Map<Operacion, Integer> leerMezcla(String valor) {
+		Map<Operacion, Integer> mezcla = new EnumMap<>(Operacion.class);
+		for (String parte : valor.split(",")) {
+			String[] operacionPeso = parte.split(":");
+			Operacion operacion = null;
+			for (Operacion o : Operacion.values()) {
+				if (o.getNombre().equals(operacionPeso[0].trim())) {
+					operacion = o;
+				}
+			}
+			if (operacion == null || operacionPeso.length != 2) {
+				throw new IllegalArgumentException("Operación no válida en la mezcla: " + parte);
+			}
+			mezcla.put(operacion, leerEntero("la operación " + operacion.getNombre(), operacionPeso[1].trim(), 0));
+		}
+		int total = 0;
+		for (int peso : mezcla.values()) {
+			total += peso;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("La mezcla debe tener al menos una operación con peso mayor que 0");
+		}
+		return mezcla;
+	}
+
+	private String mezclaComoTexto() {
+		List<String> partes = new ArrayList<>();
+		this.mezcla.forEach((operacion, peso) -> partes.add(operacion.getNombre() + ":" + peso));
+		return String.join(",", partes);
+	}
+}
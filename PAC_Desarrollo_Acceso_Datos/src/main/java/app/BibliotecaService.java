@@ -1,18 +1,32 @@
 package app;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.InputMismatchException;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 
+import data_access_object.ConflictoConcurrenciaException;
 import data_access_object.LectorDAO;
 import data_access_object.LibroDAO;
 import data_access_object.PrestamoDAO;
+import data_access_object.ResultadoDevolucion;
+import data_access_object.ResultadoPrestamo;
+import data_index.Autocompletado;
+import data_index.IndiceTextoLibros;
+import data_index.MapaDisponibilidad;
+import data_index.ResultadoBusqueda;
+import data_index.Sugerencia;
 import data_model.Lector;
 import data_model.Libro;
 import data_model.Prestamo;
@@ -30,9 +44,12 @@ import data_model.Prestamo;
  * @author Simon Gil
  */
 public class BibliotecaService {
+	//Número de libros disponibles que se cargan en cada consulta de librosDisponibles
+	private static final int PAGINA_DISPONIBLES = 1000;
 	private LibroDAO libroDAO;
 	private LectorDAO lectorDAO;
 	private PrestamoDAO prestamoDAO;
+	private SessionFactory sessionFactory;
 
 	public BibliotecaService(Session session) {
 		/**
@@ -42,23 +59,35 @@ public class BibliotecaService {
 		this.libroDAO = new LibroDAO(session);
 		this.lectorDAO = new LectorDAO(session);
 		this.prestamoDAO = new PrestamoDAO(session);
+		this.sessionFactory = session.getSessionFactory();
+	}
+
+	/*
+	 * Constructor que recibe una SessionFactory.
+	 * 
+	 * Los DAO abren una sesión y una transacción por cada operación, por lo que
+	 * el servicio no mantiene ninguna sesión abierta entre operaciones.
+	 */
+	public BibliotecaService(SessionFactory sessionFactory) {
+		this.libroDAO = new LibroDAO(sessionFactory);
+		this.lectorDAO = new LectorDAO(sessionFactory);
+		this.prestamoDAO = new PrestamoDAO(sessionFactory);
+		this.sessionFactory = sessionFactory;
 	}
 
 	/*
 	 * Método para mostrar una lista con todos los libros
 	 * 
 	 * Imprime por consola una lista con todos los libros de la base de datos.
+	 * Los libros se recorren con un cursor, sin cargar la tabla completa en memoria, y
+	 * con una consulta de proyección que solo lee los datos que se muestran.
 	 */
 	public void mostrarLibros() {
 		printSeparador();
-		List<Libro> libros = this.libroDAO.obtenerLibros();
 		System.out.println("MOSTRANDO TODOS LOS LIBROS DE LA BASE DE DATOS");
 		printSeparador();
-		if (!libros.isEmpty()) {
-			for (Libro l : libros) {
-				System.out.println(l.toString());
-			}
-		} else {
+		long numLibros = this.libroDAO.recorrerFilasLibros(l -> System.out.println(l.toString()));
+		if (numLibros == 0) {
 			System.out.println("No se han encontrado libros en la base de datos.");
 		}
 		printSeparador();
@@ -68,34 +97,76 @@ public class BibliotecaService {
 	 * Metodo para mostrar los libros disponibles
 	 * 
 	 * Imprime por consola los libros que puede ser prestados.
+	 * Igual que mostrarLibros, los libros se recorren con un cursor y una consulta de proyección.
 	 */
 	public void mostrarLibrosDisponibles() {
-		List<Libro> librosDisponibles = this.libroDAO.obtenerLibrosDisponibles();
 		printSeparador();
 		System.out.println("MOSTRANDO TODOS LOS LIBROS DISPONIBLES PARA PRÉSTAMO");
 		printSeparador();
-		if (!librosDisponibles.isEmpty()) {
-			for (Libro l : librosDisponibles) {
-				System.out.println(l.toString());
-			}
-		} else {
+		long numLibros = this.libroDAO.recorrerFilasLibrosDisponibles(l -> System.out.println(l.toString()));
+		if (numLibros == 0) {
 			System.out.println("No se ha encontrado ningún libro disponible en la base de datos.");
 		}
 		printSeparador();
 	}
 
+	/*
+	 * Método para mostrar los libros que pueden prestarse en el diálogo de préstamo
+	 * 
+	 * Muestra los mismos libros que mostrarLibrosDisponibles, pero los obtiene con librosDisponibles,
+	 * del mapa de disponibilidad y de la caché de segundo nivel, ya que la lista se repite con cada préstamo.
+	 */
+	private void mostrarLibrosParaPrestamo() {
+		printSeparador();
+		System.out.println("MOSTRANDO TODOS LOS LIBROS DISPONIBLES PARA PRÉSTAMO");
+		printSeparador();
+		for (Libro l : librosDisponibles()) {
+			System.out.println(l.toString());
+		}
+		printSeparador();
+	}
+
+	/*
+	 * Método para obtener los libros disponibles para préstamo sin mostrarlos por consola
+	 * 
+	 * Devuelve los mismos libros que muestra mostrarLibrosDisponibles, en orden de ID.
+	 * Los IDs se obtienen del mapa de disponibilidad, que se actualiza con cada préstamo y
+	 * devolución, y los libros de la caché de segundo nivel en páginas de PAGINA_DISPONIBLES,
+	 * de forma que dos listados sin cambios entre ellos no consultan la base de datos.
+	 */
+	public List<Libro> librosDisponibles() {
+		MapaDisponibilidad mapa = MapaDisponibilidad.de(this.sessionFactory);
+		List<Libro> disponibles = new ArrayList<>(mapa.contarDisponibles());
+		List<Integer> ids = mapa.obtenerDisponibles(0, PAGINA_DISPONIBLES);
+		while (!ids.isEmpty()) {
+			List<Libro> libros = this.libroDAO.obtenerLibros(ids);
+			if (libros == null) {
+				return this.libroDAO.obtenerLibrosDisponibles();
+			}
+			for (Libro libro : libros) {
+				if (libro.isDisponible()) {
+					disponibles.add(libro);
+				}
+			}
+			ids = mapa.obtenerDisponibles(ids.get(ids.size() - 1), PAGINA_DISPONIBLES);
+		}
+		return disponibles;
+	}
+
 	/*
 	 * Método para mostrar los libros prestados a un lector.
 	 * 
 	 * Recibe el ID de un lector y mostrará por consola una lista con los libros
 	 * que están actualmente prestados al lector.
 	 * También mostrará un mensaje oportuno si no hay ningún libro actualmente prestado al lector.
+	 * El lector y sus libros se consultan a la vez.
 	 * 
 	 */
 	public void mostrarLibrosPrestadosLector(int idLector) {
-		Lector lector = this.lectorDAO.obtenerLector(idLector);
+		CompletableFuture<List<Libro>> librosFuturo = this.libroDAO.librosActualmentePrestadosLectorAsincrono(idLector);
+		Lector lector = this.lectorDAO.obtenerLectorAsincrono(idLector).join();
 		if (lector != null) {
-			List<Libro> librosPrestadosLector = this.libroDAO.librosActualmentePrestadosLector(idLector);
+			List<Libro> librosPrestadosLector = librosFuturo.join();
 			printSeparador();
 			System.out.println("MOSTRANDO LIBROS PRESTADOS A " + lector.getNombre().toUpperCase() + " "
 					+ lector.getApellidos().toUpperCase());
@@ -119,15 +190,17 @@ public class BibliotecaService {
 	 * todos los prestamos realizados por el lector, incluyendo los ya devueltos.
 	 * Muestra mensajes oportunos en caso de que el historial esté vacío o no
 	 * haya sido posible encontrar el historial.
+	 * El lector y su historial se consultan a la vez.
 	 * 
 	 */
 	public void mostrarHistorialPrestamos(int idLector) {
 		try {
-			Lector lector = this.lectorDAO.obtenerLector(idLector);
+			CompletableFuture<List<Prestamo>> historialFuturo = this.prestamoDAO.obtenerHistorialPrestamosAsincrono(idLector);
+			Lector lector = this.lectorDAO.obtenerLectorAsincrono(idLector).join();
 			printSeparador();
 			System.out.println("MOSTRANDO HISTORIAL DE PRÉSTAMOS DE: " + lector.getNombre() + " " + lector.getApellidos());
 			printSeparador();
-			List<Prestamo> historial = this.prestamoDAO.obtenerHistorialPrestamos(idLector);
+			List<Prestamo> historial = historialFuturo.join();
 			if (!historial.isEmpty()) {
 				for (Prestamo p : historial) {
 					System.out.println(p.toString());
@@ -143,40 +216,105 @@ public class BibliotecaService {
 		}
 	}
 
+	/*
+	 * Método para obtener el historial de préstamos de un lector sin mostrarlo por consola
+	 * 
+	 * Recibe el ID de un lector y devuelve sus préstamos, con su libro y su lector,
+	 * o null si se produce un error.
+	 */
+	public List<Prestamo> historialPrestamos(int idLector) {
+		return this.prestamoDAO.obtenerHistorialPrestamos(idLector);
+	}
+
+	/*
+	 * Método para buscar libros por título o autor por consola
+	 * 
+	 * Pide el texto a buscar y muestra los libros que contienen todas sus palabras, del más
+	 * relevante al menos relevante, sin tener en cuenta mayúsculas ni tildes. La búsqueda se
+	 * realiza en el índice en memoria (IndiceTextoLibros), que se construye la primera vez.
+	 * 
+	 */
+	public void buscarLibros() {
+		Scanner scanner = new Scanner(System.in);
+		System.out.print("Introduzca las palabras del título o del autor que desea buscar: ");
+		String consulta = scanner.nextLine();
+		List<ResultadoBusqueda> resultados = IndiceTextoLibros.de(this.sessionFactory).buscar(consulta, 20);
+		if (resultados.isEmpty()) {
+			System.out.println("No se ha encontrado ningún libro que contenga todas las palabras buscadas.");
+		} else {
+			System.out.println("Libros encontrados (máximo 20):");
+			for (ResultadoBusqueda resultado : resultados) {
+				System.out.println(resultado);
+			}
+		}
+	}
+
+	/*
+	 * Métodos para autocompletar títulos de libros y nombres de lectores
+	 * 
+	 * Reciben el texto escrito hasta el momento y devuelven como máximo "maximo" sugerencias
+	 * cuyo título, nombre o apellidos empiezan por él. Están pensados para las interfaces que
+	 * muestran sugerencias mientras se escribe, por lo que no acceden a la base de datos: 
+	 * utilizan los índices en memoria de Autocompletado, que se cargan la primera vez.
+	 */
+	public List<Sugerencia> sugerirTitulos(String prefijo, int maximo) {
+		return Autocompletado.de(this.sessionFactory).sugerirTitulos(prefijo, maximo);
+	}
+
+	public List<Sugerencia> sugerirLectores(String prefijo, int maximo) {
+		return Autocompletado.de(this.sessionFactory).sugerirLectores(prefijo, maximo);
+	}
+
 	/*
 	 * Método para realizar un préstamo por consola
 	 * 
 	 * Ejecuta todo el diálogo por consola para obtener un objeto
 	 * préstamo e insertarlo en la base de datos.
+	 * Antes de empezar comprueba que haya libros disponibles y lectores, leyendo una sola fila
+	 * de la tabla. Los libros disponibles se cuentan en el mapa de disponibilidad, sin consultar
+	 * la base de datos; como el mapa no refleja los cambios hechos fuera de los DAO, si no
+	 * encuentra ninguno se cuentan en la base de datos antes de rechazar el préstamo. La
+	 * disponibilidad del libro elegido se comprueba con el propio libro, que se lee igualmente
+	 * para mostrar su título.
 	 * 
 	 */
 	public void prestarLibro() {
 		Scanner scanner = new Scanner(System.in);
 		int idLibro, idLector;
-		if (!libroDAO.obtenerLibros().isEmpty() && !lectorDAO.obtenerLectores().isEmpty()) {
-			mostrarLibrosDisponibles();
+		MapaDisponibilidad mapa = MapaDisponibilidad.de(this.sessionFactory);
+		if (mapa.contarDisponibles() > 0 && lectorDAO.existenLectores()) {
+			mostrarLibrosParaPrestamo();
 			System.out.print("Busque el ID del libro a prestar en la lista anterior e introdúzcalo a continuación: ");
 			idLibro = leerEntero(scanner);
-			Libro libro = this.libroDAO.obtenerLibro(idLibro);
+			// Un libro prestado o inexistente se descarta con el mapa antes de pedir el lector;
+			// prestar vuelve a comprobar la disponibilidad en la base de datos
+			Libro libro = mapa.estaDisponible(idLibro) ? this.libroDAO.obtenerLibro(idLibro) : null;
 			if (libro != null) {
 				mostrarLectores();
 				System.out.print("Busque el ID del lector en la lista anterior e introdúzcalo a continuación: ");
 				idLector = leerEntero(scanner);
 				Lector lector = this.lectorDAO.obtenerLector(idLector);
 				if (lector != null) {
-					if (libro.isDisponible()) {
-						this.prestamoDAO.insertarPrestamo(libro, lector);
-						libro.setDisponible(false);
-						this.libroDAO.actualizarLibro(libro);
+					switch (prestar(idLibro, idLector)) {
+					case REALIZADO:
 						System.out.println("Préstamo realizado. Se ha prestado el libro con titulo: "
 								+ libro.getTitulo() + ", a: " + lector.getNombre() + " " + lector.getApellidos());
-					} else
+						break;
+					case LIBRO_NO_DISPONIBLE:
 						System.out.println("No se puede realizar el préstamo: El libro no está disponible");
+						break;
+					case LECTOR_DESCONOCIDO:
+						System.out.println("El ID del lector introducido no es válido, por lo que no se puede realizar el préstamo.");
+						break;
+					default:
+						System.out.println("Se ha producido un error y el préstamo no se ha realizado.");
+					}
 
 				} else
 					System.out.println("El ID del lector introducido no es válido, por lo que no se puede realizar el préstamo.");
 			} else
-				System.out.println("El ID del libro introducido no es válido, por lo que no se puede realizar el préstamo.");
+				System.out.println("El ID del libro introducido no es válido o el libro no está disponible, "
+						+ "por lo que no se puede realizar el préstamo.");
 		} else
 			System.out.println("No se puede realizar un préstamo porque, "
 					+ "o bien no hay libros disponibles, o no hay lectores en la base de datos.");
@@ -197,18 +335,17 @@ public class BibliotecaService {
 		LocalDate fecha;
 		Scanner scanner = new Scanner(System.in);
 		// Comprobamos si hay algún préstamo pendiente de devolución
-		if (!prestamoDAO.obtenerPrestamos().stream().filter(p -> p.getFechaDevolucion() == null).toList().isEmpty()) {
+		if (prestamoDAO.existenPrestamosPendientes()) {
 			mostrarLectores();
 			System.out.print("Introduzca el ID del lector de la lista que devolverá un préstamo: ");
 			idLector = leerEntero(scanner);
-			if (this.lectorDAO.obtenerLector(idLector) != null) {
+			if (this.lectorDAO.existeLector(idLector)) {
 				mostrarLibrosPrestadosLector(idLector);
 				// Comprobamos si el lector tiene algún prestamo pendiente
-				if (!this.libroDAO.librosActualmentePrestadosLector(idLector).isEmpty()) {
+				if (this.prestamoDAO.existenPrestamosPendientesLector(idLector)) {
 					System.out.print("Introduzca el ID del Libro de la lista anterior que será devuelto: ");
 					idLibro = leerEntero(scanner);
-					Libro libro = this.libroDAO.obtenerLibro(idLibro);
-					if (libro != null && this.libroDAO.librosActualmentePrestadosLector(idLector).contains(libro)) {
+					if (this.prestamoDAO.existePrestamoPendiente(idLibro, idLector)) {
 						System.out.print("Desea utilizar la fecha actual(1) o introducirla manualmente(2): ");
 						int opcionFecha = leerEntero(scanner);
 						if (opcionFecha == 2) {
@@ -217,21 +354,19 @@ public class BibliotecaService {
 							fecha = LocalDate.now();
 
 						try {
-							Prestamo prestamo = this.prestamoDAO.obtenerPrestamoPorLibro(idLibro);
-							// Si no se ha introducido fecha, tomamos la fecha actual
-							if (fecha == null) {
-								prestamo.setFechaDevolucion(LocalDate.now());
-							} else
-								prestamo.setFechaDevolucion(fecha);
-							this.prestamoDAO.actualizarPrestamo(prestamo);
-							// Actualizamos el libro devuelto para que esté disponible
-							libro = prestamo.getLibro();
-							libro.setDisponible(true);
-							this.libroDAO.actualizarLibro(libro);
-							System.out.println("El préstamo ha sido devuelto correctamente.");
-						} catch (Exception e) {
-							System.out.println("Error en la devolución del préstamo: ");
-							e.printStackTrace();
+							switch (devolver(idLibro, fecha)) {
+							case DEVUELTO:
+								System.out.println("El préstamo ha sido devuelto correctamente.");
+								break;
+							case SIN_PRESTAMO_PENDIENTE:
+								System.out.println("El préstamo ya ha sido devuelto por otro usuario.");
+								break;
+							default:
+								System.out.println("Se ha producido un error y el préstamo no se ha devuelto.");
+							}
+						} catch (ConflictoConcurrenciaException e) {
+							System.out.println("El préstamo ha sido modificado por otro usuario mientras se realizaba "
+									+ "la devolución. Compruebe su estado y vuelva a intentarlo.");
 						}
 					} else
 						System.out.println("El ID introducido no corresponde a ningún libro prestado a este lector.");
@@ -243,6 +378,110 @@ public class BibliotecaService {
 			System.out.println("No hay ningún préstamo pendiente de devolución.");
 	}
 
+	/*
+	 * Método para prestar un libro a un lector sin interacción con el usuario
+	 * 
+	 * Es la operación que realiza prestarLibro una vez elegidos el libro y el lector, y la que
+	 * utilizan las pruebas de rendimiento. La disponibilidad del libro se comprueba y se actualiza
+	 * en la misma operación que inserta el préstamo (PrestamoDAO.prestar), con un UPDATE que solo
+	 * reclama el libro si sigue disponible. El mapa de disponibilidad no se utiliza para rechazarlo,
+	 * porque puede ir por detrás de la base de datos.
+	 */
+	public ResultadoPrestamo prestar(int idLibro, int idLector) {
+		return this.prestamoDAO.prestar(idLibro, idLector);
+	}
+
+	/*
+	 * Método para devolver un libro sin interacción con el usuario
+	 * 
+	 * Cierra el préstamo pendiente del libro con la fecha indicada (la actual si es null) y marca
+	 * el libro como disponible en una única transacción. Lanza ConflictoConcurrenciaException si
+	 * otro usuario devuelve el mismo libro a la vez.
+	 */
+	public ResultadoDevolucion devolver(int idLibro, LocalDate fecha) {
+		return this.prestamoDAO.devolver(Collections.singletonList(idLibro), fecha).get(idLibro);
+	}
+
+	/*
+	 * Método para devolver varios libros a la vez por consola
+	 * 
+	 * Pensado para procesar de una vez las devoluciones del buzón. Lee una lista de IDs de libro
+	 * separados por comas o espacios y la fecha de devolución, cierra todos los préstamos
+	 * pendientes en una sola operación y muestra el resultado de cada libro.
+	 * 
+	 */
+	public void devolucionLote() {
+		Scanner scanner = new Scanner(System.in);
+		if (!prestamoDAO.existenPrestamosPendientes()) {
+			System.out.println("No hay préstamos pendientes de devolución.");
+			return;
+		}
+		System.out.print("Introduzca los ID de los libros devueltos separados por comas o espacios: ");
+		List<Integer> idsLibro = new ArrayList<>();
+		for (String id : scanner.nextLine().split("[,\\s]+")) {
+			try {
+				if (!id.isEmpty())
+					idsLibro.add(Integer.parseInt(id));
+			} catch (NumberFormatException e) {
+				System.out.println("El valor \"" + id + "\" no es un ID válido y se ignorará.");
+			}
+		}
+		if (idsLibro.isEmpty()) {
+			System.out.println("No se ha introducido ningún ID válido.");
+			return;
+		}
+		System.out.print("Desea utilizar la fecha actual(1) o introducirla manualmente(2): ");
+		LocalDate fecha = leerEntero(scanner) == 2 ? preguntarFecha() : LocalDate.now();
+		try {
+			Map<Integer, ResultadoDevolucion> resultados = this.prestamoDAO.devolver(idsLibro, fecha);
+			int devueltos = 0;
+			for (Map.Entry<Integer, ResultadoDevolucion> resultado : resultados.entrySet()) {
+				switch (resultado.getValue()) {
+				case DEVUELTO:
+					devueltos++;
+					break;
+				case SIN_PRESTAMO_PENDIENTE:
+					System.out.println("El libro con ID: " + resultado.getKey() + " no tiene ningún préstamo pendiente.");
+					break;
+				default:
+					System.out.println("No se ha podido devolver el libro con ID: " + resultado.getKey() + ".");
+				}
+			}
+			System.out.println("Se han devuelto " + devueltos + " de " + resultados.size() + " libros.");
+		} catch (ConflictoConcurrenciaException e) {
+			System.out.println("Alguno de los libros ha sido devuelto por otro usuario mientras se procesaba el lote."
+					+ " No se ha devuelto ningún libro, vuelva a intentarlo.");
+		}
+	}
+
+	/*
+	 * Método para mostrar los préstamos vencidos por consola
+	 * 
+	 * Pide la fecha de la consulta (la actual o una introducida por el usuario) y muestra los
+	 * préstamos no devueltos cuya fecha de vencimiento es anterior, de los más antiguos a los
+	 * más recientes, con los días de retraso de cada uno. Los préstamos se leen por bloques
+	 * (PrestamoDAO.procesarPrestamosVencidos), por lo que no se cargan todos a la vez en memoria.
+	 * 
+	 */
+	public void mostrarPrestamosVencidos() {
+		Scanner scanner = new Scanner(System.in);
+		System.out.print("Desea utilizar la fecha actual(1) o introducirla manualmente(2): ");
+		LocalDate fecha = leerEntero(scanner) == 2 ? preguntarFecha() : LocalDate.now();
+		printSeparador();
+		System.out.println("MOSTRANDO LOS PRÉSTAMOS VENCIDOS A FECHA " + fecha);
+		printSeparador();
+		long vencidos = this.prestamoDAO.procesarPrestamosVencidos(fecha, PrestamoDAO.TAMANO_BLOQUE_VENCIDOS,
+				bloque -> bloque.forEach(p -> System.out.println(p.toString() + " | Días de retraso: "
+						+ ChronoUnit.DAYS.between(p.getFechaVencimiento(), fecha))));
+		if (vencidos == 0)
+			System.out.println("No hay préstamos vencidos en la fecha indicada.");
+		else if (vencidos > 0)
+			System.out.println("Total de préstamos vencidos: " + vencidos);
+		else
+			System.out.println("No ha sido posible obtener los préstamos vencidos.");
+		printSeparador();
+	}
+
 	/*
 	 * Método para eliminar un préstamo de la base de datos
 	 * 
@@ -266,6 +505,8 @@ public class BibliotecaService {
 				}
 			}
 			this.prestamoDAO.borrarPrestamo(idPrestamo);
+		} catch (ConflictoConcurrenciaException e) {
+			System.out.println("El libro del préstamo ha sido modificado por otro usuario, vuelva a intentarlo.");
 		} catch (Exception e) {
 			System.out.println("No ha sido posible eliminar el préstamo. Compruebe que ha introducido un ID válido.");
 		}
@@ -336,38 +577,31 @@ public class BibliotecaService {
 	 * Método para eliminar a un lector
 	 * 
 	 * Recibe como parámetro el ID del lector a elminar.
-	 * También elimina los préstamos de este lector en la tabla préstamo,
-	 * para evitar que esta tenga referencias vacías.
+	 * LectorDAO.borrarLector también elimina los préstamos de este lector en la tabla préstamo,
+	 * para evitar que esta tenga referencias vacías, y libera los libros que tenía prestados.
 	 */
 	public void eliminarLector(int idLector) {
 		try {
 			this.lectorDAO.borrarLector(idLector);
-			List<Prestamo> prestamos = prestamoDAO.obtenerHistorialPrestamos(idLector);
-			for (Prestamo p : prestamos) {
-				eliminarPrestamo(p.getIdPrestamo());
-			}
 		} catch (Exception e) {
-			System.out.println("No ha sido posible eliminar el préstamo. Compruebe que ha introducido un ID válido.");
+			System.out.println("No ha sido posible eliminar el lector. Compruebe que ha introducido un ID válido.");
 		}
 	}
 	
 	/*
 	 * Método para mostrar todos los préstamos por consola
 	 * 
-	 * Obtiene todos los préstamos de la base de datos y los muestra por consola.
-	 * En caso de que esta lista esté vacía informa al usuario.
+	 * Recorre todos los préstamos de la base de datos con un cursor y los muestra por consola,
+	 * junto al título del libro y el nombre del lector, sin cargar entidades.
+	 * En caso de que no haya ninguno informa al usuario.
 	 * 
 	 */
 	public void mostrarPrestamos() {
-		List<Prestamo> prestamos = this.prestamoDAO.obtenerPrestamos();
 		printSeparador();
 		System.out.println("MOSTRANDO TODOS LOS PRÉSTAMOS DE LA BASE DE DATOS");
 		printSeparador();
-		if (!prestamos.isEmpty()) {
-			for (Prestamo p : prestamos) {
-				System.out.println(p.toString());
-			}
-		} else
+		long numPrestamos = this.prestamoDAO.recorrerFilasPrestamos(p -> System.out.println(p.toString()));
+		if (numPrestamos == 0)
 			System.out.println("Actualmente no hay préstamos almacenados en la base de datos.");
 		printSeparador();
 	}
@@ -375,20 +609,17 @@ public class BibliotecaService {
 	/*
 	 * Método para mostrar todos los lectores por consola
 	 * 
-	 * Obtiene todos los lectores de la base de datos y los muestra por consola.
+	 * Recorre todos los lectores de la base de datos con un cursor y los muestra por consola,
+	 * sin cargar entidades.
 	 * En caso de que esta tabla esté vacía informa al usuario.
 	 * 
 	 */
 	public void mostrarLectores() {
-		List<Lector> lectores = lectorDAO.obtenerLectores();
 		printSeparador();
 		System.out.println("MOSTRANDO TODOS LOS LECTORES DE LA BASE DE DATOS");
 		printSeparador();
-		if (!lectores.isEmpty()) {
-			for (Lector l : lectores) {
-				System.out.println(l.toString());
-			}
-		} else
+		long numLectores = lectorDAO.recorrerFilasLectores(l -> System.out.println(l.toString()));
+		if (numLectores == 0)
 			System.out.println("Actualmente no hay lectores almacenados en la base de datos.");
 		printSeparador();
 	}
@@ -406,7 +637,7 @@ public class BibliotecaService {
 		int inputInt;
 		String input;
 		this.mostrarLibros();
-		if (!libroDAO.obtenerLibros().isEmpty()) {
+		if (libroDAO.existenLibros()) {
 			System.out.println("Introduzca el ID del libro de la lista que desea modificar: ");
 			inputInt = leerEntero(scanner);
 			Libro libro = this.libroDAO.obtenerLibro(inputInt);
@@ -461,9 +692,15 @@ public class BibliotecaService {
 					System.out.println("La disponibilidad no será modificada.");
 				} else
 					System.out.println("No se ha introducido un valor válido, la disponibilidad no será modificada.");
-				// Realizar actualizacion
-				this.libroDAO.actualizarLibro(libro);
-				System.out.println("Libro actualizado con éxito, nuevos valores del libro:\n" + libro.toString());
+				// Realizar actualizacion. Si otro usuario ha modificado el libro mientras tanto
+				// no se guardan los cambios y se muestran los valores actuales.
+				try {
+					this.libroDAO.actualizarLibro(libro);
+					System.out.println("Libro actualizado con éxito, nuevos valores del libro:\n" + libro.toString());
+				} catch (ConflictoConcurrenciaException e) {
+					System.out.println("El libro ha sido modificado por otro usuario y los cambios no se han guardado."
+							+ " Valores actuales del libro:\n" + this.libroDAO.obtenerLibro(libro.getIdLibro()));
+				}
 			} else {
 				System.out.println("No se ha podido obtener un libro con el ID especificado, vuelva a intentarlo.");
 				this.modificarLibro();
@@ -486,7 +723,7 @@ public class BibliotecaService {
 		int opcion;
 		String input;
 		this.mostrarLectores();
-		if (!lectorDAO.obtenerLectores().isEmpty()) {
+		if (lectorDAO.existenLectores()) {
 			System.out.println("Introduzca el ID del lector de la lista que desea modificar: ");
 			opcion = leerEntero(scanner);
 			Lector lector = this.lectorDAO.obtenerLector(opcion);
@@ -531,9 +768,15 @@ public class BibliotecaService {
 					System.out.println("La fecha de nacimiento no será modificada.");
 				} else
 					System.out.println("Valor introducido incorrecto, la fecha de nacimiento no será modificada.");
-				// Realizar actualizacion
-				this.lectorDAO.actualizarLector(lector);
-				System.out.println("Lector actualizado con éxito, nuevos valores del lector:\n" + lector.toString());
+				// Realizar actualizacion. Si otro usuario ha modificado el lector mientras tanto
+				// no se guardan los cambios y se muestran los valores actuales.
+				try {
+					this.lectorDAO.actualizarLector(lector);
+					System.out.println("Lector actualizado con éxito, nuevos valores del lector:\n" + lector.toString());
+				} catch (ConflictoConcurrenciaException e) {
+					System.out.println("El lector ha sido modificado por otro usuario y los cambios no se han guardado."
+							+ " Valores actuales del lector:\n" + this.lectorDAO.obtenerLector(lector.getIdLector()));
+				}
 			} else {
 				System.out.println("No se ha podido obtener un lector con el ID especificado, vuelva a intentarlo.");
 				this.modificarLector();
@@ -557,7 +800,7 @@ public class BibliotecaService {
 			this.mostrarPrestamos();
 			// Comprobamos si hay préstamos en la base de datos, de lo contrario no se podrá
 			// actualizar.
-			if (!prestamoDAO.obtenerPrestamos().isEmpty()) {
+			if (prestamoDAO.existenPrestamos()) {
 				System.out.println("Introduzca el ID del prestamo de la lista anterior que desea modificar: ");
 				inputInt = leerEntero(scanner);
 				Prestamo prestamo = this.prestamoDAO.obtenerPrestamo(inputInt);
@@ -607,6 +850,17 @@ public class BibliotecaService {
 						System.out.println("La fecha de préstamo no será modificada.");
 					} else
 						System.out.println("Valor introducido incorrecto, la fecha de préstamo no será modificada.");
+					// Modificar fecha de vencimiento
+					System.out.println("Quieres modificar la fecha de vencimiento del préstamo? (Y:Sí),(N:No): ");
+					input = scanner.nextLine();
+					if (input.toUpperCase().equals("Y")) {
+						System.out.println("Introduzca la nueva fecha a continuación: ");
+						LocalDate fecha = preguntarFecha();
+						prestamo.setFechaVencimiento(fecha);
+					} else if (input.toUpperCase().equals("N")) {
+						System.out.println("La fecha de vencimiento no será modificada.");
+					} else
+						System.out.println("Valor introducido incorrecto, la fecha de vencimiento no será modificada.");
 					// Modificar fecha de devolución
 					System.out.println("Quieres modificar la fecha de devolución del préstamo? (Y:Sí),(N:No): ");
 					input = scanner.nextLine();
@@ -618,10 +872,17 @@ public class BibliotecaService {
 						System.out.println("La fecha de devolución no será modificada.");
 					} else
 						System.out.println("Valor introducido incorrecto, la fecha de devolución no será modificada.");
-					// Realizar actualizacion
-					this.prestamoDAO.actualizarPrestamo(prestamo);
-					System.out.println(
-							"Préstmo actualizado con éxito, nuevos valores del préstamo:\n" + prestamo.toString());
+					// Realizar actualizacion. Si otro usuario ha modificado el préstamo mientras tanto
+					// no se guardan los cambios y se muestran los valores actuales.
+					try {
+						this.prestamoDAO.actualizarPrestamo(prestamo);
+						System.out.println(
+								"Préstmo actualizado con éxito, nuevos valores del préstamo:\n" + prestamo.toString());
+					} catch (ConflictoConcurrenciaException e) {
+						System.out.println("El préstamo ha sido modificado por otro usuario y los cambios no se han "
+								+ "guardado. Valores actuales del préstamo:\n"
+								+ this.prestamoDAO.obtenerPrestamo(prestamo.getIdPrestamo()));
+					}
 				} else {
 					System.out.println(
 							"No se ha podido obtener un préstamo con el ID especificado, vuelva a intentarlo.");
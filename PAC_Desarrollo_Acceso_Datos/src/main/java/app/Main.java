@@ -4,15 +4,18 @@ import java.time.LocalDate;
 
 import java.util.Scanner;
 
-import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
-import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
-import org.hibernate.cfg.Configuration;
-
+import data_access_object.EstadisticasCache;
+import data_access_object.EstadisticasHibernate;
+import data_access_object.FactoriaSesiones;
 import data_access_object.LectorDAO;
 import data_access_object.LibroDAO;
+import data_access_object.MetricasDAO;
+import data_access_object.MetricasPool;
 import data_access_object.PrestamoDAO;
+import data_index.Autocompletado;
+import data_index.MapaDisponibilidad;
 import data_model.Lector;
 import data_model.Libro;
 
@@ -21,8 +24,8 @@ import data_model.Libro;
  * 
  * Contiene el método main que controla la ejecución de la aplicación y varios métodos 
  * para iniciar cada uno de los menús en función de la interacción del usuario.
- * También establece la conexión con la base de datos creando una Session que se irá pasando 
- * entre los diferentes menús.
+ * También establece la conexión con la base de datos creando una SessionFactory que se irá pasando 
+ * entre los diferentes menús. Cada operación abre y cierra su propia sesión.
  * 
  * @author Simon Gil
  */
@@ -30,25 +33,29 @@ public class Main {
 	/*
 	 * Método main de la aplicación
 	 * 
-	 * Inicializa la configuración de Hibernate, crea una Session
+	 * Inicializa la configuración de Hibernate, crea la SessionFactory
 	 * y una instancia de BibliotecaService, para después inicar el
 	 * menú principal de la aplicación.
+	 * La configuración de hibernate.cfg.xml puede ajustarse desde un archivo
+	 * externo (ver FactoriaSesiones).
+	 * El mapa de disponibilidad de los libros y los índices de autocompletado se construyen al
+	 * arrancar, para que el primer préstamo o la primera sugerencia no tengan que esperar su carga.
 	 */
 	
 	public static void main(String[] args) {
-		Configuration cfg = new Configuration().configure();
-		SessionFactory sessionFact = cfg.buildSessionFactory(new StandardServiceRegistryBuilder().configure().build());
-		Session session = sessionFact.openSession();
-		iniciarMenuPrincipal(session);
+		SessionFactory sessionFact = FactoriaSesiones.crearSessionFactory();
+		MapaDisponibilidad.de(sessionFact);
+		Autocompletado.de(sessionFact);
+		iniciarMenuPrincipal(sessionFact);
 	}
 
 	/*
 	 * Método con la lógica de ejecución del menú principal
 	 * 
 	 */
-	static public void iniciarMenuPrincipal(Session session) {
+	static public void iniciarMenuPrincipal(SessionFactory sessionFactory) {
 		Scanner scanner = new Scanner(System.in);
-		BibliotecaService bs = new BibliotecaService(session);
+		BibliotecaService bs = new BibliotecaService(sessionFactory);
 		int opcion = 100;
 		do {
 			bs.printSeparador();
@@ -57,22 +64,27 @@ public class Main {
 			System.out.println("1-Gestionar Préstamos");
 			System.out.println("2-Gestionar Libros");
 			System.out.println("3-Gestionar Lectores");
+			System.out.println("4-Mostrar estadísticas de rendimiento");
 			System.out.println("0-Salir del programa");
 			bs.printSeparador();
 			System.out.print("Seleccione una opción: ");
 			opcion = bs.leerEntero(scanner);
 			switch (opcion) {
 			case 1:
-				iniciarMenuPrestamos(session);
+				iniciarMenuPrestamos(sessionFactory);
 				break;
 			case 2:
-				iniciarMenuLibros(session);
+				iniciarMenuLibros(sessionFactory);
 				break;
 			case 3:
-				iniciarMenuLectores(session);
+				iniciarMenuLectores(sessionFactory);
+				break;
+			case 4:
+				mostrarEstadisticas(sessionFactory);
 				break;
 			case 0:
 				System.out.println("Saliendo del programa...");
+				mostrarEstadisticas(sessionFactory);
 				break;
 			default:
 				System.out.println("Opción inválida. Por favor, seleccione una opción válida.");
@@ -82,12 +94,29 @@ public class Main {
 
 	}
 
+	/*
+	 * Método para mostrar las estadísticas de rendimiento por consola
+	 * 
+	 * Muestra las latencias de los métodos de los DAO, las estadísticas de Hibernate,
+	 * las de la caché de segundo nivel y las del pool de conexiones. Los mismos datos
+	 * pueden consultarse por JMX (dominio "biblioteca") mientras la aplicación está en marcha.
+	 */
+	static void mostrarEstadisticas(SessionFactory sessionFactory) {
+		System.out.println(MetricasDAO.de(sessionFactory).resumen());
+		System.out.println(new EstadisticasHibernate(sessionFactory).resumen());
+		System.out.println(new EstadisticasCache(sessionFactory).resumen());
+		MetricasPool.Metricas metricasPool = MetricasPool.de(sessionFactory);
+		if (metricasPool != null) {
+			System.out.println(metricasPool.resumen());
+		}
+	}
+
 	/*
 	 * Método con la lógica de ejecución del menú de gestión de préstamos.
 	 * 
 	 */
-	public static void iniciarMenuPrestamos(Session session) {
-		BibliotecaService bs = new BibliotecaService(session);
+	public static void iniciarMenuPrestamos(SessionFactory sessionFactory) {
+		BibliotecaService bs = new BibliotecaService(sessionFactory);
 		int opcion;
 		Scanner scanner = new Scanner(System.in);
 		do {
@@ -99,6 +128,8 @@ public class Main {
 			System.out.println("3-Borrar préstamo");
 			System.out.println("4-Consultar historial de préstamos de un lector");
 			System.out.println("5-Actualizar información de un préstamo");
+			System.out.println("6-Devolución de varios libros a la vez");
+			System.out.println("7-Consultar préstamos vencidos");
 			System.out.println("0-Volver al menú principal");
 			bs.printSeparador();
 			System.out.print("Seleccione una opción: ");
@@ -113,11 +144,11 @@ public class Main {
 			case 3:
 				int idPrestamoDelete;
 				bs.mostrarPrestamos();
-				PrestamoDAO presDAO = new PrestamoDAO(session);
-				if (presDAO.obtenerPrestamos().size() > 0) {
+				PrestamoDAO presDAO = new PrestamoDAO(sessionFactory);
+				if (presDAO.existenPrestamos()) {
 					System.out.println("Introduzca el ID del préstamo de la lista anterior que desea eliminar: ");
 					idPrestamoDelete = bs.leerEntero(scanner);
-					if (presDAO.obtenerPrestamo(idPrestamoDelete) != null) {
+					if (presDAO.existePrestamo(idPrestamoDelete)) {
 						bs.eliminarPrestamo(idPrestamoDelete);
 					} else
 						System.out.println("Error: No se ha encontrado un préstamo con el ID especificado.");
@@ -126,8 +157,8 @@ public class Main {
 				break;
 			case 4:
 				bs.mostrarLectores();
-				LectorDAO lecdao = new LectorDAO(session);
-				if (!lecdao.obtenerLectores().isEmpty()) {
+				LectorDAO lecdao = new LectorDAO(sessionFactory);
+				if (lecdao.existenLectores()) {
 					System.out.print(
 							"Introduzca el ID de un lector de la lista sobre el que quiere realizar esta consulta: ");
 					int idLector;
@@ -140,8 +171,14 @@ public class Main {
 			case 5:
 				bs.modificarPrestamo();
 				break;
+			case 6:
+				bs.devolucionLote();
+				break;
+			case 7:
+				bs.mostrarPrestamosVencidos();
+				break;
 			case 0:
-				iniciarMenuPrincipal(session);
+				iniciarMenuPrincipal(sessionFactory);
 				break;
 			default:
 				System.out.println("Opción inválida. Por favor, seleccione una opción válida.");
@@ -154,8 +191,8 @@ public class Main {
 	 * Método con la lógica de ejecución del menú de gestión de préstamos.
 	 * 
 	 */
-	static public void iniciarMenuLibros(Session session) {
-		BibliotecaService bs = new BibliotecaService(session);
+	static public void iniciarMenuLibros(SessionFactory sessionFactory) {
+		BibliotecaService bs = new BibliotecaService(sessionFactory);
 		int opcion;
 		Scanner scanner = new Scanner(System.in);
 		do {
@@ -167,6 +204,7 @@ public class Main {
 			System.out.println("3-Eliminar libro");
 			System.out.println("4-Mostrar libros disponibles para préstamo");
 			System.out.println("5-Mostrar todos los libros de la base de datos");
+			System.out.println("6-Buscar libros por título o autor");
 			System.out.println("0-Volver al menú principal");
 			bs.printSeparador();
 			System.out.print("Seleccione una opción: ");
@@ -189,14 +227,14 @@ public class Main {
 			case 3:
 				int idLibro;
 				bs.mostrarLibros();
-				LibroDAO libdao = new LibroDAO(session);
-				if (libdao.obtenerLibros().size() > 0) {
+				LibroDAO libdao = new LibroDAO(sessionFactory);
+				if (libdao.existenLibros()) {
 					System.out.print("Elija un libro de la lista e introduzca su ID para eliminarlo: ");
 					idLibro = bs.leerEntero(scanner);
 					Libro libro = libdao.obtenerLibro(idLibro);
 					if (libro != null) {
 						System.out.println("Seguro que desea eliminar el libro titulado: " + libro.getTitulo()
-								+ "? (Y:Si, N:No):");
+								+ "? La acción eliminará también todos sus préstamos (Y:Si, N:No):");
 						String eliminarLibro = scanner.nextLine();
 						if (eliminarLibro.toUpperCase().equals("Y")) {
 							bs.eliminarLibro(idLibro);
@@ -215,8 +253,11 @@ public class Main {
 			case 5:
 				bs.mostrarLibros();
 				break;
+			case 6:
+				bs.buscarLibros();
+				break;
 			case 0:
-				iniciarMenuPrincipal(session);
+				iniciarMenuPrincipal(sessionFactory);
 				break;
 			default:
 				System.out.println("Opción inválida. Por favor, seleccione una opción válida.");
@@ -229,8 +270,8 @@ public class Main {
 	 * Método con la lógica de ejecución del menú de gestión de préstamos.
 	 * 
 	 */
-	static public void iniciarMenuLectores(Session session) {
-		BibliotecaService bs = new BibliotecaService(session);
+	static public void iniciarMenuLectores(SessionFactory sessionFactory) {
+		BibliotecaService bs = new BibliotecaService(sessionFactory);
 		int opcion;
 		Scanner scanner = new Scanner(System.in);
 		do {
@@ -265,8 +306,8 @@ public class Main {
 			case 3:
 				int idLector;
 				bs.mostrarLectores();
-				LectorDAO lecdao = new LectorDAO(session);
-				if (lecdao.obtenerLectores().size() > 0) {
+				LectorDAO lecdao = new LectorDAO(sessionFactory);
+				if (lecdao.existenLectores()) {
 					System.out.print("Introduzca el ID del lector de la lista anterior que desea eliminar: ");
 					idLector = bs.leerEntero(scanner);
 					Lector lector = lecdao.obtenerLector(idLector);
@@ -294,7 +335,7 @@ public class Main {
 				break;
 
 			case 0:
-				iniciarMenuPrincipal(session);
+				iniciarMenuPrincipal(sessionFactory);
 				break;
 			default:
 				System.out.println("Opción inválida. Por favor, seleccione una opción válida.");
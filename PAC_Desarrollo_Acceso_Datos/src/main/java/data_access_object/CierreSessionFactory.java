@@ -0,0 +1,28 @@
+package data_access_object;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+
+/**
+ * Clase que libera los recursos asociados a una SessionFactory al cerrarla
+ * 
+ * FactoriaSesiones la registra en cada SessionFactory que crea. Al cerrarse la SessionFactory
+ * detiene los hilos de su EjecutorAsincrono, que de otro modo seguirían esperando tareas
+ * aunque ya no se pudiera acceder a la base de datos, y elimina de JMX los MBeans de MetricasDAO,
+ * que de otro modo seguirían registrados y evitarían que se liberase la SessionFactory.
+ * 
+ * @author Simon Gil
+ */
+public class CierreSessionFactory implements SessionFactoryObserver {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void sessionFactoryCreated(SessionFactory factory) {
+	}
+
+	@Override
+	public void sessionFactoryClosed(SessionFactory factory) {
+		EjecutorAsincrono.cerrar(factory);
+		MetricasDAO.cerrar(factory);
+	}
+}
@@ -0,0 +1,24 @@
+package data_access_object;
+
+/**
+ * Excepción para los conflictos de bloqueo optimista
+ * 
+ * La lanzan los métodos actualizar de los DAO cuando el registro ha sido modificado
+ * o eliminado por otra operación desde que se leyó (la versión guardada ya no 
+ * coincide con la del objeto). La operación no se ha aplicado, pero puede reintentarse: 
+ * basta con volver a obtener el registro, aplicar de nuevo los cambios y actualizarlo.
+ * 
+ * @author Simon Gil
+ */
+public class ConflictoConcurrenciaException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public ConflictoConcurrenciaException(String mensaje, Throwable causa) {
+		super(mensaje, causa);
+	}
+
+	//Un conflicto siempre puede resolverse repitiendo la operación con los datos actuales
+	public boolean isReintentable() {
+		return true;
+	}
+}
@@ -0,0 +1,140 @@
+package data_access_object;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.hibernate.SessionFactory;
+
+/**
+ * Clase para ejecutar operaciones de los DAO en segundo plano
+ *
+ * Cada SessionFactory tiene un único ejecutor. Las tareas se ejecutan en hilos virtuales
+ * si la máquina virtual los admite (Java 21 o superior); en caso contrario se utiliza un
+ * grupo fijo de hilos. El número de tareas que acceden a la base de datos a la vez se limita
+ * al tamaño máximo del pool de conexiones (hibernate.hikari.maximumPoolSize), de forma que
+ * las tareas que sobran esperan su turno sin ocupar conexiones. El ejecutor se detiene al cerrar
+ * la SessionFactory (ver CierreSessionFactory).
+ *
+ * @author Simon Gil
+ */
+public class EjecutorAsincrono {
+	//Límite de tareas simultáneas si la configuración no indica el tamaño del pool
+	public static final int LIMITE_POR_DEFECTO = 10;
+	//Ejecutor de cada SessionFactory. Se libera cuando la SessionFactory deja de utilizarse
+	private static final Map<SessionFactory, EjecutorAsincrono> EJECUTORES = new WeakHashMap<>();
+
+	private ExecutorService ejecutor;
+	private Semaphore permisos;
+	private int limite;
+	private boolean hilosVirtuales;
+
+	private EjecutorAsincrono(int limite) {
+		this.limite = limite;
+		this.permisos = new Semaphore(limite, true);
+		this.ejecutor = crearEjecutorHilosVirtuales();
+		this.hilosVirtuales = this.ejecutor != null;
+		if (!this.hilosVirtuales) {
+			AtomicInteger numHilo = new AtomicInteger();
+			this.ejecutor = Executors.newFixedThreadPool(limite, tarea -> {
+				Thread hilo = new Thread(tarea, "dao-asincrono-" + numHilo.incrementAndGet());
+				hilo.setDaemon(true);
+				return hilo;
+			});
+		}
+	}
+
+	/*
+	 * Método para obtener el ejecutor de una SessionFactory.
+	 *
+	 * La primera llamada crea el ejecutor con un límite igual al tamaño máximo del pool.
+	 */
+	public static synchronized EjecutorAsincrono de(SessionFactory sessionFactory) {
+		return EJECUTORES.computeIfAbsent(sessionFactory,
+				sf -> new EjecutorAsincrono(leerLimite(sf)));
+	}
+
+	/*
+	 * Método para detener el ejecutor de una SessionFactory.
+	 *
+	 * Las tareas pendientes terminan de ejecutarse, pero ya no se aceptan tareas nuevas.
+	 * No hace nada si la SessionFactory no tiene ejecutor.
+	 */
+	public static synchronized void cerrar(SessionFactory sessionFactory) {
+		EjecutorAsincrono ejecutorAsincrono = EJECUTORES.remove(sessionFactory);
+		if (ejecutorAsincrono != null) {
+			ejecutorAsincrono.ejecutor.shutdown();
+		}
+	}
+
+	/*
+	 * Método para ejecutar una operación en segundo plano.
+	 *
+	 * La tarea espera a tener un permiso libre antes de ejecutar la operación, y lo devuelve
+	 * al terminar aunque se produzca un error. Si la operación lanza una excepción, el
+	 * CompletableFuture se completa con ella.
+	 */
+	public <T> CompletableFuture<T> ejecutar(Supplier<T> operacion) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				this.permisos.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+			try {
+				return operacion.get();
+			} finally {
+				this.permisos.release();
+			}
+		}, this.ejecutor);
+	}
+
+	public int getLimite() {
+		return limite;
+	}
+
+	public boolean isHilosVirtuales() {
+		return hilosVirtuales;
+	}
+
+	//Número de tareas que se están ejecutando en este momento
+	public int getTareasEnCurso() {
+		return this.limite - this.permisos.availablePermits();
+	}
+
+	//Número aproximado de tareas esperando un permiso
+	public int getTareasEsperando() {
+		return this.permisos.getQueueLength();
+	}
+
+	/*
+	 * Método para crear un ejecutor con un hilo virtual por tarea.
+	 *
+	 * Se invoca por reflexión para que el proyecto siga compilando y ejecutándose con Java 17.
+	 * Devuelve null si la máquina virtual no dispone de hilos virtuales.
+	 */
+	private static ExecutorService crearEjecutorHilosVirtuales() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	//Lee el tamaño máximo del pool de conexiones de la configuración de la SessionFactory
+	private static int leerLimite(SessionFactory sessionFactory) {
+		Object tamanoPool = sessionFactory.getProperties().get("hibernate.hikari.maximumPoolSize");
+		try {
+			return tamanoPool == null ? LIMITE_POR_DEFECTO : Integer.parseInt(tamanoPool.toString().trim());
+		} catch (NumberFormatException e) {
+			return LIMITE_POR_DEFECTO;
+		}
+	}
+}
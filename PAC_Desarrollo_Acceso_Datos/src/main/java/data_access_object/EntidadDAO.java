@@ -1,19 +1,432 @@
 package data_access_object;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.persistence.OptimisticLockException;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.Query;
 
 
 /* Clase abstracta Data Access Object. 
 * 
 * Actúa como clase DAO genérica de la que heredarán
 *  todas las clases Data Access Object de la aplicación. 
+* Los DAO pueden trabajar de dos modos: con una Session compartida, recibida en el
+* constructor, o con una SessionFactory. En el segundo modo cada operación abre una
+* sesión y una transacción propias que se cierran al terminar, por lo que un mismo DAO
+* puede utilizarse desde varios hilos a la vez.
 * @author Simon Gil
 */
 public abstract class EntidadDAO {
+	//Tamaño de lote utilizado si no se ha configurado hibernate.jdbc.batch_size
+	protected static final int TAMANO_LOTE_POR_DEFECTO = 50;
+	//Número de filas que se leen de la base de datos en cada viaje al recorrer una tabla
+	protected static final int TAMANO_FETCH = 100;
 	protected Session session;
+	protected SessionFactory sessionFactory;
+	//Observadores de las entidades de la SessionFactory, a los que se notifican los cambios
+	protected RegistroObservadores observadores;
+	//Métricas de latencia de los métodos de los DAO de la SessionFactory
+	private MetricasDAO metricas;
+	private String nombreDAO = getClass().getSimpleName();
 	//Constructor que recibe un objeto Session por parámetro
 	public EntidadDAO(Session session) {
 		this.session = session;
+		this.sessionFactory = session.getSessionFactory();
+		this.observadores = RegistroObservadores.de(this.sessionFactory);
+		this.metricas = MetricasDAO.de(this.sessionFactory);
+	}
+	//Constructor que recibe una SessionFactory: se abre una sesión por cada operación
+	public EntidadDAO(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+		this.observadores = RegistroObservadores.de(sessionFactory);
+		this.metricas = MetricasDAO.de(sessionFactory);
+	}
+
+	/*
+	 * Método para obtener la sesión con la que se realiza cada operación.
+	 * 
+	 * Si el DAO se ha creado con una Session devuelve esa sesión compartida. Si se ha creado
+	 * con una SessionFactory devuelve la sesión del hilo actual (getCurrentSession), que
+	 * Hibernate abre al iniciar la transacción y cierra al hacer commit o rollback
+	 * (hibernate.current_session_context_class = thread). Por eso cada método debe terminar
+	 * siempre su transacción, y las entidades devueltas quedan desconectadas de la sesión.
+	 */
+	protected Session sesion() {
+		return this.session != null ? this.session : this.sessionFactory.getCurrentSession();
+	}
+
+	/*
+	 * Método para medir la latencia de un método público del DAO.
+	 * 
+	 * Cada método público abre la medición con su nombre en un bloque try-with-resources, la
+	 * marca como correcta al terminar y la duración se registra en MetricasDAO como
+	 * "NombreDAO.metodo". Las variantes asíncronas no se miden por separado, porque ejecutan
+	 * el método síncrono, que ya se mide.
+	 */
+	protected Medicion medir(String metodo) {
+		return this.metricas.iniciar(this.nombreDAO, metodo);
+	}
+
+	/*
+	 * Método para obtener el nombre con el que se mide un método público de un DAO.
+	 * 
+	 * Los DAO lo utilizan para inicializar las constantes con los nombres de sus métodos, de
+	 * forma que si se renombra un método sin cambiar su constante la clase no llega a cargarse.
+	 * Los métodos sobrecargados se distinguen por sus parámetros: "obtenerLibros(int, int)".
+	 */
+	protected static String metodo(Class<? extends EntidadDAO> dao, String nombre, Class<?>... parametros) {
+		boolean existe = Arrays.stream(dao.getMethods()).anyMatch(m -> m.getName().equals(nombre)
+				&& (parametros.length == 0 || Arrays.equals(m.getParameterTypes(), parametros)));
+		if (!existe) {
+			throw new IllegalStateException(dao.getSimpleName() + " no tiene ningún método público " + nombre);
+		}
+		return parametros.length == 0 ? nombre
+				: nombre + Arrays.stream(parametros).map(Class::getSimpleName).collect(Collectors.joining(", ", "(", ")"));
+	}
+
+	/*
+	 * Método para notificar un error capturado en un método del DAO.
+	 * 
+	 * Los métodos que capturan los errores y devuelven un valor por defecto lo llaman en el
+	 * bloque catch para que la llamada cuente como errónea en las métricas.
+	 */
+	protected void registrarError() {
+		this.metricas.registrarError();
+	}
+
+	/*
+	 * Método para iniciar una transacción de solo lectura.
+	 * 
+	 * Las entidades cargadas en la transacción son de solo lectura: Hibernate no guarda
+	 * una copia de su estado para la comprobación de cambios (dirty checking) y, con el
+	 * modo de flush MANUAL, el commit no recorre el contexto de persistencia ni escribe nada.
+	 * Debe llamarse a terminarLectura al acabar, también si se produce un error.
+	 */
+	protected Transaction iniciarLectura(Session session) {
+		Transaction tx = session.beginTransaction();
+		session.setDefaultReadOnly(true);
+		session.setHibernateFlushMode(FlushMode.MANUAL);
+		return tx;
+	}
+
+	/*
+	 * Método para terminar una transacción de solo lectura.
+	 * 
+	 * Devuelve la sesión a su modo normal. Solo tiene efecto con una Session compartida,
+	 * ya que la sesión del hilo se cierra al terminar la transacción.
+	 */
+	protected void terminarLectura(Session session) {
+		if (session.isOpen()) {
+			session.setDefaultReadOnly(false);
+			session.setHibernateFlushMode(FlushMode.AUTO);
+		}
+	}
+
+	/*
+	 * Método para contar los resultados de una consulta.
+	 * 
+	 * Recibe una consulta HQL "SELECT COUNT(...)" con parámetros posicionales (?1, ?2...)
+	 * y sus valores. La base de datos devuelve solo el número, sin cargar ninguna entidad.
+	 * Devuelve -1 si la consulta falla.
+	 */
+	protected long contar(String hql, Object... parametros) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
+		long total = -1;
+		try {
+			Query<Long> query = session.createQuery(hql, Long.class);
+			for (int i = 0; i < parametros.length; i++) {
+				query.setParameter(i + 1, parametros[i]);
+			}
+			total = query.getSingleResult();
+			tx.commit();
+		} catch (Exception e) {
+			tx.rollback();
+			registrarError();
+			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
+		}
+		return total;
+	}
+
+	/*
+	 * Método para comprobar si una consulta tiene algún resultado.
+	 * 
+	 * Recibe una consulta HQL "SELECT 1 FROM ..." con parámetros posicionales y sus valores,
+	 * y la ejecuta con un límite de una fila (LIMIT 1), de forma que la base de datos se detiene
+	 * en la primera fila encontrada. Devuelve false si no hay resultados o si la consulta falla.
+	 */
+	protected boolean existe(String hql, Object... parametros) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
+		boolean existe = false;
+		try {
+			Query<?> query = session.createQuery(hql).setMaxResults(1);
+			for (int i = 0; i < parametros.length; i++) {
+				query.setParameter(i + 1, parametros[i]);
+			}
+			existe = !query.getResultList().isEmpty();
+			tx.commit();
+		} catch (Exception e) {
+			tx.rollback();
+			registrarError();
+			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
+		}
+		return existe;
+	}
+
+	/*
+	 * Método para actualizar una entidad que puede haberse cargado como de solo lectura.
+	 * 
+	 * Con una Session compartida la entidad puede seguir en la sesión como de solo lectura,
+	 * y en ese caso update no tendría efecto. Se desconecta primero de la sesión (evict) para
+	 * que update la vuelva a asociar y escriba todos sus valores.
+	 */
+	protected void actualizar(Session session, Object entidad) {
+		if (session.contains(entidad)) {
+			session.evict(entidad);
+		}
+		session.update(entidad);
+	}
+
+	/*
+	 * Método para sacar de la sesión compartida las entidades de una operación fallida.
+	 * 
+	 * Tras un error la sesión puede contener entidades con un estado que no coincide con la
+	 * base de datos (por ejemplo, con una versión incorrecta). Con la sesión del hilo no es
+	 * necesario, porque ya se ha cerrado al hacer rollback.
+	 */
+	protected void descartar(Session session, Object... entidades) {
+		for (Object entidad : entidades) {
+			if (entidad != null && session.isOpen() && session.contains(entidad)) {
+				session.evict(entidad);
+			}
+		}
+	}
+
+	/*
+	 * Método para comprobar si un error se debe a un conflicto de bloqueo optimista.
+	 * 
+	 * Hibernate lanza StaleObjectStateException cuando la versión del registro no coincide,
+	 * y al hacer commit la envuelve en una OptimisticLockException, por lo que se revisa
+	 * toda la cadena de causas.
+	 */
+	/*
+	 * Método para obtener el nombre de la tabla de una entidad para una consulta SQL nativa.
+	 * 
+	 * Incluye el catálogo de los archivos de mapeo (por ejemplo "biblioteca.libro").
+	 */
+	protected String tabla(Class<?> clase) {
+		return ((AbstractEntityPersister) persister(clase)).getTableName();
+	}
+
+	/*
+	 * Método para descartar las copias de unas entidades modificadas con SQL nativo.
+	 * 
+	 * Las sentencias nativas de los DAO se ejecutan con addSynchronizedQuerySpace("") para que
+	 * Hibernate no vacíe ninguna región de la caché de segundo nivel, pero entonces ni la caché
+	 * ni la sesión reflejan el cambio. Este método elimina de la región de la entidad solo las
+	 * entradas de los IDs recibidos y, si la sesión sigue abierta (Session compartida), saca de
+	 * ella las instancias de esos IDs, de forma que la siguiente lectura las obtenga de la base de
+	 * datos. Debe llamarse después del commit, para que una lectura anterior a la confirmación
+	 * no deje en la caché el valor antiguo.
+	 */
+	protected void descartarCopias(Session session, Class<?> clase, Collection<Integer> ids) {
+		EntityPersister persister = persister(clase);
+		SessionImplementor sesion = session.isOpen() ? session.unwrap(SessionImplementor.class) : null;
+		for (Integer id : ids) {
+			if (sesion != null) {
+				Object entidad = sesion.getPersistenceContext().getEntity(sesion.generateEntityKey(id, persister));
+				if (entidad != null) {
+					session.evict(entidad);
+				}
+			}
+			this.sessionFactory.getCache().evictEntityData(clase, id);
+		}
+	}
+
+	//Persister de Hibernate de una entidad
+	private EntityPersister persister(Class<?> clase) {
+		return this.sessionFactory.unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(clase);
+	}
+
+	protected static boolean esConflictoVersion(Throwable error) {
+		for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+			if (causa instanceof StaleStateException || causa instanceof OptimisticLockException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Método para ejecutar una operación del DAO de forma asíncrona.
+	 * 
+	 * Si el DAO se ha creado con una SessionFactory, la operación se ejecuta en el
+	 * EjecutorAsincrono de la SessionFactory, con su propia sesión, y el número de operaciones
+	 * simultáneas queda limitado al tamaño del pool de conexiones. Si el DAO utiliza una
+	 * Session compartida, que no admite accesos concurrentes, la operación se ejecuta en el
+	 * hilo que llama y se devuelve un CompletableFuture ya completado.
+	 */
+	protected <T> CompletableFuture<T> asincrono(Supplier<T> operacion) {
+		if (this.session == null) {
+			return EjecutorAsincrono.de(this.sessionFactory).ejecutar(operacion);
+		}
+		try {
+			return CompletableFuture.completedFuture(operacion.get());
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/*
+	 * Método para obtener el tamaño de lote de las inserciones masivas.
+	 *
+	 * Devuelve el valor de hibernate.jdbc.batch_size de la configuración, o
+	 * TAMANO_LOTE_POR_DEFECTO si no se ha configurado.
+	 */
+	public int getTamanoLote() {
+		int tamano = this.sessionFactory.unwrap(SessionFactoryImplementor.class)
+				.getSessionFactoryOptions().getJdbcBatchSize();
+		return tamano > 0 ? tamano : TAMANO_LOTE_POR_DEFECTO;
+	}
+
+	/*
+	 * Método para insertar una colección de entidades en una única transacción.
+	 *
+	 * Las inserciones se agrupan en lotes JDBC del tamaño configurado. Al terminar
+	 * cada lote se vacía la sesión (flush y clear) para que el contexto de persistencia
+	 * no crezca con el número de entidades. No se escribe nada por consola por cada lote: después
+	 * de cada flush se pasa al consumidor recibido un LoteInsertado con el número de registros
+	 * del lote y su duración. Los lotes informados no están confirmados hasta el commit final,
+	 * y se deshacen todos si la transacción falla.
+	 * Se utiliza una sesión propia para no vaciar la sesión compartida por el resto de DAOs,
+	 * y las entidades insertadas no se añaden a la caché de segundo nivel.
+	 * Devuelve los IDs generados en el mismo orden de la colección, o una lista vacía
+	 * si la transacción no ha podido completarse.
+	 */
+	protected List<Integer> insertarEnLotes(Collection<?> entidades, Consumer<? super LoteInsertado> informe) {
+		List<Integer> ids = new ArrayList<>(entidades.size());
+		int tamanoLote = getTamanoLote();
+		try (Session sesionLote = this.sessionFactory.openSession()) {
+			sesionLote.setCacheMode(CacheMode.IGNORE);
+			Transaction tx = sesionLote.beginTransaction();
+			try {
+				int enLote = 0;
+				int numLote = 0;
+				long inicioLote = System.nanoTime();
+				for (Object entidad : entidades) {
+					ids.add((int) sesionLote.save(entidad));
+					if (++enLote == tamanoLote) {
+						sesionLote.flush();
+						sesionLote.clear();
+						informe.accept(new LoteInsertado(++numLote, enLote, System.nanoTime() - inicioLote));
+						enLote = 0;
+						inicioLote = System.nanoTime();
+					}
+				}
+				if (enLote > 0) {
+					sesionLote.flush();
+					sesionLote.clear();
+					informe.accept(new LoteInsertado(++numLote, enLote, System.nanoTime() - inicioLote));
+				}
+				tx.commit();
+			} catch (Exception e) {
+				tx.rollback();
+				System.out.println("No ha sido posible completar la inserción masiva.");
+				registrarError();
+				e.printStackTrace();
+				ids.clear();
+			}
+		}
+		return ids;
+	}
+
+	/*
+	 * Método para recorrer el resultado de una consulta fila a fila.
+	 * 
+	 * Ejecuta la consulta HQL con un cursor de solo avance, leyendo TAMANO_FETCH filas
+	 * en cada viaje a la base de datos, y pasa cada resultado al consumidor recibido.
+	 * La sesión de lectura se vacía cada TAMANO_FETCH filas, por lo que la memoria utilizada
+	 * no depende del tamaño de la tabla, y las filas recorridas no se añaden a la caché de segundo
+	 * nivel. El consumidor solo debe usar cada objeto durante la llamada.
+	 * Devuelve el número de filas procesadas.
+	 */
+	protected <T> long recorrer(String hql, Class<T> clase, Consumer<? super T> consumidor) {
+		long procesadas = 0;
+		try (Session sesionLectura = this.sessionFactory.openSession()) {
+			Transaction tx = sesionLectura.beginTransaction();
+			try (ScrollableResults resultados = sesionLectura.createQuery(hql, clase)
+					.setReadOnly(true)
+					.setCacheMode(CacheMode.IGNORE)
+					.setFetchSize(TAMANO_FETCH)
+					.scroll(ScrollMode.FORWARD_ONLY)) {
+				while (resultados.next()) {
+					consumidor.accept(clase.cast(resultados.get(0)));
+					if (++procesadas % TAMANO_FETCH == 0) {
+						sesionLectura.clear();
+					}
+				}
+				tx.commit();
+			} catch (Exception e) {
+				tx.rollback();
+				System.out.println("Error al recorrer los resultados de la consulta:");
+				registrarError();
+				e.printStackTrace();
+			}
+		}
+		return procesadas;
+	}
+
+	/*
+	 * Método para obtener una página de resultados con paginación por clave (keyset).
+	 * 
+	 * La consulta HQL debe filtrar por ID mayor que el parámetro :despuesDeId y ordenar por ID,
+	 * de forma que cada página se obtiene con un recorrido del índice de la clave primaria,
+	 * sin OFFSET. Se utiliza una sesión propia para que las páginas no se acumulen en la sesión
+	 * compartida; los objetos devueltos quedan desconectados de la sesión.
+	 */
+	protected <T> List<T> obtenerPagina(String hql, Class<T> clase, int despuesDeId, int limite) {
+		List<T> pagina = null;
+		try (Session sesionLectura = this.sessionFactory.openSession()) {
+			Transaction tx = sesionLectura.beginTransaction();
+			try {
+				pagina = sesionLectura.createQuery(hql, clase)
+						.setParameter("despuesDeId", despuesDeId)
+						.setMaxResults(limite)
+						.setReadOnly(true)
+						.getResultList();
+				tx.commit();
+			} catch (Exception e) {
+				tx.rollback();
+				registrarError();
+				e.printStackTrace();
+			}
+		}
+		return pagina;
 	}
 
 }
@@ -0,0 +1,76 @@
+package data_access_object;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Clase para consultar las estadísticas de la caché de segundo nivel
+ * 
+ * Obtiene de las estadísticas de Hibernate los aciertos, fallos y el ratio de aciertos
+ * de cada región de la caché, de forma que se pueda ajustar el tamaño de las regiones
+ * definidas en ehcache.xml. Requiere hibernate.generate_statistics en la configuración.
+ * 
+ * @author Simon Gil
+ */
+public class EstadisticasCache {
+	//Regiones de la caché de segundo nivel declaradas en los archivos de mapeo
+	public static final String REGION_LIBRO = "libro";
+	public static final String REGION_LECTOR = "lector";
+	private static final String[] REGIONES = { REGION_LIBRO, REGION_LECTOR };
+
+	private Statistics estadisticas;
+
+	//Constructor que recibe la SessionFactory cuya caché se quiere consultar
+	public EstadisticasCache(SessionFactory sessionFactory) {
+		this.estadisticas = sessionFactory.getStatistics();
+	}
+
+	/*
+	 * Método para obtener el número de aciertos de una región.
+	 * 
+	 * Devuelve las veces que una entidad o el resultado de una consulta se ha
+	 * encontrado en la caché sin necesidad de consultar la base de datos.
+	 */
+	public long getAciertos(String region) {
+		CacheRegionStatistics estadisticasRegion = this.estadisticas.getCacheRegionStatistics(region);
+		return estadisticasRegion == null ? 0 : estadisticasRegion.getHitCount();
+	}
+
+	/*
+	 * Método para obtener el número de fallos de una región.
+	 * 
+	 * Devuelve las veces que una entidad o una consulta se ha buscado en la caché sin encontrarla.
+	 */
+	public long getFallos(String region) {
+		CacheRegionStatistics estadisticasRegion = this.estadisticas.getCacheRegionStatistics(region);
+		return estadisticasRegion == null ? 0 : estadisticasRegion.getMissCount();
+	}
+
+	/*
+	 * Método para obtener el ratio de aciertos de una región.
+	 * 
+	 * Devuelve un valor entre 0 y 1, o 0 si todavía no se ha consultado la región.
+	 */
+	public double getRatioAciertos(String region) {
+		long aciertos = getAciertos(region);
+		long total = aciertos + getFallos(region);
+		return total == 0 ? 0 : (double) aciertos / total;
+	}
+
+	/*
+	 * Método para obtener un resumen de todas las regiones.
+	 * 
+	 * Devuelve un String con una línea por región, apto para mostrarse por consola.
+	 */
+	public String resumen() {
+		StringBuilder resumen = new StringBuilder("Caché de segundo nivel:");
+		for (String region : REGIONES) {
+			resumen.append(System.lineSeparator()).append("Región: ").append(region)
+					.append(" | Aciertos: ").append(getAciertos(region))
+					.append(" | Fallos: ").append(getFallos(region))
+					.append(" | Ratio de aciertos: ").append(Math.round(getRatioAciertos(region) * 100)).append("%");
+		}
+		return resumen.toString();
+	}
+}
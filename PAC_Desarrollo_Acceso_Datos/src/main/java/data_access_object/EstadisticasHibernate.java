@@ -0,0 +1,141 @@
+package data_access_object;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Clase para consultar las estadísticas generales de Hibernate
+ *
+ * Complementa a EstadisticasCache, que muestra las regiones de la caché de segundo nivel, con
+ * los contadores globales de la SessionFactory: consultas ejecutadas y la más lenta, entidades
+ * cargadas, flushes, transacciones y aciertos de caché. MetricasDAO la registra en JMX junto con
+ * las latencias de los DAO.
+ *
+ * Hibernate solo recoge las estadísticas con hibernate.generate_statistics = true; pueden
+ * activarse y desactivarse sin reiniciar con setActivas, también desde JMX. Desactivadas,
+ * Hibernate deja de actualizar los contadores y su coste es despreciable.
+ *
+ * Solo guarda una referencia débil a la SessionFactory y obtiene sus estadísticas en cada consulta,
+ * de forma que el MBean registrado en JMX no impide liberar una SessionFactory que ya no se utiliza.
+ *
+ * @author Simon Gil
+ */
+public class EstadisticasHibernate implements EstadisticasHibernateMBean {
+	private Reference<SessionFactory> sessionFactory;
+
+	//Constructor que recibe la SessionFactory cuyas estadísticas se quieren consultar
+	public EstadisticasHibernate(SessionFactory sessionFactory) {
+		this.sessionFactory = new WeakReference<>(sessionFactory);
+	}
+
+	@Override
+	public boolean isActivas() {
+		return estadisticas().isStatisticsEnabled();
+	}
+	@Override
+	public void setActivas(boolean activas) {
+		estadisticas().setStatisticsEnabled(activas);
+	}
+
+	//Getters de las estadísticas
+	@Override
+	public long getConsultasEjecutadas() {
+		return estadisticas().getQueryExecutionCount();
+	}
+	@Override
+	public long getTiempoMaximoConsultaMillis() {
+		return estadisticas().getQueryExecutionMaxTime();
+	}
+	@Override
+	public String getConsultaMasLenta() {
+		return estadisticas().getQueryExecutionMaxTimeQueryString();
+	}
+	@Override
+	public long getSentenciasPreparadas() {
+		return estadisticas().getPrepareStatementCount();
+	}
+	@Override
+	public long getEntidadesCargadas() {
+		return estadisticas().getEntityLoadCount();
+	}
+	@Override
+	public long getEntidadesObtenidas() {
+		return estadisticas().getEntityFetchCount();
+	}
+	@Override
+	public long getEntidadesInsertadas() {
+		return estadisticas().getEntityInsertCount();
+	}
+	@Override
+	public long getEntidadesActualizadas() {
+		return estadisticas().getEntityUpdateCount();
+	}
+	@Override
+	public long getEntidadesBorradas() {
+		return estadisticas().getEntityDeleteCount();
+	}
+	@Override
+	public long getFlushes() {
+		return estadisticas().getFlushCount();
+	}
+	@Override
+	public long getSesionesAbiertas() {
+		return estadisticas().getSessionOpenCount();
+	}
+	@Override
+	public long getTransacciones() {
+		return estadisticas().getTransactionCount();
+	}
+	@Override
+	public long getConflictosVersion() {
+		return estadisticas().getOptimisticFailureCount();
+	}
+	@Override
+	public long getAciertosCacheSegundoNivel() {
+		return estadisticas().getSecondLevelCacheHitCount();
+	}
+	@Override
+	public long getFallosCacheSegundoNivel() {
+		return estadisticas().getSecondLevelCacheMissCount();
+	}
+
+	/*
+	 * Método para obtener un resumen de las estadísticas.
+	 *
+	 * Devuelve un String apto para mostrarse por consola.
+	 */
+	@Override
+	public String resumen() {
+		if (!isActivas()) {
+			return "Estadísticas de Hibernate desactivadas.";
+		}
+		return String.format("Estadísticas de Hibernate: | Consultas: %d | Sentencias preparadas: %d"
+				+ " | Entidades cargadas: %d | Obtenidas: %d | Insertadas: %d | Actualizadas: %d | Borradas: %d"
+				+ " | Flushes: %d | Sesiones: %d | Transacciones: %d | Conflictos de versión: %d"
+				+ " | Caché de segundo nivel: %d aciertos, %d fallos"
+				+ "%nConsulta más lenta (%d ms): %s",
+				getConsultasEjecutadas(), getSentenciasPreparadas(), getEntidadesCargadas(), getEntidadesObtenidas(),
+				getEntidadesInsertadas(), getEntidadesActualizadas(), getEntidadesBorradas(), getFlushes(),
+				getSesionesAbiertas(), getTransacciones(), getConflictosVersion(), getAciertosCacheSegundoNivel(),
+				getFallosCacheSegundoNivel(),
+				getTiempoMaximoConsultaMillis(), getConsultaMasLenta());
+	}
+
+	//Pone a cero todas las estadísticas de la SessionFactory
+	@Override
+	public void reiniciar() {
+		estadisticas().clear();
+	}
+
+	//Estadísticas de la SessionFactory. Lanza IllegalStateException si ya se ha liberado
+	private Statistics estadisticas() {
+		SessionFactory sessionFactory = this.sessionFactory.get();
+		if (sessionFactory == null) {
+			throw new IllegalStateException("La SessionFactory de las estadísticas ya no existe");
+		}
+		return sessionFactory.getStatistics();
+	}
+}
@@ -0,0 +1,31 @@
+package data_access_object;
+
+/**
+ * Interfaz JMX de EstadisticasHibernate
+ *
+ * Los atributos y operaciones de esta interfaz pueden consultarse con JConsole o VisualVM
+ * bajo el dominio "biblioteca", tipo EstadisticasHibernate.
+ *
+ * @author Simon Gil
+ */
+public interface EstadisticasHibernateMBean {
+	boolean isActivas();
+	void setActivas(boolean activas);
+	long getConsultasEjecutadas();
+	long getTiempoMaximoConsultaMillis();
+	String getConsultaMasLenta();
+	long getSentenciasPreparadas();
+	long getEntidadesCargadas();
+	long getEntidadesObtenidas();
+	long getEntidadesInsertadas();
+	long getEntidadesActualizadas();
+	long getEntidadesBorradas();
+	long getFlushes();
+	long getSesionesAbiertas();
+	long getTransacciones();
+	long getConflictosVersion();
+	long getAciertosCacheSegundoNivel();
+	long getFallosCacheSegundoNivel();
+	String resumen();
+	void reiniciar();
+}
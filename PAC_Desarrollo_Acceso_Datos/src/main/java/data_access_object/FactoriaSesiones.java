@@ -0,0 +1,134 @@
+package data_access_object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+/**
+ * Clase para crear la SessionFactory de la aplicación
+ * 
+ * Lee la configuración de hibernate.cfg.xml y le superpone una configuración externa, 
+ * de forma que los parámetros de conexión y del pool puedan ajustarse sin recompilar el jar.
+ * El orden de prioridad, de menor a mayor, es: hibernate.cfg.xml, el archivo de propiedades
+ * externo, el perfil, las propiedades recibidas por parámetro y las propiedades de sistema que
+ * empiezan por "hibernate." (por ejemplo -Dhibernate.hikari.maximumPoolSize=20).
+ * 
+ * Un perfil es un archivo perfil-<nombre>.properties incluido en el jar que cambia la base de
+ * datos. Se elige con la propiedad de sistema "biblioteca.perfil"; el perfil "h2"
+ * (-Dbiblioteca.perfil=h2) utiliza una base de datos H2 en memoria, que no necesita un servidor
+ * MySQL y se crea vacía en cada ejecución. Es el que utilizan las pruebas unitarias y las
+ * pruebas de rendimiento.
+ * 
+ * @author Simon Gil
+ */
+public class FactoriaSesiones {
+	//Propiedad de sistema con la ruta del archivo de configuración externo
+	public static final String PROPIEDAD_ARCHIVO_CONFIG = "biblioteca.config";
+	//Archivo que se utiliza si no se indica otro y existe en el directorio de ejecución
+	public static final String ARCHIVO_CONFIG_POR_DEFECTO = "biblioteca.properties";
+	//Propiedad de sistema con el nombre del perfil de base de datos
+	public static final String PROPIEDAD_PERFIL = "biblioteca.perfil";
+	//Perfil con la base de datos H2 en memoria
+	public static final String PERFIL_EMBEBIDO = "h2";
+
+	private FactoriaSesiones() {
+	}
+
+	/*
+	 * Método para crear la SessionFactory con la configuración de la aplicación.
+	 */
+	public static SessionFactory crearSessionFactory() {
+		return crearSessionFactory(new Properties());
+	}
+
+	/*
+	 * Método para crear la SessionFactory sobrescribiendo algunas propiedades.
+	 * 
+	 * Recibe un objeto Properties con propiedades de Hibernate que sustituyen
+	 * a las de hibernate.cfg.xml, a las del archivo externo y a las del perfil.
+	 * El perfil es el de la propiedad de sistema "biblioteca.perfil", si se ha indicado.
+	 */
+	public static SessionFactory crearSessionFactory(Properties propiedades) {
+		return crearSessionFactory(System.getProperty(PROPIEDAD_PERFIL), propiedades);
+	}
+
+	/*
+	 * Método para crear la SessionFactory con un perfil de base de datos.
+	 * 
+	 * Recibe el nombre del perfil (por ejemplo PERFIL_EMBEBIDO), o null para utilizar la
+	 * base de datos de hibernate.cfg.xml, y propiedades de Hibernate que sustituyen a las del perfil.
+	 */
+	public static SessionFactory crearSessionFactory(String perfil, Properties propiedades) {
+		Configuration configuracion = new Configuration().configure();
+		configuracion.addProperties(leerArchivoExterno());
+		configuracion.addProperties(leerPerfil(perfil));
+		configuracion.addProperties(propiedades);
+		configuracion.addProperties(leerPropiedadesSistema());
+		configuracion.setSessionFactoryObserver(new CierreSessionFactory());
+		return configuracion.buildSessionFactory();
+	}
+
+	/*
+	 * Método para leer el archivo de configuración externo.
+	 * 
+	 * Devuelve las propiedades del archivo indicado en la propiedad de sistema
+	 * "biblioteca.config", o de biblioteca.properties si existe en el directorio actual.
+	 * Si no hay archivo devuelve un Properties vacío.
+	 */
+	private static Properties leerArchivoExterno() {
+		Properties propiedades = new Properties();
+		String ruta = System.getProperty(PROPIEDAD_ARCHIVO_CONFIG);
+		Path archivo = Paths.get(ruta != null ? ruta : ARCHIVO_CONFIG_POR_DEFECTO);
+		if (ruta == null && !Files.exists(archivo)) {
+			return propiedades;
+		}
+		try (InputStream entrada = Files.newInputStream(archivo)) {
+			propiedades.load(entrada);
+			System.out.println("Configuración externa cargada desde: " + archivo.toAbsolutePath());
+		} catch (IOException e) {
+			throw new IllegalStateException("No ha sido posible leer la configuración externa: " + archivo, e);
+		}
+		return propiedades;
+	}
+
+	/*
+	 * Método para leer un perfil de base de datos.
+	 * 
+	 * Devuelve las propiedades del archivo perfil-<nombre>.properties del classpath,
+	 * o un Properties vacío si el nombre es null o está vacío.
+	 * Lanza IllegalArgumentException si el perfil no existe.
+	 */
+	private static Properties leerPerfil(String perfil) {
+		Properties propiedades = new Properties();
+		if (perfil == null || perfil.trim().isEmpty()) {
+			return propiedades;
+		}
+		String recurso = "perfil-" + perfil.trim() + ".properties";
+		try (InputStream entrada = FactoriaSesiones.class.getClassLoader().getResourceAsStream(recurso)) {
+			if (entrada == null) {
+				throw new IllegalArgumentException("No existe el perfil de base de datos: " + perfil);
+			}
+			propiedades.load(entrada);
+		} catch (IOException e) {
+			throw new IllegalStateException("No ha sido posible leer el perfil de base de datos: " + recurso, e);
+		}
+		return propiedades;
+	}
+
+	//Devuelve las propiedades de sistema de Hibernate (las que empiezan por "hibernate.")
+	private static Properties leerPropiedadesSistema() {
+		Properties propiedades = new Properties();
+		for (String nombre : System.getProperties().stringPropertyNames()) {
+			if (nombre.startsWith("hibernate.")) {
+				propiedades.setProperty(nombre, System.getProperty(nombre));
+			}
+		}
+		return propiedades;
+	}
+}
@@ -0,0 +1,130 @@
+package data_access_object;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de las latencias de un método
+ *
+ * Acumula el número de llamadas, el número de errores y la duración de cada llamada en
+ * nanosegundos. Las duraciones se cuentan en cubetas de tamaño creciente: cada potencia de dos
+ * se divide en 8 cubetas iguales, así que los percentiles se obtienen con un error máximo del
+ * 12,5% ocupando unos 4 KB por histograma, sin guardar cada duración.
+ *
+ * Igual que MetricasPool, se actualiza desde varios hilos a la vez con contadores atómicos
+ * que no necesitan sincronización.
+ *
+ * @author Simon Gil
+ */
+public class HistogramaLatencias {
+	//Bits de la mantisa que se conservan: 2^3 = 8 cubetas por cada potencia de dos
+	private static final int BITS_SUBCUBETA = 3;
+	private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+	//Los valores menores que 2 * SUBCUBETAS tienen una cubeta propia; el mayor exponente de un long es 62
+	private static final int NUM_CUBETAS = (62 - BITS_SUBCUBETA + 2) * SUBCUBETAS;
+
+	private AtomicLongArray cubetas = new AtomicLongArray(NUM_CUBETAS);
+	private LongAdder llamadas = new LongAdder();
+	private LongAdder errores = new LongAdder();
+	private LongAdder totalNanos = new LongAdder();
+	private LongAccumulator maximoNanos = new LongAccumulator(Math::max, 0);
+
+	/*
+	 * Método para registrar una llamada.
+	 *
+	 * Recibe su duración en nanosegundos y si ha terminado con error.
+	 */
+	public void registrar(long nanos, boolean error) {
+		long duracion = Math.max(nanos, 0);
+		this.cubetas.incrementAndGet(cubeta(duracion));
+		this.llamadas.increment();
+		this.totalNanos.add(duracion);
+		this.maximoNanos.accumulate(duracion);
+		if (error) {
+			this.errores.increment();
+		}
+	}
+
+	/*
+	 * Método para obtener un percentil de las latencias, en milisegundos.
+	 *
+	 * Recibe un valor entre 0 y 1 (0.5 para la mediana, 0.99 para el percentil 99) y devuelve
+	 * el límite superior de la cubeta en la que cae, sin superar la latencia máxima registrada.
+	 * Devuelve 0 si no se ha registrado ninguna llamada.
+	 */
+	public double getPercentilMillis(double percentil) {
+		long[] recuento = new long[NUM_CUBETAS];
+		long total = 0;
+		for (int i = 0; i < NUM_CUBETAS; i++) {
+			recuento[i] = this.cubetas.get(i);
+			total += recuento[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long posicion = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentil, 0), 1) * total));
+		long acumulado = 0;
+		for (int i = 0; i < NUM_CUBETAS; i++) {
+			acumulado += recuento[i];
+			if (acumulado >= posicion) {
+				return enMillis(Math.min(limiteSuperior(i), this.maximoNanos.get()));
+			}
+		}
+		return getMaximoMillis();
+	}
+
+	public double getP50Millis() {
+		return getPercentilMillis(0.5);
+	}
+	public double getP99Millis() {
+		return getPercentilMillis(0.99);
+	}
+	public double getMaximoMillis() {
+		return enMillis(this.maximoNanos.get());
+	}
+	public double getMediaMillis() {
+		long numLlamadas = this.llamadas.sum();
+		return numLlamadas == 0 ? 0 : enMillis(this.totalNanos.sum()) / numLlamadas;
+	}
+	public long getLlamadas() {
+		return this.llamadas.sum();
+	}
+	public long getErrores() {
+		return this.errores.sum();
+	}
+
+	/*
+	 * Método para obtener un resumen del histograma.
+	 *
+	 * Devuelve un String apto para mostrarse por consola.
+	 */
+	public String resumen() {
+		return String.format("Llamadas: %d | Errores: %d | Media: %.3f ms | p50: %.3f ms | p99: %.3f ms | Máx: %.3f ms",
+				getLlamadas(), getErrores(), getMediaMillis(), getP50Millis(), getP99Millis(), getMaximoMillis());
+	}
+
+	//Cubeta de una duración: los valores pequeños tienen la suya y el resto se agrupan por exponente y mantisa
+	private static int cubeta(long nanos) {
+		if (nanos < 2 * SUBCUBETAS) {
+			return (int) nanos;
+		}
+		int exponente = 63 - Long.numberOfLeadingZeros(nanos);
+		return (exponente - BITS_SUBCUBETA) * SUBCUBETAS + (int) (nanos >>> (exponente - BITS_SUBCUBETA));
+	}
+
+	//Mayor duración que se cuenta en una cubeta
+	private static long limiteSuperior(int cubeta) {
+		if (cubeta < 2 * SUBCUBETAS) {
+			return cubeta;
+		}
+		int desplazamiento = cubeta / SUBCUBETAS - 1;
+		long mantisa = cubeta % SUBCUBETAS + SUBCUBETAS;
+		return ((mantisa + 1) << desplazamiento) - 1;
+	}
+
+	private static double enMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
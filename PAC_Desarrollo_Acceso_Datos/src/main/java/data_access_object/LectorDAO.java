@@ -1,13 +1,20 @@
 package data_access_object;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 
+import data_model.FilaLector;
 import data_model.Lector;
+import data_model.Libro;
 
 /**
  * Clase Data Access Object para la entidad Lector
@@ -18,6 +25,23 @@ import data_model.Lector;
  * @author Simon Gil
  */
 public class LectorDAO extends EntidadDAO {
+	//Proyección de la tabla Lector con los datos que se muestran en los listados
+	private static final String CONSULTA_FILAS = "SELECT new data_model.FilaLector(l.idLector, l.nombre, l.apellidos, "
+			+ "l.email, l.fechaNacimiento) FROM Lector l";
+	//Nombres de los métodos en las métricas de MetricasDAO
+	private static final String INSERTAR_LECTOR = metodo(LectorDAO.class, "insertarLector");
+	private static final String INSERTAR_LECTORES = metodo(LectorDAO.class, "insertarLectores");
+	private static final String BORRAR_LECTOR = metodo(LectorDAO.class, "borrarLector");
+	private static final String ACTUALIZAR_LECTOR = metodo(LectorDAO.class, "actualizarLector");
+	private static final String OBTENER_LECTOR = metodo(LectorDAO.class, "obtenerLector");
+	private static final String OBTENER_LECTORES = metodo(LectorDAO.class, "obtenerLectores");
+	private static final String CONTAR_LECTORES = metodo(LectorDAO.class, "contarLectores");
+	private static final String EXISTEN_LECTORES = metodo(LectorDAO.class, "existenLectores");
+	private static final String EXISTE_LECTOR = metodo(LectorDAO.class, "existeLector");
+	private static final String RECORRER_LECTORES = metodo(LectorDAO.class, "recorrerLectores");
+	private static final String OBTENER_LECTORES_PAGINA = metodo(LectorDAO.class, "obtenerLectores", int.class, int.class);
+	private static final String RECORRER_FILAS_LECTORES = metodo(LectorDAO.class, "recorrerFilasLectores");
+	private static final String OBTENER_FILAS_LECTORES = metodo(LectorDAO.class, "obtenerFilasLectores");
 	/*
 	 * Constructor de la clase.
 	 * 
@@ -27,6 +51,16 @@ public class LectorDAO extends EntidadDAO {
 		super(session);
 	}
 	
+	/*
+	 * Constructor de la clase.
+	 * 
+	 * Recibe una SessionFactory: cada operación abre y cierra su propia sesión,
+	 * por lo que el DAO puede compartirse entre hilos.
+	 */
+	public LectorDAO(SessionFactory sessionFactory) {
+		super(sessionFactory);
+	}
+	
 	/*
 	 * Método para insertar lector.
 	 * 
@@ -36,37 +70,118 @@ public class LectorDAO extends EntidadDAO {
 	 * 
 	 */
 	public int insertarLector(Lector lector) {
-		Transaction tx =  this.session.beginTransaction();
+		try (Medicion medicion = medir(INSERTAR_LECTOR)) {
+			return medicion.correcta(insertarLectorSinMedir(lector));
+		}
+	}
+
+	private int insertarLectorSinMedir(Lector lector) {
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
 		try {
-			int id = (int) this.session.save(lector);
+			int id = (int) session.save(lector);
 			tx.commit();
+			this.observadores.notificarInsercion(Lector.class, lector);
 			return id;
 		}catch(Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
 			return -1;
 		}
 	}
+	/*
+	 * Método para insertar varios lectores.
+	 * 
+	 * Recibe una colección de objetos Lector y los inserta en una única transacción
+	 * utilizando lotes JDBC. Devuelve los IDs asignados en el orden de la colección,
+	 * o una lista vacía en caso de error.
+	 */
+	public List<Integer> insertarLectores(Collection<Lector> lectores) {
+		return insertarLectores(lectores, lote -> {});
+	}
+	/*
+	 * Método para insertar varios lectores informando de cada lote.
+	 * 
+	 * Igual que insertarLectores, pero pasa al consumidor recibido el número de registros
+	 * y la duración de cada lote JDBC enviado a la base de datos.
+	 */
+	public List<Integer> insertarLectores(Collection<Lector> lectores, Consumer<? super LoteInsertado> informe) {
+		try (Medicion medicion = medir(INSERTAR_LECTORES)) {
+			return medicion.correcta(insertarLectoresSinMedir(lectores, informe));
+		}
+	}
+
+	private List<Integer> insertarLectoresSinMedir(Collection<Lector> lectores, Consumer<? super LoteInsertado> informe) {
+		List<Integer> ids = insertarEnLotes(lectores, informe);
+		if (!ids.isEmpty()) {
+			lectores.forEach(lector -> this.observadores.notificarInsercion(Lector.class, lector));
+		}
+		return ids;
+	}
 	/*
 	 * Método para eliminar un Lector
 	 * 
-	 * Recibe el ID de un Lector y lo elimina de la base de datos.
+	 * Recibe el ID de un Lector y lo elimina de la base de datos junto con todos sus préstamos,
+	 * en una única transacción. Los libros que el lector tenía pendientes de devolución vuelven
+	 * a estar disponibles. Los préstamos se borran con un único DELETE por conjunto, pero el lector
+	 * y los libros pendientes se leen con bloqueo de escritura y se modifican como entidades: un
+	 * UPDATE o un DELETE de HQL sobre Libro o Lector vaciaría la región entera de la caché de
+	 * segundo nivel, y así solo se invalidan las entradas del lector y de sus libros.
 	 */
 	public void borrarLector(int idLector) {
-		 Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(BORRAR_LECTOR)) {
+			borrarLectorSinMedir(idLector);
+			medicion.correcta();
+		}
+	}
+
+	private void borrarLectorSinMedir(int idLector) {
+		 Session session = sesion();
+		 Transaction tx = session.beginTransaction();
+		 Lector lector = null;
+		 List<Libro> librosLiberados = new ArrayList<>();
 	        try {
-	            Lector lector = session.get(Lector.class, idLector);
+	            lector = session.get(Lector.class, idLector);
 	            if(lector != null) {
-	            session.delete(lector);
+	            	// La instancia de la sesión compartida puede estar desactualizada
+	            	session.refresh(lector, LockMode.PESSIMISTIC_WRITE);
+	            	// Libros pendientes de devolución, que vuelven a estar disponibles
+	            	librosLiberados.addAll(session.createQuery("FROM Libro l WHERE l.idLibro IN "
+	            			+ "(SELECT p.libro.idLibro FROM Prestamo p WHERE p.lector.idLector = :idLector "
+	            			+ "AND p.fechaDevolucion IS NULL)", Libro.class)
+	            			.setParameter("idLector", idLector)
+	            			.setLockMode("l", LockMode.PESSIMISTIC_WRITE)
+	            			.getResultList());
+	            	List<Integer> idsLiberados = new ArrayList<>();
+	            	for (Libro libro : librosLiberados) {
+	            		session.setReadOnly(libro, false);
+	            		libro.setDisponible(true);
+	            		idsLiberados.add(libro.getIdLibro());
+	            	}
+	            	int prestamos = session.createQuery("DELETE FROM Prestamo p WHERE p.lector.idLector = :idLector")
+	            			.setParameter("idLector", idLector)
+	            			.executeUpdate();
+	            	session.delete(lector);
 	            tx.commit();
-	            System.out.println("Lector con ID: " + idLector + " eliminado exitósamente.");
+	            this.observadores.notificarBorrado(Lector.class, idLector);
+	            this.observadores.notificarDisponibilidad(idsLiberados, true);
+	            System.out.println("Lector con ID: " + idLector + " eliminado exitósamente junto con sus "
+	            		+ prestamos + " préstamos.");
 	            }else {
 	            	System.out.println("No se ha encontradó ningún lector con el ID proporcionado.");
+	            	tx.rollback();
 	            }
-	        } catch (HibernateException e) {
+	        } catch (Exception e) {
 				if (tx != null) {
 					tx.rollback();
 				}
+	            for (Libro libro : librosLiberados) {
+	            	libro.setDisponible(false);
+	            }
+	            descartar(session, lector);
+	            descartar(session, librosLiberados.toArray());
+	            registrarError();
 	            System.out.println("Error al eliminar el lector: " + e.getMessage());
 	        }
 	}
@@ -77,16 +192,33 @@ public class LectorDAO extends EntidadDAO {
 	 * Recibe un objeto Lector y actualiza el registro cuya Primary Key 
 	 * coincida con el atributo idLector del objeto. Los valores de los atributos
 	 * del objeto sustituirán los valores de los campos de la base de datos.
+	 * Si el lector ha cambiado en la base de datos desde que se leyó (su versión no coincide),
+	 * no se modifica y se lanza ConflictoConcurrenciaException.
 	 * 
 	 */
 	public void actualizarLector(Lector lector) {
-		 Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(ACTUALIZAR_LECTOR)) {
+			actualizarLectorSinMedir(lector);
+			medicion.correcta();
+		}
+	}
+
+	private void actualizarLectorSinMedir(Lector lector) {
+		 Session session = sesion();
+		 Transaction tx = session.beginTransaction();
 	        try {
-	            this.session.update(lector);
+	            actualizar(session, lector);
 	            tx.commit();
+	            this.observadores.notificarActualizacion(Lector.class, lector);
 	        } catch (Exception e) {
 	            tx.rollback();
+	            if (esConflictoVersion(e)) {
+	            	descartar(session, lector);
+	            	throw new ConflictoConcurrenciaException("El lector con ID: " + lector.getIdLector()
+	            			+ " ha sido modificado o eliminado por otra operación.", e);
+	            }
 	            System.out.println("Error al modificar el lector:");
+	            registrarError();
 	            e.printStackTrace();
 	        }
 	}
@@ -98,14 +230,24 @@ public class LectorDAO extends EntidadDAO {
 	 * objeto Lector tras realizar un SELECT en la base de datos.
 	 */
 	public Lector obtenerLector(int idLector) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_LECTOR)) {
+			return medicion.correcta(obtenerLectorSinMedir(idLector));
+		}
+	}
+
+	private Lector obtenerLectorSinMedir(int idLector) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
         Lector lector = null;
         try {
-            lector = this.session.get(Lector.class, idLector);
+            lector = session.get(Lector.class, idLector);
             tx.commit();
         } catch (Exception e) {
             tx.rollback();
+            registrarError();
             e.printStackTrace();
+        } finally {
+        	terminarLectura(session);
         }
         return lector;
 	}
@@ -116,7 +258,14 @@ public class LectorDAO extends EntidadDAO {
 	 * Devuelve una estructura List de objetos tipo Lector.
 	 */
 	public List<Lector> obtenerLectores(){
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_LECTORES)) {
+			return medicion.correcta(obtenerLectoresSinMedir());
+		}
+	}
+
+	private List<Lector> obtenerLectoresSinMedir(){
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
 		List<Lector> lectores = null;
 		try {
 			Query query = session.createQuery("FROM Lector", Lector.class);
@@ -124,9 +273,128 @@ public class LectorDAO extends EntidadDAO {
 			tx.commit();
 		}catch(Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
 		}
 		return lectores;
 		
 	}
+	
+	/*
+	 * Método para contar los lectores de la base de datos.
+	 * 
+	 * Devuelve el resultado de un SELECT COUNT, o -1 si la consulta falla.
+	 */
+	public long contarLectores() {
+		try (Medicion medicion = medir(CONTAR_LECTORES)) {
+			return medicion.correcta(contar("SELECT COUNT(l) FROM Lector l"));
+		}
+	}
+	
+	/*
+	 * Método para comprobar si hay algún lector en la base de datos.
+	 * 
+	 * Solo lee una fila, en lugar de cargar la tabla completa.
+	 */
+	public boolean existenLectores() {
+		try (Medicion medicion = medir(EXISTEN_LECTORES)) {
+			return medicion.correcta(existe("SELECT 1 FROM Lector l"));
+		}
+	}
+	
+	/*
+	 * Método para comprobar si existe un lector con el ID indicado.
+	 * 
+	 * Consulta solo la clave primaria, sin cargar el lector.
+	 */
+	public boolean existeLector(int idLector) {
+		try (Medicion medicion = medir(EXISTE_LECTOR)) {
+			return medicion.correcta(existe("SELECT 1 FROM Lector l WHERE l.idLector = ?1", idLector));
+		}
+	}
+	
+	/*
+	 * Método para recorrer todos los lectores sin cargarlos a la vez en memoria.
+	 * 
+	 * Lee la tabla Lector con un cursor, en orden de ID, y pasa cada lector al
+	 * consumidor recibido. Devuelve el número de lectores recorridos.
+	 */
+	public long recorrerLectores(Consumer<Lector> consumidor) {
+		try (Medicion medicion = medir(RECORRER_LECTORES)) {
+			return medicion.correcta(recorrer("FROM Lector l ORDER BY l.idLector", Lector.class, consumidor));
+		}
+	}
+	
+	/*
+	 * Método para obtener los lectores página a página.
+	 * 
+	 * Devuelve como máximo "limite" lectores cuyo ID es mayor que "despuesDeId",
+	 * ordenados por ID.
+	 */
+	public List<Lector> obtenerLectores(int despuesDeId, int limite) {
+		try (Medicion medicion = medir(OBTENER_LECTORES_PAGINA)) {
+			return medicion.correcta(obtenerPagina("FROM Lector l WHERE l.idLector > :despuesDeId ORDER BY l.idLector", Lector.class,
+					despuesDeId, limite));
+		}
+	}
+
+	/*
+	 * Método para recorrer los datos de todos los lectores para un listado.
+	 * 
+	 * Igual que recorrerLectores, pero la consulta es una proyección que crea directamente
+	 * objetos FilaLector, que no son entidades y no entran en el contexto de persistencia.
+	 */
+	public long recorrerFilasLectores(Consumer<FilaLector> consumidor) {
+		try (Medicion medicion = medir(RECORRER_FILAS_LECTORES)) {
+			return medicion.correcta(recorrer(CONSULTA_FILAS + " ORDER BY l.idLector", FilaLector.class, consumidor));
+		}
+	}
+	
+	/*
+	 * Método para obtener los datos de los lectores página a página para un listado.
+	 * 
+	 * Devuelve como máximo "limite" filas de lectores cuyo ID es mayor que "despuesDeId",
+	 * ordenadas por ID.
+	 */
+	public List<FilaLector> obtenerFilasLectores(int despuesDeId, int limite) {
+		try (Medicion medicion = medir(OBTENER_FILAS_LECTORES)) {
+			return medicion.correcta(obtenerPagina(CONSULTA_FILAS + " WHERE l.idLector > :despuesDeId ORDER BY l.idLector",
+					FilaLector.class, despuesDeId, limite));
+		}
+	}
+
+	/*
+	 * Variantes asíncronas de los métodos anteriores.
+	 * 
+	 * Devuelven un CompletableFuture con el mismo resultado que el método síncrono.
+	 * Con un DAO creado a partir de una SessionFactory cada operación se ejecuta en segundo
+	 * plano con su propia sesión (ver EntidadDAO.asincrono).
+	 */
+	public CompletableFuture<Integer> insertarLectorAsincrono(Lector lector) {
+		return asincrono(() -> insertarLector(lector));
+	}
+
+	public CompletableFuture<Void> borrarLectorAsincrono(int idLector) {
+		return asincrono(() -> {
+			borrarLector(idLector);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> actualizarLectorAsincrono(Lector lector) {
+		return asincrono(() -> {
+			actualizarLector(lector);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Lector> obtenerLectorAsincrono(int idLector) {
+		return asincrono(() -> obtenerLector(idLector));
+	}
+
+	public CompletableFuture<List<Lector>> obtenerLectoresAsincrono() {
+		return asincrono(this::obtenerLectores);
+	}
 }
@@ -2,13 +2,23 @@ package data_access_object;
 
 
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import org.hibernate.CacheMode;
 import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 
+import data_model.FilaLibro;
 import data_model.Lector;
 import data_model.Libro;
 /**
@@ -20,6 +30,29 @@ import data_model.Libro;
  * @author Simon Gil
  */
 public class LibroDAO extends EntidadDAO{
+	//Proyección de la tabla Libro con los datos que se muestran en los listados
+	private static final String CONSULTA_FILAS = "SELECT new data_model.FilaLibro(l.idLibro, l.titulo, l.autor, "
+			+ "l.anoPublicacion, l.disponible) FROM Libro l";
+	//Nombres de los métodos en las métricas de MetricasDAO
+	private static final String INSERTAR_LIBRO = metodo(LibroDAO.class, "insertarLibro");
+	private static final String INSERTAR_LIBROS = metodo(LibroDAO.class, "insertarLibros");
+	private static final String BORRAR_LIBRO = metodo(LibroDAO.class, "borrarLibro");
+	private static final String ACTUALIZAR_LIBRO = metodo(LibroDAO.class, "actualizarLibro");
+	private static final String OBTENER_LIBRO = metodo(LibroDAO.class, "obtenerLibro");
+	private static final String OBTENER_LIBROS_DISPONIBLES = metodo(LibroDAO.class, "obtenerLibrosDisponibles");
+	private static final String OBTENER_LIBROS = metodo(LibroDAO.class, "obtenerLibros");
+	private static final String OBTENER_LIBROS_IDS = metodo(LibroDAO.class, "obtenerLibros", Collection.class);
+	private static final String RECORRER_LIBROS = metodo(LibroDAO.class, "recorrerLibros");
+	private static final String OBTENER_LIBROS_PAGINA = metodo(LibroDAO.class, "obtenerLibros", int.class, int.class);
+	private static final String RECORRER_FILAS_LIBROS = metodo(LibroDAO.class, "recorrerFilasLibros");
+	private static final String RECORRER_FILAS_LIBROS_DISPONIBLES = metodo(LibroDAO.class, "recorrerFilasLibrosDisponibles");
+	private static final String RECORRER_IDS_LIBROS_DISPONIBLES = metodo(LibroDAO.class, "recorrerIdsLibrosDisponibles");
+	private static final String OBTENER_FILAS_LIBROS = metodo(LibroDAO.class, "obtenerFilasLibros");
+	private static final String CONTAR_LIBROS = metodo(LibroDAO.class, "contarLibros");
+	private static final String CONTAR_LIBROS_DISPONIBLES = metodo(LibroDAO.class, "contarLibrosDisponibles");
+	private static final String EXISTEN_LIBROS = metodo(LibroDAO.class, "existenLibros");
+	private static final String EXISTE_LIBRO = metodo(LibroDAO.class, "existeLibro");
+	private static final String LIBROS_ACTUALMENTE_PRESTADOS_LECTOR = metodo(LibroDAO.class, "librosActualmentePrestadosLector");
 	/*
 	 * Constructor de la clase.
 	 * Recibe un objeto Session como parámetro.
@@ -28,6 +61,15 @@ public class LibroDAO extends EntidadDAO{
 		super(session);
 	}
 	
+	/*
+	 * Constructor de la clase.
+	 * Recibe una SessionFactory: cada operación abre y cierra su propia sesión,
+	 * por lo que el DAO puede compartirse entre hilos.
+	 */
+	public LibroDAO(SessionFactory sessionFactory) {
+		super(sessionFactory);
+	}
+	
 	/*
 	 * Método para insertar un Libro en la base de datos.
 	 * 
@@ -35,42 +77,103 @@ public class LibroDAO extends EntidadDAO{
 	 * datos MySQL. Devuelve el ID del libro o -1 si algo ha fallado en la inserción
 	 */
 	public int insertarLibro(Libro libro) {
-		Transaction tx =  this.session.beginTransaction();
+		try (Medicion medicion = medir(INSERTAR_LIBRO)) {
+			return medicion.correcta(insertarLibroSinMedir(libro));
+		}
+	}
+
+	private int insertarLibroSinMedir(Libro libro) {
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
 		try {
-			int id = (int)this.session.save(libro);
+			int id = (int)session.save(libro);
 			tx.commit();
+			this.observadores.notificarInsercion(Libro.class, libro);
 			return id;
 		}catch(Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
 			return -1;
 		}
 	}
 	
+	/*
+	 * Método para insertar una colección de libros en la base de datos.
+	 * 
+	 * Inserta todos los libros en una única transacción utilizando lotes JDBC.
+	 * Devuelve los IDs asignados en el orden de la colección, o una lista vacía
+	 * si la inserción ha fallado.
+	 */
+	public List<Integer> insertarLibros(Collection<Libro> libros) {
+		return insertarLibros(libros, lote -> {});
+	}
+
+	/*
+	 * Método para insertar una colección de libros informando de cada lote.
+	 * 
+	 * Igual que insertarLibros, pero pasa al consumidor recibido el número de registros
+	 * y la duración de cada lote JDBC enviado a la base de datos.
+	 */
+	public List<Integer> insertarLibros(Collection<Libro> libros, Consumer<? super LoteInsertado> informe) {
+		try (Medicion medicion = medir(INSERTAR_LIBROS)) {
+			return medicion.correcta(insertarLibrosSinMedir(libros, informe));
+		}
+	}
+
+	private List<Integer> insertarLibrosSinMedir(Collection<Libro> libros, Consumer<? super LoteInsertado> informe) {
+		List<Integer> ids = insertarEnLotes(libros, informe);
+		if (!ids.isEmpty()) {
+			libros.forEach(libro -> this.observadores.notificarInsercion(Libro.class, libro));
+		}
+		return ids;
+	}
+	
 	/*
 	 * Método para eliminar un Libro de la base de datos.
 	 * 
 	 * Recibe un Integer que utiliza como ID de un Libro para eliminarlo 
-	 * de su tabla en la base de datos.
+	 * de su tabla en la base de datos. En la misma transacción elimina todos los
+	 * préstamos del libro con un único DELETE por conjunto, para no dejar préstamos huérfanos.
+	 * El libro se vuelve a leer con bloqueo de escritura, porque la instancia de la sesión
+	 * compartida puede estar desactualizada, y se borra como entidad: un DELETE de HQL sobre Libro
+	 * vaciaría la región libro entera de la caché de segundo nivel, y así solo se elimina su entrada.
 	 * 
 	 */
 	public void borrarLibro(int idLibro) {
-	      Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(BORRAR_LIBRO)) {
+			borrarLibroSinMedir(idLibro);
+			medicion.correcta();
+		}
+	}
+
+	private void borrarLibroSinMedir(int idLibro) {
+	      Session session = sesion();
+	      Transaction tx = session.beginTransaction();
+	      Libro libro = null;
 	        try {
-	            Libro libro = session.get(Libro.class, idLibro);
+	            libro = session.get(Libro.class, idLibro);
 	            if (libro != null) {
+	            	session.refresh(libro, LockMode.PESSIMISTIC_WRITE);
+	            	int prestamos = session.createQuery("DELETE FROM Prestamo p WHERE p.libro.idLibro = :idLibro")
+	            			.setParameter("idLibro", idLibro)
+	            			.executeUpdate();
 	            	session.delete(libro);
 	            	tx.commit();
-	            	System.out.println("Libro con ID: " + idLibro + " eliminado exitósamente.");
+	            	this.observadores.notificarBorrado(Libro.class, idLibro);
+	            	System.out.println("Libro con ID: " + idLibro + " eliminado exitósamente junto con sus "
+	            			+ prestamos + " préstamos.");
 	            }else {
 	            	System.out.println("No se encontró ningún libro con el ID proporcionado.");
 	            	tx.rollback();
 	            }
-	        } catch (HibernateException e) {
+	        } catch (Exception e) {
 	        	if (tx != null) {
 					tx.rollback();
 				}
+	        	descartar(session, libro);
 	        	System.out.println("Error al eliminar el libro:");
+	        	registrarError();
 	        	e.printStackTrace();
 	        }
 	    }
@@ -81,16 +184,33 @@ public class LibroDAO extends EntidadDAO{
 	 * Recibe un objeto Libro y actualiza el registro cuya Primary Key 
 	 * coincida con el atributo idLibro del objeto. Los valores de los atributos
 	 * del objeto sustituirán los valores de los campos de la base de datos.
+	 * Si el libro ha cambiado en la base de datos desde que se leyó (su versión no coincide),
+	 * no se modifica y se lanza ConflictoConcurrenciaException.
 	 * 
 	 */
 	public void actualizarLibro(Libro libro) {
-	       Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(ACTUALIZAR_LIBRO)) {
+			actualizarLibroSinMedir(libro);
+			medicion.correcta();
+		}
+	}
+
+	private void actualizarLibroSinMedir(Libro libro) {
+	       Session session = sesion();
+	       Transaction tx = session.beginTransaction();
 	        try {
-	            this.session.update(libro);
+	            actualizar(session, libro);
 	            tx.commit();
+	            this.observadores.notificarActualizacion(Libro.class, libro);
 	        } catch (Exception e) {
-	        	 System.out.println("No ha sido posible modificar el libro con ID: " + libro.getIdLibro() + ".");
 	            tx.rollback();
+	            if (esConflictoVersion(e)) {
+	            	descartar(session, libro);
+	            	throw new ConflictoConcurrenciaException("El libro con ID: " + libro.getIdLibro()
+	            			+ " ha sido modificado o eliminado por otra operación.", e);
+	            }
+	        	 System.out.println("No ha sido posible modificar el libro con ID: " + libro.getIdLibro() + ".");
+	            registrarError();
 	            e.printStackTrace();
 	        }
 	}
@@ -103,15 +223,25 @@ public class LibroDAO extends EntidadDAO{
 	 * 
 	 */
 	public Libro obtenerLibro(int idLibro) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_LIBRO)) {
+			return medicion.correcta(obtenerLibroSinMedir(idLibro));
+		}
+	}
+
+	private Libro obtenerLibroSinMedir(int idLibro) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
         Libro libro = null;
         try {
-            libro = this.session.get(Libro.class, idLibro);
+            libro = session.get(Libro.class, idLibro);
             tx.commit();
         } catch (HibernateException e) {
             tx.rollback();
             System.out.println("Error, no ha sido posible obtener un libro con el ID especificado: ");
+            registrarError();
             e.printStackTrace();
+        } finally {
+        	terminarLectura(session);
         }
         return libro;
 	}
@@ -121,18 +251,31 @@ public class LibroDAO extends EntidadDAO{
 	 * 
 	 * Devuelve una Lista con todos los Libros cuyo campo 
 	 * "Disponible" tiene el valor "1" o true.
+	 * Cada llamada consulta la base de datos. Para los listados repetidos, los IDs de los libros
+	 * disponibles pueden obtenerse de data_index.MapaDisponibilidad y los libros de la caché de
+	 * segundo nivel con obtenerLibros(Collection).
 	 * 
 	 */
 	public List<Libro> obtenerLibrosDisponibles(){
-	    Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_LIBROS_DISPONIBLES)) {
+			return medicion.correcta(obtenerLibrosDisponiblesSinMedir());
+		}
+	}
+
+	private List<Libro> obtenerLibrosDisponiblesSinMedir(){
+	    Session session = sesion();
+	    Transaction tx = iniciarLectura(session);
 	    List<Libro> libros = null;
 	    try {
-	    	Query<Libro> query = this.session.createQuery("FROM Libro WHERE disponible = true", Libro.class);
+	    	Query<Libro> query = session.createQuery("FROM Libro WHERE disponible = true", Libro.class);
 	       libros = query.getResultList();
 	       tx.commit();
 	    }catch(Exception e) {
 	    	tx.rollback();
+	    	registrarError();
 	    	e.printStackTrace();
+	    } finally {
+	    	terminarLectura(session);
 	    }
 	    return libros;
 	}
@@ -145,18 +288,192 @@ public class LibroDAO extends EntidadDAO{
 	 * 
 	 */
 	public List<Libro> obtenerLibros(){
-	    Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_LIBROS)) {
+			return medicion.correcta(obtenerLibrosSinMedir());
+		}
+	}
+
+	private List<Libro> obtenerLibrosSinMedir(){
+	    Session session = sesion();
+	    Transaction tx = iniciarLectura(session);
 	    List<Libro> libros = null;
 		try{
-			Query<Libro> query = this.session.createQuery("FROM Libro", Libro.class);
+			Query<Libro> query = session.createQuery("FROM Libro", Libro.class);
 			libros = query.getResultList();
 			tx.commit();
 		}catch(Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
 		}
 	       return libros;
 	}
+	/*
+	 * Método para obtener varios libros a partir de sus IDs.
+	 * 
+	 * Devuelve los libros en el orden de los IDs recibidos, sin los que no existen. Los libros
+	 * se buscan primero en la sesión y en la caché de segundo nivel, y solo los que no están en
+	 * ninguna de las dos se leen de la base de datos, con una única consulta por lote de IDs.
+	 * Devuelve null si la consulta falla.
+	 * 
+	 */
+	public List<Libro> obtenerLibros(Collection<Integer> idsLibro) {
+		try (Medicion medicion = medir(OBTENER_LIBROS_IDS)) {
+			return medicion.correcta(obtenerLibrosSinMedir(idsLibro));
+		}
+	}
+
+	private List<Libro> obtenerLibrosSinMedir(Collection<Integer> idsLibro) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
+		List<Libro> libros = null;
+		try {
+			libros = session.byMultipleIds(Libro.class)
+					.with(CacheMode.NORMAL)
+					.enableSessionCheck(true)
+					.multiLoad(new ArrayList<>(idsLibro))
+					.stream().filter(Objects::nonNull).collect(Collectors.toList());
+			tx.commit();
+		} catch (Exception e) {
+			tx.rollback();
+			registrarError();
+			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
+		}
+		return libros;
+	}
+
+	/*
+	 * Método para recorrer todos los libros sin cargarlos a la vez en memoria.
+	 * 
+	 * Lee la tabla Libro con un cursor, en orden de ID, y pasa cada libro al
+	 * consumidor recibido. Devuelve el número de libros recorridos.
+	 * 
+	 */
+	public long recorrerLibros(Consumer<Libro> consumidor) {
+		try (Medicion medicion = medir(RECORRER_LIBROS)) {
+			return medicion.correcta(recorrer("FROM Libro l ORDER BY l.idLibro", Libro.class, consumidor));
+		}
+	}
+	
+	/*
+	 * Método para obtener los libros página a página.
+	 * 
+	 * Devuelve como máximo "limite" libros cuyo ID es mayor que "despuesDeId", ordenados
+	 * por ID. Para obtener la página siguiente se pasa el ID del último libro recibido.
+	 * 
+	 */
+	public List<Libro> obtenerLibros(int despuesDeId, int limite) {
+		try (Medicion medicion = medir(OBTENER_LIBROS_PAGINA)) {
+			return medicion.correcta(obtenerPagina("FROM Libro l WHERE l.idLibro > :despuesDeId ORDER BY l.idLibro", Libro.class,
+					despuesDeId, limite));
+		}
+	}
+	
+	/*
+	 * Método para recorrer los datos de todos los libros para un listado.
+	 * 
+	 * Igual que recorrerLibros, pero la consulta es una proyección que crea directamente
+	 * objetos FilaLibro, que no son entidades y no entran en el contexto de persistencia.
+	 * Devuelve el número de libros recorridos.
+	 * 
+	 */
+	public long recorrerFilasLibros(Consumer<FilaLibro> consumidor) {
+		try (Medicion medicion = medir(RECORRER_FILAS_LIBROS)) {
+			return medicion.correcta(recorrer(CONSULTA_FILAS + " ORDER BY l.idLibro", FilaLibro.class, consumidor));
+		}
+	}
+
+	/*
+	 * Método para recorrer los datos de los libros disponibles para un listado.
+	 * 
+	 * Igual que recorrerFilasLibros, pero solo con los libros disponibles para préstamo.
+	 * Devuelve el número de libros disponibles recorridos.
+	 * 
+	 */
+	public long recorrerFilasLibrosDisponibles(Consumer<FilaLibro> consumidor) {
+		try (Medicion medicion = medir(RECORRER_FILAS_LIBROS_DISPONIBLES)) {
+			return medicion.correcta(recorrer(CONSULTA_FILAS + " WHERE l.disponible = true ORDER BY l.idLibro", FilaLibro.class,
+					consumidor));
+		}
+	}
+
+	/*
+	 * Método para recorrer los IDs de los libros disponibles para préstamo.
+	 * 
+	 * Solo lee la columna de la clave primaria, con un cursor, en orden de ID.
+	 * Devuelve el número de libros disponibles recorridos.
+	 */
+	public long recorrerIdsLibrosDisponibles(Consumer<Integer> consumidor) {
+		try (Medicion medicion = medir(RECORRER_IDS_LIBROS_DISPONIBLES)) {
+			return medicion.correcta(recorrer("SELECT l.idLibro FROM Libro l WHERE l.disponible = true ORDER BY l.idLibro", Integer.class,
+					consumidor));
+		}
+	}
+	
+	/*
+	 * Método para obtener los datos de los libros página a página para un listado.
+	 * 
+	 * Devuelve como máximo "limite" filas de libros cuyo ID es mayor que "despuesDeId",
+	 * ordenadas por ID.
+	 * 
+	 */
+	public List<FilaLibro> obtenerFilasLibros(int despuesDeId, int limite) {
+		try (Medicion medicion = medir(OBTENER_FILAS_LIBROS)) {
+			return medicion.correcta(obtenerPagina(CONSULTA_FILAS + " WHERE l.idLibro > :despuesDeId ORDER BY l.idLibro", FilaLibro.class,
+					despuesDeId, limite));
+		}
+	}
+	
+	/*
+	 * Método para contar los libros de la base de datos.
+	 * 
+	 * Devuelve el resultado de un SELECT COUNT, o -1 si la consulta falla.
+	 * 
+	 */
+	public long contarLibros() {
+		try (Medicion medicion = medir(CONTAR_LIBROS)) {
+			return medicion.correcta(contar("SELECT COUNT(l) FROM Libro l"));
+		}
+	}
+	
+	/*
+	 * Método para contar los libros disponibles para préstamo.
+	 * 
+	 */
+	public long contarLibrosDisponibles() {
+		try (Medicion medicion = medir(CONTAR_LIBROS_DISPONIBLES)) {
+			return medicion.correcta(contar("SELECT COUNT(l) FROM Libro l WHERE l.disponible = true"));
+		}
+	}
+	
+	/*
+	 * Método para comprobar si hay algún libro en la base de datos.
+	 * 
+	 * Solo lee una fila, en lugar de cargar la tabla completa.
+	 * 
+	 */
+	public boolean existenLibros() {
+		try (Medicion medicion = medir(EXISTEN_LIBROS)) {
+			return medicion.correcta(existe("SELECT 1 FROM Libro l"));
+		}
+	}
+	
+	/*
+	 * Método para comprobar si existe un libro con el ID indicado.
+	 * 
+	 * Consulta solo la clave primaria, sin cargar el libro.
+	 * 
+	 */
+	public boolean existeLibro(int idLibro) {
+		try (Medicion medicion = medir(EXISTE_LIBRO)) {
+			return medicion.correcta(existe("SELECT 1 FROM Libro l WHERE l.idLibro = ?1", idLibro));
+		}
+	}
+	
 	/*
 	 * Metodo para obtener los libros actualmente prestados a un lector.
 	 * 
@@ -165,21 +482,70 @@ public class LibroDAO extends EntidadDAO{
 	 * 
 	 */
 	public List<Libro> librosActualmentePrestadosLector(int idLector){
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(LIBROS_ACTUALMENTE_PRESTADOS_LECTOR)) {
+			return medicion.correcta(librosActualmentePrestadosLectorSinMedir(idLector));
+		}
+	}
+
+	private List<Libro> librosActualmentePrestadosLectorSinMedir(int idLector){
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
 		List<Libro> libros = null;
 		try {
-			Query<Libro> query = this.session.createQuery("SELECT p.libro FROM Prestamo p WHERE p.lector.idLector = :idLector AND p.fechaDevolucion = null", Libro.class);
+			Query<Libro> query = session.createQuery("SELECT p.libro FROM Prestamo p WHERE p.lector.idLector = :idLector AND p.fechaDevolucion = null", Libro.class);
 			query.setParameter("idLector", idLector);
 			libros = query.getResultList();
 			tx.commit();
 		}catch(Exception e) {
+		registrarError();
 		e.printStackTrace();
 		tx.rollback();
+		} finally {
+			terminarLectura(session);
 		}
 		return libros;
 	}
 	
 		
-}
 
+	/*
+	 * Variantes asíncronas de los métodos anteriores.
+	 * 
+	 * Devuelven un CompletableFuture con el mismo resultado que el método síncrono.
+	 * Con un DAO creado a partir de una SessionFactory cada operación se ejecuta en segundo
+	 * plano con su propia sesión (ver EntidadDAO.asincrono).
+	 */
+	public CompletableFuture<Integer> insertarLibroAsincrono(Libro libro) {
+		return asincrono(() -> insertarLibro(libro));
+	}
+
+	public CompletableFuture<Void> borrarLibroAsincrono(int idLibro) {
+		return asincrono(() -> {
+			borrarLibro(idLibro);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> actualizarLibroAsincrono(Libro libro) {
+		return asincrono(() -> {
+			actualizarLibro(libro);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Libro> obtenerLibroAsincrono(int idLibro) {
+		return asincrono(() -> obtenerLibro(idLibro));
+	}
+
+	public CompletableFuture<List<Libro>> obtenerLibrosAsincrono() {
+		return asincrono(this::obtenerLibros);
+	}
 
+	public CompletableFuture<List<Libro>> obtenerLibrosDisponiblesAsincrono() {
+		return asincrono(this::obtenerLibrosDisponibles);
+	}
+
+	public CompletableFuture<List<Libro>> librosActualmentePrestadosLectorAsincrono(int idLector) {
+		return asincrono(() -> librosActualmentePrestadosLector(idLector));
+	}
+}
@@ -0,0 +1,45 @@
+package data_access_object;
+
+/* Clase de solo lectura con el resultado de un lote de una inserción masiva
+* 
+* Los métodos insertarLibros, insertarLectores e insertarPrestamos de los DAO pueden recibir
+* un consumidor al que pasan uno de estos objetos cada vez que envían un lote a la base de datos,
+* con el número de lote, los registros que contiene y lo que ha tardado, para poder medir el
+* rendimiento de la inserción sin escribir por consola.
+* 
+* @author Simon Gil
+*/
+public final class LoteInsertado {
+	//Atributos de la clase
+	private final int numLote;
+	private final int registros;
+	private final long duracionNanos;
+
+	//Constructor con todos los atributos
+	public LoteInsertado(int numLote, int registros, long duracionNanos) {
+		this.numLote = numLote;
+		this.registros = registros;
+		this.duracionNanos = duracionNanos;
+	}
+
+	//Getters de la clase
+	public int getNumLote() {
+		return numLote;
+	}
+	public int getRegistros() {
+		return registros;
+	}
+	public long getDuracionNanos() {
+		return duracionNanos;
+	}
+
+	//Registros insertados por segundo en el lote
+	public long getRegistrosPorSegundo() {
+		return this.duracionNanos > 0 ? Math.round(this.registros * 1_000_000_000.0 / this.duracionNanos) : this.registros;
+	}
+
+	public String toString() {
+		return "Lote " + this.numLote + ": " + this.registros + " registros insertados en "
+				+ Math.round(this.duracionNanos / 1_000_000.0) + " ms (" + getRegistrosPorSegundo() + " registros/s)";
+	}
+}
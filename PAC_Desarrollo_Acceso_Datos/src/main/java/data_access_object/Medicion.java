@@ -0,0 +1,71 @@
+package data_access_object;
+
+/**
+ * Medición de una llamada a un método de un DAO
+ *
+ * Se obtiene con MetricasDAO.iniciar al empezar la llamada y se cierra al terminarla, con un
+ * bloque try-with-resources. Al cerrarse registra la duración en el histograma del método, como
+ * error si la llamada no se ha marcado como correcta (ha lanzado una excepción) o si ha
+ * llamado a registrarError.
+ *
+ * Con las métricas desactivadas se utiliza siempre la medición vacía NINGUNA, que no registra
+ * nada, de forma que medir una llamada no reserva memoria. Los métodos correcta tienen
+ * versiones para int, long y boolean para no convertir el resultado en un objeto.
+ *
+ * @author Simon Gil
+ */
+public class Medicion implements AutoCloseable {
+	//Medición que no registra nada, para cuando las métricas están desactivadas
+	static final Medicion NINGUNA = new Medicion(null, null);
+
+	private final HistogramaLatencias histograma;
+	//Contador de errores del hilo que hace la llamada (MetricasDAO.registrarError)
+	private final long[] erroresHilo;
+	private final long erroresPrevios;
+	private final long inicio;
+	private boolean correcta;
+
+	Medicion(HistogramaLatencias histograma, long[] erroresHilo) {
+		this.histograma = histograma;
+		this.erroresHilo = erroresHilo;
+		this.erroresPrevios = erroresHilo == null ? 0 : erroresHilo[0];
+		this.inicio = histograma == null ? 0 : System.nanoTime();
+	}
+
+	/*
+	 * Métodos para marcar la llamada como terminada sin excepciones.
+	 *
+	 * Devuelven el resultado de la llamada que reciben.
+	 */
+	public void correcta() {
+		//La medición vacía es compartida por todos los hilos y no se modifica
+		if (this.histograma != null) {
+			this.correcta = true;
+		}
+	}
+	public <T> T correcta(T resultado) {
+		correcta();
+		return resultado;
+	}
+	public int correcta(int resultado) {
+		correcta();
+		return resultado;
+	}
+	public long correcta(long resultado) {
+		correcta();
+		return resultado;
+	}
+	public boolean correcta(boolean resultado) {
+		correcta();
+		return resultado;
+	}
+
+	//Registra la duración de la llamada
+	@Override
+	public void close() {
+		if (this.histograma != null) {
+			boolean error = !this.correcta || this.erroresHilo[0] != this.erroresPrevios;
+			this.histograma.registrar(System.nanoTime() - this.inicio, error);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package data_access_object;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.SessionFactory;
+
+/**
+ * Clase con las métricas de latencia de los métodos de los DAO
+ *
+ * Guarda un HistogramaLatencias por cada método público de LibroDAO, LectorDAO y PrestamoDAO
+ * con sus llamadas, errores y latencias (p50, p99 y máxima). Cada DAO mide sus métodos con
+ * EntidadDAO.medir, que inicia una Medicion. Se considera error una llamada que lanza una excepción o que captura un
+ * error y lo notifica con EntidadDAO.registrarError (los métodos que devuelven -1, null o una
+ * lista vacía en caso de error).
+ *
+ * Se crea una instancia por SessionFactory y se registra en JMX junto con las estadísticas de
+ * Hibernate (EstadisticasHibernate) con los nombres "biblioteca:type=MetricasDAO,name=..." y
+ * "biblioteca:type=EstadisticasHibernate,name=...", donde name es el nombre del pool de
+ * conexiones. Si ya hay registrada una SessionFactory con el mismo nombre, se sustituye. Al cerrar
+ * la SessionFactory se eliminan sus métricas y sus MBeans (ver CierreSessionFactory).
+ *
+ * Las métricas se activan con la propiedad "biblioteca.metricas.activas" de la configuración
+ * y pueden activarse o desactivarse sin reiniciar desde JMX. Desactivadas, iniciar solo comprueba
+ * un atributo volatile y devuelve una medición vacía.
+ *
+ * @author Simon Gil
+ */
+public class MetricasDAO implements MetricasDAOMBean {
+	//Propiedad de configuración que activa las métricas
+	public static final String PROPIEDAD_ACTIVAS = "biblioteca.metricas.activas";
+	public static final String DOMINIO_JMX = "biblioteca";
+	//Métricas de cada SessionFactory. Se liberan cuando la SessionFactory deja de utilizarse
+	private static final Map<SessionFactory, MetricasDAO> METRICAS = new WeakHashMap<>();
+	//Métricas registradas en JMX con cada nombre, para no eliminar los MBeans de otra SessionFactory
+	private static final Map<String, MetricasDAO> REGISTRADAS = new HashMap<>();
+	//Errores registrados por cada hilo, para saber si ha fallado la llamada que se está midiendo
+	private static final ThreadLocal<long[]> ERRORES_HILO = ThreadLocal.withInitial(() -> new long[1]);
+
+	private volatile boolean activas;
+	//Nombre con el que están registrados los MBeans
+	private String nombreJMX;
+	//Histogramas por nombre de DAO y nombre de método
+	private Map<String, Map<String, HistogramaLatencias>> histogramas = new ConcurrentHashMap<>();
+
+	private MetricasDAO(boolean activas) {
+		this.activas = activas;
+	}
+
+	/*
+	 * Método para obtener las métricas de una SessionFactory.
+	 *
+	 * La primera llamada las crea, leyendo si están activas de la configuración, y las registra
+	 * en JMX; las siguientes devuelven las mismas métricas.
+	 */
+	public static synchronized MetricasDAO de(SessionFactory sessionFactory) {
+		MetricasDAO metricas = METRICAS.get(sessionFactory);
+		if (metricas == null) {
+			Object activas = sessionFactory.getProperties().get(PROPIEDAD_ACTIVAS);
+			metricas = new MetricasDAO(activas == null || Boolean.parseBoolean(activas.toString().trim()));
+			METRICAS.put(sessionFactory, metricas);
+			Object nombrePool = sessionFactory.getProperties().get("hibernate.hikari.poolName");
+			String nombre = nombrePool == null ? DOMINIO_JMX : nombrePool.toString();
+			registrarJMX(metricas, "MetricasDAO", nombre);
+			registrarJMX(new EstadisticasHibernate(sessionFactory), "EstadisticasHibernate", nombre);
+			metricas.nombreJMX = nombre;
+			REGISTRADAS.put(nombre, metricas);
+		}
+		return metricas;
+	}
+
+	/*
+	 * Método para eliminar las métricas de una SessionFactory que se cierra.
+	 *
+	 * Elimina de JMX sus MBeans, salvo que otra SessionFactory con el mismo nombre los haya
+	 * sustituido. No hace nada si la SessionFactory no tiene métricas.
+	 */
+	public static synchronized void cerrar(SessionFactory sessionFactory) {
+		MetricasDAO metricas = METRICAS.remove(sessionFactory);
+		if (metricas != null && REGISTRADAS.get(metricas.nombreJMX) == metricas) {
+			REGISTRADAS.remove(metricas.nombreJMX);
+			eliminarJMX("MetricasDAO", metricas.nombreJMX);
+			eliminarJMX("EstadisticasHibernate", metricas.nombreJMX);
+		}
+	}
+
+	/*
+	 * Método para empezar a medir una llamada a un método de un DAO.
+	 *
+	 * Devuelve la medición, que registra la duración de la llamada en el histograma del método
+	 * al cerrarse. Con las métricas desactivadas devuelve la medición vacía Medicion.NINGUNA.
+	 */
+	public Medicion iniciar(String dao, String metodo) {
+		if (!this.activas) {
+			return Medicion.NINGUNA;
+		}
+		return new Medicion(histograma(dao, metodo), ERRORES_HILO.get());
+	}
+
+	/*
+	 * Método para marcar como errónea la operación que se está midiendo en el hilo actual.
+	 */
+	public void registrarError() {
+		if (this.activas) {
+			ERRORES_HILO.get()[0]++;
+		}
+	}
+
+	/*
+	 * Método para obtener el histograma de un método.
+	 *
+	 * Recibe el nombre completo del método ("LibroDAO.insertarLibro").
+	 * Devuelve null si el método no se ha llamado con las métricas activas.
+	 */
+	public HistogramaLatencias getHistograma(String metodo) {
+		int punto = metodo.indexOf('.');
+		Map<String, HistogramaLatencias> metodos = punto < 0 ? null : this.histogramas.get(metodo.substring(0, punto));
+		return metodos == null ? null : metodos.get(metodo.substring(punto + 1));
+	}
+
+	@Override
+	public boolean isActivas() {
+		return activas;
+	}
+	@Override
+	public void setActivas(boolean activas) {
+		this.activas = activas;
+	}
+
+	@Override
+	public String[] getMetodos() {
+		return ordenados().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public long getLlamadasTotales() {
+		return ordenados().values().stream().mapToLong(HistogramaLatencias::getLlamadas).sum();
+	}
+
+	@Override
+	public long getErroresTotales() {
+		return ordenados().values().stream().mapToLong(HistogramaLatencias::getErrores).sum();
+	}
+
+	/*
+	 * Operaciones JMX para consultar un método. Devuelven 0 si el método no se ha llamado.
+	 */
+	@Override
+	public long llamadas(String metodo) {
+		HistogramaLatencias histograma = getHistograma(metodo);
+		return histograma == null ? 0 : histograma.getLlamadas();
+	}
+	@Override
+	public long errores(String metodo) {
+		HistogramaLatencias histograma = getHistograma(metodo);
+		return histograma == null ? 0 : histograma.getErrores();
+	}
+	@Override
+	public double p50Millis(String metodo) {
+		HistogramaLatencias histograma = getHistograma(metodo);
+		return histograma == null ? 0 : histograma.getP50Millis();
+	}
+	@Override
+	public double p99Millis(String metodo) {
+		HistogramaLatencias histograma = getHistograma(metodo);
+		return histograma == null ? 0 : histograma.getP99Millis();
+	}
+	@Override
+	public double maximoMillis(String metodo) {
+		HistogramaLatencias histograma = getHistograma(metodo);
+		return histograma == null ? 0 : histograma.getMaximoMillis();
+	}
+
+	/*
+	 * Método para obtener un resumen de las métricas.
+	 *
+	 * Devuelve un String con una línea por método, en orden alfabético, apto para mostrarse por consola.
+	 */
+	@Override
+	public String resumen() {
+		StringBuilder resumen = new StringBuilder("Latencias de los DAO" + (this.activas ? ":" : " (desactivadas):"));
+		Map<String, HistogramaLatencias> metodos = ordenados();
+		if (metodos.isEmpty()) {
+			resumen.append(System.lineSeparator()).append("No se ha medido ninguna llamada.");
+		}
+		for (Map.Entry<String, HistogramaLatencias> metodo : metodos.entrySet()) {
+			resumen.append(System.lineSeparator()).append(metodo.getKey()).append(" | ")
+					.append(metodo.getValue().resumen());
+		}
+		return resumen.toString();
+	}
+
+	/*
+	 * Método para volcar el resumen de las métricas a un archivo.
+	 *
+	 * Añade al final del archivo la fecha y el resumen. Devuelve el resumen escrito
+	 * o un mensaje con el error si no ha podido escribirse.
+	 */
+	@Override
+	public String volcar(String archivo) {
+		String resumen = LocalDateTime.now() + System.lineSeparator() + resumen();
+		try (PrintWriter salida = new PrintWriter(Files.newBufferedWriter(Paths.get(archivo), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+			salida.println(resumen);
+			return resumen;
+		} catch (IOException e) {
+			return "No ha sido posible escribir las métricas en " + archivo + ": " + e.getMessage();
+		}
+	}
+
+	//Elimina todos los histogramas
+	@Override
+	public void reiniciar() {
+		this.histogramas.clear();
+	}
+
+	//Histograma de un método, que se crea la primera vez que se mide
+	private HistogramaLatencias histograma(String dao, String metodo) {
+		Map<String, HistogramaLatencias> metodos = this.histogramas.get(dao);
+		if (metodos == null) {
+			metodos = this.histogramas.computeIfAbsent(dao, d -> new ConcurrentHashMap<>());
+		}
+		HistogramaLatencias histograma = metodos.get(metodo);
+		return histograma != null ? histograma : metodos.computeIfAbsent(metodo, m -> new HistogramaLatencias());
+	}
+
+	//Todos los histogramas con el nombre completo del método, en orden alfabético
+	private Map<String, HistogramaLatencias> ordenados() {
+		Map<String, HistogramaLatencias> ordenados = new TreeMap<>();
+		this.histogramas.forEach((dao, metodos) -> metodos.forEach((metodo, h) -> ordenados.put(dao + "." + metodo, h)));
+		return ordenados;
+	}
+
+	//Registra un MBean en el servidor JMX de la plataforma, sustituyendo al que tuviera el mismo nombre
+	private static void registrarJMX(Object mbean, String tipo, String nombre) {
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombreJMX = new ObjectName(DOMINIO_JMX + ":type=" + tipo + ",name=" + ObjectName.quote(nombre));
+			if (servidor.isRegistered(nombreJMX)) {
+				servidor.unregisterMBean(nombreJMX);
+			}
+			servidor.registerMBean(mbean, nombreJMX);
+		} catch (JMException e) {
+			System.out.println("No ha sido posible registrar " + tipo + " en JMX: " + e.getMessage());
+		}
+	}
+
+	//Elimina un MBean del servidor JMX de la plataforma, si está registrado
+	private static void eliminarJMX(String tipo, String nombre) {
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombreJMX = new ObjectName(DOMINIO_JMX + ":type=" + tipo + ",name=" + ObjectName.quote(nombre));
+			if (servidor.isRegistered(nombreJMX)) {
+				servidor.unregisterMBean(nombreJMX);
+			}
+		} catch (JMException e) {
+			System.out.println("No ha sido posible eliminar " + tipo + " de JMX: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package data_access_object;
+
+/**
+ * Interfaz JMX de MetricasDAO
+ *
+ * Los atributos y operaciones de esta interfaz pueden consultarse con JConsole o VisualVM
+ * bajo el dominio "biblioteca", tipo MetricasDAO.
+ *
+ * @author Simon Gil
+ */
+public interface MetricasDAOMBean {
+	boolean isActivas();
+	void setActivas(boolean activas);
+	//Métodos medidos, con el formato "LibroDAO.insertarLibro"
+	String[] getMetodos();
+	long getLlamadasTotales();
+	long getErroresTotales();
+	long llamadas(String metodo);
+	long errores(String metodo);
+	double p50Millis(String metodo);
+	double p99Millis(String metodo);
+	double maximoMillis(String metodo);
+	String resumen();
+	String volcar(String archivo);
+	void reiniciar();
+}
@@ -0,0 +1,136 @@
+package data_access_object;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.SessionFactory;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Clase para recoger las métricas del pool de conexiones
+ * 
+ * HikariCP crea una instancia de esta clase a partir de la propiedad 
+ * hibernate.hikari.metricsTrackerFactory y le pide un registro de métricas por cada pool.
+ * Cada registro acumula los tiempos de espera y de uso de las conexiones, y consulta 
+ * al pool el número de conexiones activas, inactivas y de hilos esperando.
+ * 
+ * @author Simon Gil
+ */
+public class MetricasPool implements MetricsTrackerFactory {
+	//Métricas de cada pool creado, por nombre de pool
+	private static final Map<String, Metricas> METRICAS = new ConcurrentHashMap<>();
+
+	@Override
+	public IMetricsTracker create(String nombrePool, PoolStats estadisticasPool) {
+		Metricas metricas = new Metricas(nombrePool, estadisticasPool);
+		METRICAS.put(nombrePool, metricas);
+		return metricas;
+	}
+
+	/*
+	 * Método para obtener las métricas del pool de una SessionFactory.
+	 * 
+	 * Busca el pool por el nombre configurado en hibernate.hikari.poolName.
+	 * Devuelve null si la SessionFactory no utiliza un pool HikariCP con métricas.
+	 */
+	public static Metricas de(SessionFactory sessionFactory) {
+		Object nombrePool = sessionFactory.getProperties().get("hibernate.hikari.poolName");
+		return nombrePool == null ? null : METRICAS.get(nombrePool.toString());
+	}
+
+	/*
+	 * Clase con las métricas de un pool de conexiones.
+	 * 
+	 * Los contadores se actualizan desde los hilos que piden y devuelven conexiones,
+	 * por lo que se utilizan acumuladores que no necesitan sincronización.
+	 */
+	public static class Metricas implements IMetricsTracker {
+		private String nombrePool;
+		private PoolStats estadisticasPool;
+		private LongAdder conexionesObtenidas = new LongAdder();
+		private LongAdder esperaTotalNanos = new LongAdder();
+		private LongAccumulator esperaMaximaNanos = new LongAccumulator(Math::max, 0);
+		private LongAdder usos = new LongAdder();
+		private LongAdder usoTotalMillis = new LongAdder();
+		private LongAdder timeouts = new LongAdder();
+
+		private Metricas(String nombrePool, PoolStats estadisticasPool) {
+			this.nombrePool = nombrePool;
+			this.estadisticasPool = estadisticasPool;
+		}
+
+		@Override
+		public void recordConnectionAcquiredNanos(long nanosEspera) {
+			this.conexionesObtenidas.increment();
+			this.esperaTotalNanos.add(nanosEspera);
+			this.esperaMaximaNanos.accumulate(nanosEspera);
+		}
+
+		@Override
+		public void recordConnectionUsageMillis(long millisUso) {
+			this.usos.increment();
+			this.usoTotalMillis.add(millisUso);
+		}
+
+		@Override
+		public void recordConnectionTimeout() {
+			this.timeouts.increment();
+		}
+
+		@Override
+		public void close() {
+			METRICAS.remove(this.nombrePool, this);
+		}
+
+		//Getters de las métricas
+		public int getConexionesActivas() {
+			return this.estadisticasPool.getActiveConnections();
+		}
+		public int getConexionesInactivas() {
+			return this.estadisticasPool.getIdleConnections();
+		}
+		public int getConexionesTotales() {
+			return this.estadisticasPool.getTotalConnections();
+		}
+		public int getHilosEsperando() {
+			return this.estadisticasPool.getPendingThreads();
+		}
+		public long getConexionesObtenidas() {
+			return this.conexionesObtenidas.sum();
+		}
+		public double getEsperaMediaMillis() {
+			long obtenidas = this.conexionesObtenidas.sum();
+			return obtenidas == 0 ? 0 : this.esperaTotalNanos.sum() / (double) obtenidas / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+		public double getEsperaMaximaMillis() {
+			return this.esperaMaximaNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+		}
+		public double getUsoMedioMillis() {
+			long numUsos = this.usos.sum();
+			return numUsos == 0 ? 0 : this.usoTotalMillis.sum() / (double) numUsos;
+		}
+		public long getTimeouts() {
+			return this.timeouts.sum();
+		}
+
+		/*
+		 * Método para obtener un resumen de las métricas del pool.
+		 * 
+		 * Devuelve un String apto para mostrarse por consola.
+		 */
+		public String resumen() {
+			return String.format("Pool de conexiones %s: | Activas: %d | Inactivas: %d | Hilos esperando: %d"
+					+ " | Conexiones obtenidas: %d | Espera media: %.3f ms | Espera máxima: %.3f ms"
+					+ " | Uso medio: %.1f ms | Timeouts: %d",
+					this.nombrePool, getConexionesActivas(), getConexionesInactivas(), getHilosEsperando(),
+					getConexionesObtenidas(), getEsperaMediaMillis(), getEsperaMaximaMillis(), getUsoMedioMillis(),
+					getTimeouts());
+		}
+	}
+}
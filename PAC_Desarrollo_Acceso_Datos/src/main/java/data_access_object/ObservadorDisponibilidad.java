@@ -0,0 +1,20 @@
+package data_access_object;
+
+import java.util.Collection;
+
+/**
+ * Interfaz para recibir los cambios de disponibilidad de los libros
+ * 
+ * Los préstamos, las devoluciones y el borrado de lectores modifican la disponibilidad sin
+ * notificar una actualización de la entidad Libro a ObservadorEntidad. Los DAO avisan
+ * a estos observadores, registrados en RegistroObservadores, después de confirmar cada una
+ * de esas operaciones. El resto de cambios de disponibilidad llegan como actualizaciones
+ * de la entidad Libro.
+ * 
+ * @author Simon Gil
+ */
+public interface ObservadorDisponibilidad {
+
+	//Los libros recibidos han pasado a estar disponibles (true) o prestados (false)
+	void disponibilidadCambiada(Collection<Integer> idsLibro, boolean disponible);
+}
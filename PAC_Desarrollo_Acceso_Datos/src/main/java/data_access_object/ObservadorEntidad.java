@@ -0,0 +1,27 @@
+package data_access_object;
+
+/**
+ * Interfaz para recibir los cambios que los DAO realizan sobre una entidad
+ * 
+ * Los DAO avisan a los observadores registrados en RegistroObservadores después de
+ * confirmar (commit) cada inserción, actualización o borrado, por lo que los cambios
+ * deshechos con rollback nunca se notifican. Las actualizaciones masivas con HQL
+ * (por ejemplo, la disponibilidad en PrestamoDAO.prestar) no se notifican.
+ * Los métodos se invocan en el hilo que ha realizado la operación.
+ * 
+ * @author Simon Gil
+ */
+public interface ObservadorEntidad<T> {
+
+	//La entidad se ha insertado y ya tiene su ID asignado
+	default void insertada(T entidad) {
+	}
+
+	//La entidad se ha actualizado con los valores del objeto recibido
+	default void actualizada(T entidad) {
+	}
+
+	//Se ha eliminado la entidad con el ID recibido
+	default void borrada(int id) {
+	}
+}
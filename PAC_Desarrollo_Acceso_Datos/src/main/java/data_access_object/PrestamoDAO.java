@@ -1,12 +1,27 @@
 package data_access_object;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
 import org.hibernate.query.Query;
 
+import data_model.FilaPrestamo;
 import data_model.Lector;
 import data_model.Libro;
 import data_model.Prestamo;
@@ -20,6 +35,41 @@ import data_model.Prestamo;
  * @author Simon Gil
  */
 public class PrestamoDAO extends EntidadDAO {
+	//Proyección de los préstamos con el título del libro y el nombre del lector para los listados
+	private static final String CONSULTA_FILAS = "SELECT new data_model.FilaPrestamo(p.idPrestamo, p.fechaPrestamo, "
+			+ "p.fechaVencimiento, p.fechaDevolucion, l.idLibro, l.titulo, r.idLector, r.nombre, r.apellidos) "
+			+ "FROM Prestamo p LEFT JOIN p.libro l LEFT JOIN p.lector r";
+	//Número máximo de IDs en cada cláusula IN de las devoluciones por lotes
+	private static final int MAXIMO_IDS_POR_CONSULTA = 500;
+	//Préstamos abiertos con la fecha de vencimiento anterior a :fecha (índice idx_prestamo_devolucion_vencimiento)
+	private static final String CONDICION_VENCIDOS = " WHERE p.fechaDevolucion IS NULL AND p.fechaVencimiento < :fecha";
+	//Número de préstamos vencidos que se leen en cada bloque de procesarPrestamosVencidos
+	public static final int TAMANO_BLOQUE_VENCIDOS = 500;
+	//Nombres de los métodos en las métricas de MetricasDAO
+	private static final String INSERTAR_PRESTAMO = metodo(PrestamoDAO.class, "insertarPrestamo");
+	private static final String PRESTAR = metodo(PrestamoDAO.class, "prestar");
+	private static final String DEVOLVER = metodo(PrestamoDAO.class, "devolver");
+	private static final String INSERTAR_PRESTAMOS = metodo(PrestamoDAO.class, "insertarPrestamos");
+	private static final String BORRAR_PRESTAMO = metodo(PrestamoDAO.class, "borrarPrestamo");
+	private static final String OBTENER_PRESTAMO = metodo(PrestamoDAO.class, "obtenerPrestamo");
+	private static final String OBTENER_PRESTAMOS = metodo(PrestamoDAO.class, "obtenerPrestamos");
+	private static final String CONTAR_PRESTAMOS = metodo(PrestamoDAO.class, "contarPrestamos");
+	private static final String CONTAR_PRESTAMOS_PENDIENTES = metodo(PrestamoDAO.class, "contarPrestamosPendientes");
+	private static final String CONTAR_PRESTAMOS_VENCIDOS = metodo(PrestamoDAO.class, "contarPrestamosVencidos");
+	private static final String EXISTEN_PRESTAMOS = metodo(PrestamoDAO.class, "existenPrestamos");
+	private static final String EXISTE_PRESTAMO = metodo(PrestamoDAO.class, "existePrestamo");
+	private static final String EXISTEN_PRESTAMOS_PENDIENTES = metodo(PrestamoDAO.class, "existenPrestamosPendientes");
+	private static final String EXISTEN_PRESTAMOS_PENDIENTES_LECTOR = metodo(PrestamoDAO.class, "existenPrestamosPendientesLector");
+	private static final String EXISTE_PRESTAMO_PENDIENTE = metodo(PrestamoDAO.class, "existePrestamoPendiente");
+	private static final String RECORRER_PRESTAMOS = metodo(PrestamoDAO.class, "recorrerPrestamos");
+	private static final String OBTENER_PRESTAMOS_PAGINA = metodo(PrestamoDAO.class, "obtenerPrestamos", int.class, int.class);
+	private static final String RECORRER_FILAS_PRESTAMOS = metodo(PrestamoDAO.class, "recorrerFilasPrestamos");
+	private static final String OBTENER_FILAS_PRESTAMOS = metodo(PrestamoDAO.class, "obtenerFilasPrestamos");
+	private static final String OBTENER_PRESTAMOS_VENCIDOS = metodo(PrestamoDAO.class, "obtenerPrestamosVencidos");
+	private static final String PROCESAR_PRESTAMOS_VENCIDOS = metodo(PrestamoDAO.class, "procesarPrestamosVencidos");
+	private static final String ACTUALIZAR_PRESTAMO = metodo(PrestamoDAO.class, "actualizarPrestamo");
+	private static final String OBTENER_HISTORIAL_PRESTAMOS = metodo(PrestamoDAO.class, "obtenerHistorialPrestamos");
+	private static final String OBTENER_PRESTAMO_POR_LIBRO = metodo(PrestamoDAO.class, "obtenerPrestamoPorLibro");
 	/*
 	 * Constructor de la clase.
 	 * 
@@ -29,6 +79,16 @@ public class PrestamoDAO extends EntidadDAO {
 		super(session);
 	}
 
+	/*
+	 * Constructor de la clase.
+	 * 
+	 * Recibe una SessionFactory: cada operación utiliza su propia sesión,
+	 * por lo que el DAO puede compartirse entre hilos.
+	 */
+	public PrestamoDAO(SessionFactory sessionFactory) {
+		super(sessionFactory);
+	}
+
 	/*
 	 * Método para insertar un préstamo.
 	 * 
@@ -36,7 +96,14 @@ public class PrestamoDAO extends EntidadDAO {
 	 * o -1 en caso de error.
 	 */
 	public int insertarPrestamo(Libro libro, Lector lector) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(INSERTAR_PRESTAMO)) {
+			return medicion.correcta(insertarPrestamoSinMedir(libro, lector));
+		}
+	}
+
+	private int insertarPrestamoSinMedir(Libro libro, Lector lector) {
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
 		int id;
 		try {
 			// Crear un nuevo objeto Prestamo
@@ -45,24 +112,215 @@ public class PrestamoDAO extends EntidadDAO {
 			prestamo.setLibro(libro);
 			prestamo.setLector(lector);
 			// Guardamos el prestamo en la base de datos
-			id = (int)this.session.save(prestamo);
+			id = (int)session.save(prestamo);
 			tx.commit();
 			return id;
 		} catch (Exception e) {
 			tx.rollback();
 			System.out.println("No ha sido posible insertar el prestamo.");
+			registrarError();
 			e.printStackTrace();
 			return -1;
 		}
 	}
 
+	/*
+	 * Método para prestar un libro a un lector en una única transacción.
+	 * 
+	 * Primero comprueba que el lector existe y después reclama el libro: si está disponible, lo marca
+	 * como no disponible e inserta el préstamo en la misma transacción. El libro se reclama con un
+	 * único UPDATE condicionado a que siga disponible, sin leerlo antes ni bloquear su fila: si dos
+	 * puestos intentan prestar el mismo libro a la vez, el UPDATE del segundo no encuentra la fila
+	 * disponible y su préstamo se rechaza como libro no disponible. La condición es sobre la columna
+	 * disponible y no sobre la versión, por lo que otro cambio del libro a la vez (su título, por
+	 * ejemplo) no impide el préstamo; el UPDATE incrementa la versión igualmente, para que las
+	 * modificaciones del libro que se hayan leído antes del préstamo detecten el conflicto.
+	 * Con un motor transaccional (InnoDB, ver el dialecto de hibernate.cfg.xml) cualquier error
+	 * posterior deshace también la reserva del libro. El préstamo se inserta con referencias a los
+	 * IDs del libro y del lector; si el lector se borra entre la comprobación y la inserción, la clave
+	 * ajena rechaza el préstamo.
+	 * El UPDATE es SQL nativo y no de HQL, que vaciaría la región libro entera de la caché de segundo
+	 * nivel en cada préstamo: tras el commit solo se descarta la entrada del libro prestado.
+	 */
+	public ResultadoPrestamo prestar(int idLibro, int idLector) {
+		try (Medicion medicion = medir(PRESTAR)) {
+			return medicion.correcta(prestarSinMedir(idLibro, idLector));
+		}
+	}
+
+	private ResultadoPrestamo prestarSinMedir(int idLibro, int idLector) {
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
+		Prestamo prestamo = null;
+		try {
+			boolean lectorExiste = session.createQuery("SELECT l.idLector FROM Lector l WHERE l.idLector = :idLector")
+					.setParameter("idLector", idLector)
+					.uniqueResultOptional()
+					.isPresent();
+			if (!lectorExiste) {
+				tx.rollback();
+				return ResultadoPrestamo.LECTOR_DESCONOCIDO;
+			}
+			// Se comprueba en la base de datos y no en la instancia de la sesión o de la caché, que puede
+			// estar desactualizada
+			int reservados = session.createNativeQuery("UPDATE " + tabla(Libro.class)
+					+ " SET disponible = false, version = version + 1 WHERE id_libro = :idLibro AND disponible = true")
+					.addSynchronizedQuerySpace("")
+					.setParameter("idLibro", idLibro)
+					.executeUpdate();
+			if (reservados == 0) {
+				tx.rollback();
+				return ResultadoPrestamo.LIBRO_NO_DISPONIBLE;
+			}
+			prestamo = new Prestamo(session.load(Libro.class, idLibro), session.load(Lector.class, idLector));
+			session.save(prestamo);
+			// El flush envía el INSERT antes del commit para que un error de clave ajena se pueda deshacer aquí
+			session.flush();
+			tx.commit();
+			descartarCopias(session, Libro.class, Collections.singletonList(idLibro));
+			this.observadores.notificarDisponibilidad(Collections.singletonList(idLibro), false);
+			return ResultadoPrestamo.REALIZADO;
+		} catch (Exception e) {
+			tx.rollback();
+			if (prestamo != null) {
+				descartar(session, prestamo, prestamo.getLibro(), prestamo.getLector());
+			}
+			// Hibernate envuelve la violación de la clave ajena en una PersistenceException
+			if (e instanceof ConstraintViolationException || e.getCause() instanceof ConstraintViolationException) {
+				return ResultadoPrestamo.LECTOR_DESCONOCIDO;
+			}
+			System.out.println("No ha sido posible realizar el préstamo.");
+			registrarError();
+			e.printStackTrace();
+			return ResultadoPrestamo.ERROR;
+		}
+	}
+
+	/*
+	 * Método para devolver varios libros en una única transacción.
+	 * 
+	 * Recibe los IDs de los libros devueltos y la fecha de devolución (la fecha actual si es null).
+	 * Cierra los préstamos pendientes de esos libros con un UPDATE por conjunto (incrementando sus
+	 * versiones), en bloques de MAXIMO_IDS_POR_CONSULTA IDs, en lugar de leer y actualizar cada
+	 * préstamo por separado; Prestamo no está en la caché de segundo nivel, así que el UPDATE de
+	 * HQL no vacía ninguna región. Los libros se marcan como disponibles con un UPDATE nativo por
+	 * bloque, sin leerlos ni comprobar su versión, de forma que una modificación de uno de ellos
+	 * a la vez (su título, por ejemplo) no deshace la devolución del lote. Igual que en prestar,
+	 * el UPDATE incrementa la versión y, tras el commit, solo se descartan las entradas de la región
+	 * libro y las instancias de la sesión de los libros devueltos.
+	 * Devuelve el resultado de cada libro en el orden recibido. Si otra operación devuelve alguno de
+	 * los libros a la vez, no se modifica nada y se lanza ConflictoConcurrenciaException.
+	 * Las instancias de Prestamo ya cargadas no reflejan los cambios.
+	 */
+	public Map<Integer, ResultadoDevolucion> devolver(Collection<Integer> idsLibro, LocalDate fecha) {
+		try (Medicion medicion = medir(DEVOLVER)) {
+			return medicion.correcta(devolverSinMedir(idsLibro, fecha));
+		}
+	}
+
+	private Map<Integer, ResultadoDevolucion> devolverSinMedir(Collection<Integer> idsLibro, LocalDate fecha) {
+		LocalDate fechaDevolucion = fecha != null ? fecha : LocalDate.now();
+		Set<Integer> ids = new LinkedHashSet<>(idsLibro);
+		ids.remove(null);
+		Map<Integer, ResultadoDevolucion> resultados = new LinkedHashMap<>();
+		if (ids.isEmpty()) {
+			return resultados;
+		}
+		List<List<Integer>> bloques = dividirEnBloques(ids);
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
+		try {
+			// Libros del lote que tienen un préstamo pendiente (índice idx_prestamo_libro_devolucion)
+			Set<Integer> pendientes = new HashSet<>();
+			int prestamosPendientes = 0;
+			for (List<Integer> bloque : bloques) {
+				List<Integer> libros = session.createQuery("SELECT p.libro.idLibro FROM Prestamo p "
+						+ "WHERE p.libro.idLibro IN (:ids) AND p.fechaDevolucion IS NULL", Integer.class)
+						.setParameterList("ids", bloque)
+						.getResultList();
+				prestamosPendientes += libros.size();
+				pendientes.addAll(libros);
+			}
+			int cerrados = 0;
+			for (List<Integer> bloque : dividirEnBloques(pendientes)) {
+				cerrados += session.createQuery("UPDATE VERSIONED Prestamo p SET p.fechaDevolucion = :fecha "
+						+ "WHERE p.libro.idLibro IN (:ids) AND p.fechaDevolucion IS NULL")
+						.setParameter("fecha", fechaDevolucion)
+						.setParameterList("ids", bloque)
+						.executeUpdate();
+				session.createNativeQuery("UPDATE " + tabla(Libro.class)
+						+ " SET disponible = true, version = version + 1 WHERE id_libro IN (:ids) AND disponible = false")
+						.addSynchronizedQuerySpace("")
+						.setParameterList("ids", bloque)
+						.executeUpdate();
+			}
+			// Si otra transacción ha cerrado alguno de los préstamos desde la consulta, el UPDATE
+			// encuentra menos filas de las esperadas. Se cuentan préstamos y no libros, porque un libro
+			// puede tener varios préstamos pendientes (insertarPrestamo no comprueba su disponibilidad)
+			if (cerrados < prestamosPendientes) {
+				tx.rollback();
+				throw new ConflictoConcurrenciaException("Alguno de los " + prestamosPendientes
+						+ " préstamos ha sido devuelto por otra operación durante la devolución del lote.", null);
+			}
+			tx.commit();
+			descartarCopias(session, Libro.class, pendientes);
+			this.observadores.notificarDisponibilidad(pendientes, true);
+			for (Integer idLibro : ids) {
+				resultados.put(idLibro, pendientes.contains(idLibro) ? ResultadoDevolucion.DEVUELTO
+						: ResultadoDevolucion.SIN_PRESTAMO_PENDIENTE);
+			}
+		} catch (ConflictoConcurrenciaException e) {
+			throw e;
+		} catch (Exception e) {
+			tx.rollback();
+			System.out.println("No ha sido posible realizar la devolución de los libros.");
+			registrarError();
+			e.printStackTrace();
+			for (Integer idLibro : ids) {
+				resultados.put(idLibro, ResultadoDevolucion.ERROR);
+			}
+		}
+		return resultados;
+	}
+
+	/*
+	 * Método para insertar varios préstamos.
+	 * 
+	 * Recibe una colección de objetos Prestamo, con su libro y lector ya asignados,
+	 * y los inserta en una única transacción utilizando lotes JDBC. Devuelve los IDs
+	 * de los préstamos insertados, o una lista vacía en caso de error.
+	 */
+	public List<Integer> insertarPrestamos(Collection<Prestamo> prestamos) {
+		return insertarPrestamos(prestamos, lote -> {});
+	}
+
+	/*
+	 * Método para insertar varios préstamos informando de cada lote.
+	 * 
+	 * Igual que insertarPrestamos, pero pasa al consumidor recibido el número de registros
+	 * y la duración de cada lote JDBC enviado a la base de datos.
+	 */
+	public List<Integer> insertarPrestamos(Collection<Prestamo> prestamos, Consumer<? super LoteInsertado> informe) {
+		try (Medicion medicion = medir(INSERTAR_PRESTAMOS)) {
+			return medicion.correcta(insertarEnLotes(prestamos, informe));
+		}
+	}
+
 	/*
 	 * Método para eliminar un préstamo.
 	 * 
 	 * Recibe un número entero con el ID del préstamo a eliminar.
 	 */
 	public void borrarPrestamo(int idPrestamo) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(BORRAR_PRESTAMO)) {
+			borrarPrestamoSinMedir(idPrestamo);
+			medicion.correcta();
+		}
+	}
+
+	private void borrarPrestamoSinMedir(int idPrestamo) {
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
 		try {
 			Prestamo prestamo = session.get(Prestamo.class, idPrestamo);
 			if (prestamo != null) {
@@ -77,6 +335,7 @@ public class PrestamoDAO extends EntidadDAO {
 			if (tx != null) {
 				tx.rollback();
 			}
+			registrarError();
 			System.out.println("Error al eliminar el préstamo: " + e.getMessage());
 		}
 	}
@@ -88,14 +347,25 @@ public class PrestamoDAO extends EntidadDAO {
 	 * datos. Devuelve un objeto Prestamo con los valores de la selección.
 	 */
 	public Prestamo obtenerPrestamo(int idPrestamo) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_PRESTAMO)) {
+			return medicion.correcta(obtenerPrestamoSinMedir(idPrestamo));
+		}
+	}
+
+	private Prestamo obtenerPrestamoSinMedir(int idPrestamo) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
 		Prestamo prestamo = null;
 		try {
-			prestamo = this.session.get(Prestamo.class, idPrestamo);
+			prestamo = session.get(Prestamo.class, idPrestamo);
+			inicializarAsociaciones(prestamo);
 			tx.commit();
 		} catch (Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
 		}
 		return prestamo;
 	}
@@ -104,36 +374,286 @@ public class PrestamoDAO extends EntidadDAO {
 	 * Método para obtener una lista con todos los préstamos de la BD. 
 	 * 
 	 * Devuelve una estructura de datos List con todos los objetos prestamo.
+	 * El libro y el lector de cada préstamo se cargan en la misma consulta (JOIN FETCH),
+	 * para no lanzar dos consultas más por préstamo al mostrarlos.
 	 */
 	public List<Prestamo> obtenerPrestamos() {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_PRESTAMOS)) {
+			return medicion.correcta(obtenerPrestamosSinMedir());
+		}
+	}
+
+	private List<Prestamo> obtenerPrestamosSinMedir() {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
 		List<Prestamo> prestamos = null;
 		try {
-			Query<Prestamo> query = this.session.createQuery("FROM Prestamo", Prestamo.class);
+			Query<Prestamo> query = session.createQuery(
+					"SELECT p FROM Prestamo p LEFT JOIN FETCH p.libro LEFT JOIN FETCH p.lector", Prestamo.class);
 			prestamos = query.getResultList();
 			tx.commit();
 		} catch (Exception e) {
+			registrarError();
 			e.printStackTrace();
 			tx.rollback();
+		} finally {
+			terminarLectura(session);
 		}
 		return prestamos;
 	}
 
+	/*
+	 * Método para contar los préstamos de la base de datos.
+	 * 
+	 * Devuelve el resultado de un SELECT COUNT, o -1 si la consulta falla.
+	 */
+	public long contarPrestamos() {
+		try (Medicion medicion = medir(CONTAR_PRESTAMOS)) {
+			return medicion.correcta(contar("SELECT COUNT(p) FROM Prestamo p"));
+		}
+	}
+
+	/*
+	 * Método para contar los préstamos pendientes de devolución.
+	 */
+	public long contarPrestamosPendientes() {
+		try (Medicion medicion = medir(CONTAR_PRESTAMOS_PENDIENTES)) {
+			return medicion.correcta(contar("SELECT COUNT(p) FROM Prestamo p WHERE p.fechaDevolucion IS NULL"));
+		}
+	}
+
+	/*
+	 * Método para contar los préstamos vencidos en una fecha.
+	 * 
+	 * Un préstamo está vencido si no se ha devuelto y su fecha de vencimiento es anterior a la fecha
+	 * indicada. La consulta solo recorre las entradas del índice idx_prestamo_devolucion_vencimiento
+	 * que cumplen la condición.
+	 */
+	public long contarPrestamosVencidos(LocalDate fecha) {
+		try (Medicion medicion = medir(CONTAR_PRESTAMOS_VENCIDOS)) {
+			return medicion.correcta(contar("SELECT COUNT(p) FROM Prestamo p WHERE p.fechaDevolucion IS NULL AND p.fechaVencimiento < ?1",
+					fecha));
+		}
+	}
+
+	/*
+	 * Método para comprobar si hay algún préstamo en la base de datos.
+	 * 
+	 * Solo lee una fila, en lugar de cargar la tabla completa.
+	 */
+	public boolean existenPrestamos() {
+		try (Medicion medicion = medir(EXISTEN_PRESTAMOS)) {
+			return medicion.correcta(existe("SELECT 1 FROM Prestamo p"));
+		}
+	}
+
+	/*
+	 * Método para comprobar si existe un préstamo con el ID indicado.
+	 */
+	public boolean existePrestamo(int idPrestamo) {
+		try (Medicion medicion = medir(EXISTE_PRESTAMO)) {
+			return medicion.correcta(existe("SELECT 1 FROM Prestamo p WHERE p.idPrestamo = ?1", idPrestamo));
+		}
+	}
+
+	/*
+	 * Método para comprobar si hay algún préstamo pendiente de devolución.
+	 */
+	public boolean existenPrestamosPendientes() {
+		try (Medicion medicion = medir(EXISTEN_PRESTAMOS_PENDIENTES)) {
+			return medicion.correcta(existe("SELECT 1 FROM Prestamo p WHERE p.fechaDevolucion IS NULL"));
+		}
+	}
+
+	/*
+	 * Método para comprobar si un lector tiene algún préstamo pendiente de devolución.
+	 * 
+	 * Utiliza el índice idx_prestamo_lector_devolucion.
+	 */
+	public boolean existenPrestamosPendientesLector(int idLector) {
+		try (Medicion medicion = medir(EXISTEN_PRESTAMOS_PENDIENTES_LECTOR)) {
+			return medicion.correcta(existe("SELECT 1 FROM Prestamo p WHERE p.lector.idLector = ?1 AND p.fechaDevolucion IS NULL",
+					idLector));
+		}
+	}
+
+	/*
+	 * Método para comprobar si un libro está prestado a un lector y pendiente de devolución.
+	 * 
+	 * Utiliza el índice idx_prestamo_libro_devolucion.
+	 */
+	public boolean existePrestamoPendiente(int idLibro, int idLector) {
+		try (Medicion medicion = medir(EXISTE_PRESTAMO_PENDIENTE)) {
+			return medicion.correcta(existe("SELECT 1 FROM Prestamo p WHERE p.libro.idLibro = ?1 AND p.fechaDevolucion IS NULL "
+					+ "AND p.lector.idLector = ?2", idLibro, idLector));
+		}
+	}
+
+	/*
+	 * Método para recorrer todos los préstamos sin cargarlos a la vez en memoria.
+	 * 
+	 * Lee los préstamos con un cursor, en orden de ID, junto con su libro y su lector,
+	 * y pasa cada préstamo al consumidor recibido. Devuelve el número de préstamos recorridos.
+	 */
+	public long recorrerPrestamos(Consumer<Prestamo> consumidor) {
+		try (Medicion medicion = medir(RECORRER_PRESTAMOS)) {
+			return medicion.correcta(recorrer("SELECT p FROM Prestamo p LEFT JOIN FETCH p.libro LEFT JOIN FETCH p.lector ORDER BY p.idPrestamo",
+					Prestamo.class, consumidor));
+		}
+	}
+
+	/*
+	 * Método para obtener los préstamos página a página.
+	 * 
+	 * Devuelve como máximo "limite" préstamos cuyo ID es mayor que "despuesDeId", ordenados
+	 * por ID. El libro y el lector de cada préstamo se cargan en la misma consulta, ya que
+	 * los préstamos devueltos no quedan asociados a ninguna sesión.
+	 */
+	public List<Prestamo> obtenerPrestamos(int despuesDeId, int limite) {
+		try (Medicion medicion = medir(OBTENER_PRESTAMOS_PAGINA)) {
+			return medicion.correcta(obtenerPagina("SELECT p FROM Prestamo p LEFT JOIN FETCH p.libro LEFT JOIN FETCH p.lector "
+					+ "WHERE p.idPrestamo > :despuesDeId ORDER BY p.idPrestamo", Prestamo.class, despuesDeId, limite));
+		}
+	}
+
+	/*
+	 * Método para recorrer los datos de todos los préstamos para un listado.
+	 * 
+	 * Igual que recorrerPrestamos, pero la consulta es una proyección que crea directamente
+	 * objetos FilaPrestamo con el título del libro y el nombre del lector. No se cargan 
+	 * entidades, por lo que nada entra en el contexto de persistencia.
+	 */
+	public long recorrerFilasPrestamos(Consumer<FilaPrestamo> consumidor) {
+		try (Medicion medicion = medir(RECORRER_FILAS_PRESTAMOS)) {
+			return medicion.correcta(recorrer(CONSULTA_FILAS + " ORDER BY p.idPrestamo", FilaPrestamo.class, consumidor));
+		}
+	}
+
+	/*
+	 * Método para obtener los datos de los préstamos página a página para un listado.
+	 * 
+	 * Devuelve como máximo "limite" filas de préstamos cuyo ID es mayor que "despuesDeId",
+	 * ordenadas por ID.
+	 */
+	public List<FilaPrestamo> obtenerFilasPrestamos(int despuesDeId, int limite) {
+		try (Medicion medicion = medir(OBTENER_FILAS_PRESTAMOS)) {
+			return medicion.correcta(obtenerPagina(CONSULTA_FILAS + " WHERE p.idPrestamo > :despuesDeId ORDER BY p.idPrestamo",
+					FilaPrestamo.class, despuesDeId, limite));
+		}
+	}
+
+	/*
+	 * Método para obtener los préstamos vencidos en una fecha página a página.
+	 * 
+	 * Devuelve como máximo "limite" filas de préstamos vencidos en la fecha indicada, ordenadas por
+	 * fecha de vencimiento (los más antiguos primero) y después por ID. Para obtener la página
+	 * siguiente se pasa la última fila de la anterior en "despuesDe" (null para la primera página):
+	 * la consulta continúa desde esa posición del índice idx_prestamo_devolucion_vencimiento, por lo
+	 * que cada página cuesta lo mismo aunque se hayan leído muchas antes y no se saltan ni se repiten
+	 * préstamos si se devuelve alguno entre una página y otra.
+	 */
+	public List<FilaPrestamo> obtenerPrestamosVencidos(LocalDate fecha, FilaPrestamo despuesDe, int limite) {
+		try (Medicion medicion = medir(OBTENER_PRESTAMOS_VENCIDOS)) {
+			return medicion.correcta(obtenerPrestamosVencidosSinMedir(fecha, despuesDe, limite));
+		}
+	}
+
+	private List<FilaPrestamo> obtenerPrestamosVencidosSinMedir(LocalDate fecha, FilaPrestamo despuesDe, int limite) {
+		String hql = CONSULTA_FILAS + CONDICION_VENCIDOS;
+		if (despuesDe != null) {
+			hql += " AND (p.fechaVencimiento > :ultimoVencimiento"
+					+ " OR (p.fechaVencimiento = :ultimoVencimiento AND p.idPrestamo > :ultimoId))";
+		}
+		hql += " ORDER BY p.fechaVencimiento, p.idPrestamo";
+		List<FilaPrestamo> pagina = null;
+		try (Session sesionLectura = this.sessionFactory.openSession()) {
+			Transaction tx = sesionLectura.beginTransaction();
+			try {
+				Query<FilaPrestamo> query = sesionLectura.createQuery(hql, FilaPrestamo.class)
+						.setParameter("fecha", fecha)
+						.setMaxResults(limite);
+				if (despuesDe != null) {
+					query.setParameter("ultimoVencimiento", despuesDe.getFechaVencimiento())
+							.setParameter("ultimoId", despuesDe.getIdPrestamo());
+				}
+				pagina = query.getResultList();
+				tx.commit();
+			} catch (Exception e) {
+				tx.rollback();
+				registrarError();
+				e.printStackTrace();
+			}
+		}
+		return pagina;
+	}
+
+	/*
+	 * Método para procesar todos los préstamos vencidos en una fecha por bloques.
+	 * 
+	 * Lee los préstamos vencidos de "tamanoBloque" en "tamanoBloque" con obtenerPrestamosVencidos
+	 * y pasa cada bloque al procesador antes de leer el siguiente, de modo que la memoria utilizada
+	 * depende del tamaño del bloque y no del número de préstamos vencidos. Cada bloque se lee con
+	 * su propia sesión, que se cierra antes de procesarlo, así que el procesador puede utilizar los
+	 * DAO (por ejemplo, para devolver los libros) sin afectar a la lectura de los bloques siguientes.
+	 * Devuelve el número de préstamos procesados, o -1 si falla la lectura de algún bloque.
+	 */
+	public long procesarPrestamosVencidos(LocalDate fecha, int tamanoBloque, Consumer<List<FilaPrestamo>> procesador) {
+		try (Medicion medicion = medir(PROCESAR_PRESTAMOS_VENCIDOS)) {
+			return medicion.correcta(procesarPrestamosVencidosSinMedir(fecha, tamanoBloque, procesador));
+		}
+	}
+
+	private long procesarPrestamosVencidosSinMedir(LocalDate fecha, int tamanoBloque, Consumer<List<FilaPrestamo>> procesador) {
+		long procesados = 0;
+		FilaPrestamo ultima = null;
+		while (true) {
+			List<FilaPrestamo> bloque = obtenerPrestamosVencidos(fecha, ultima, tamanoBloque);
+			if (bloque == null) {
+				return -1;
+			}
+			if (bloque.isEmpty()) {
+				return procesados;
+			}
+			procesador.accept(bloque);
+			procesados += bloque.size();
+			if (bloque.size() < tamanoBloque) {
+				return procesados;
+			}
+			ultima = bloque.get(bloque.size() - 1);
+		}
+	}
+
 	/*
 	 * Método para actualizar un préstamo.  
 	 * 
 	 * Actualiza el registro de la base de datos donde el ID
 	 * sea igual a la propiedad idPrestamo del objeto, con los valores
 	 * del resto de propiedades del mismo.
+	 * Si el préstamo ha cambiado en la base de datos desde que se leyó (su versión no coincide),
+	 * no se modifica y se lanza ConflictoConcurrenciaException.
 	 */
 	public void actualizarPrestamo(Prestamo prestamo) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(ACTUALIZAR_PRESTAMO)) {
+			actualizarPrestamoSinMedir(prestamo);
+			medicion.correcta();
+		}
+	}
+
+	private void actualizarPrestamoSinMedir(Prestamo prestamo) {
+		Session session = sesion();
+		Transaction tx = session.beginTransaction();
 		try {
-			this.session.update(prestamo);
+			actualizar(session, prestamo);
 			tx.commit();
 		} catch (Exception e) {
 			tx.rollback();
+			if (esConflictoVersion(e)) {
+				descartar(session, prestamo);
+				throw new ConflictoConcurrenciaException("El préstamo con ID: " + prestamo.getIdPrestamo()
+						+ " ha sido modificado o eliminado por otra operación.", e);
+			}
 			System.out.println("Error en la actualización del préstamo: ");
+			registrarError();
 			e.printStackTrace();
 		}
 	}
@@ -143,20 +663,31 @@ public class PrestamoDAO extends EntidadDAO {
 	 * 
 	 * Recibe el ID de un lector y devuelve una estructura List
 	 * con todos los préstamos realizados al
-	 * lector.
+	 * lector. El libro y el lector se cargan en la misma consulta (JOIN FETCH).
 	 */
 	public List<Prestamo> obtenerHistorialPrestamos(int idLector) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_HISTORIAL_PRESTAMOS)) {
+			return medicion.correcta(obtenerHistorialPrestamosSinMedir(idLector));
+		}
+	}
+
+	private List<Prestamo> obtenerHistorialPrestamosSinMedir(int idLector) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
 		List<Prestamo> prestamos = null;
 		try {
-			Query<Prestamo> query = this.session
-					.createQuery("SELECT p FROM Prestamo p WHERE p.lector.idLector = :idLector", Prestamo.class);
+			Query<Prestamo> query = session
+					.createQuery("SELECT p FROM Prestamo p LEFT JOIN FETCH p.libro JOIN FETCH p.lector l "
+							+ "WHERE l.idLector = :idLector", Prestamo.class);
 			query.setParameter("idLector", idLector);
 			prestamos = query.getResultList();
 			tx.commit();
 		} catch (Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
 		}
 		return prestamos;
 	}
@@ -165,25 +696,116 @@ public class PrestamoDAO extends EntidadDAO {
 	 * Método para obtener un préstamo no devuelto.
 	 * 
 	 * Recibe el id de un Libro y devuelve, si existe, el Prestamo
-	 * no devuelto del mismo. 
+	 * no devuelto del mismo, o null si el libro no tiene ningún préstamo pendiente,
+	 * que no se considera un error.
 	 * Se utiliza para la funcionalidad de devolución de préstamos.
 	 * 
 	 */
 	public Prestamo obtenerPrestamoPorLibro(int idLibro) {
-		Transaction tx = this.session.beginTransaction();
+		try (Medicion medicion = medir(OBTENER_PRESTAMO_POR_LIBRO)) {
+			return medicion.correcta(obtenerPrestamoPorLibroSinMedir(idLibro));
+		}
+	}
+
+	private Prestamo obtenerPrestamoPorLibroSinMedir(int idLibro) {
+		Session session = sesion();
+		Transaction tx = iniciarLectura(session);
 		Prestamo prestamo = null;
 		try {
-			Query<Prestamo> query = this.session.createQuery(
+			Query<Prestamo> query = session.createQuery(
 					"SELECT p FROM Prestamo p WHERE p.libro.idLibro = :idLibro AND p.fechaDevolucion = null",
 					Prestamo.class);
 			query.setParameter("idLibro", idLibro);
-			prestamo = query.getSingleResult();
+			prestamo = query.uniqueResultOptional().orElse(null);
+			if (prestamo != null) {
+				inicializarAsociaciones(prestamo);
+			}
 			tx.commit();
 		} catch (Exception e) {
 			tx.rollback();
+			registrarError();
 			e.printStackTrace();
+		} finally {
+			terminarLectura(session);
 		}
 		return prestamo;
 	}
 
+	/*
+	 * Variantes asíncronas de los métodos anteriores.
+	 * 
+	 * Devuelven un CompletableFuture con el mismo resultado que el método síncrono.
+	 * Con un DAO creado a partir de una SessionFactory cada operación se ejecuta en segundo
+	 * plano con su propia sesión (ver EntidadDAO.asincrono).
+	 */
+	public CompletableFuture<Integer> insertarPrestamoAsincrono(Libro libro, Lector lector) {
+		return asincrono(() -> insertarPrestamo(libro, lector));
+	}
+
+	public CompletableFuture<ResultadoPrestamo> prestarAsincrono(int idLibro, int idLector) {
+		return asincrono(() -> prestar(idLibro, idLector));
+	}
+
+	public CompletableFuture<Map<Integer, ResultadoDevolucion>> devolverAsincrono(Collection<Integer> idsLibro,
+			LocalDate fecha) {
+		return asincrono(() -> devolver(idsLibro, fecha));
+	}
+
+	public CompletableFuture<Void> borrarPrestamoAsincrono(int idPrestamo) {
+		return asincrono(() -> {
+			borrarPrestamo(idPrestamo);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> actualizarPrestamoAsincrono(Prestamo prestamo) {
+		return asincrono(() -> {
+			actualizarPrestamo(prestamo);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Prestamo> obtenerPrestamoAsincrono(int idPrestamo) {
+		return asincrono(() -> obtenerPrestamo(idPrestamo));
+	}
+
+	public CompletableFuture<List<Prestamo>> obtenerHistorialPrestamosAsincrono(int idLector) {
+		return asincrono(() -> obtenerHistorialPrestamos(idLector));
+	}
+
+	public CompletableFuture<Prestamo> obtenerPrestamoPorLibroAsincrono(int idLibro) {
+		return asincrono(() -> obtenerPrestamoPorLibro(idLibro));
+	}
+
+	//Divide los IDs en bloques de como máximo MAXIMO_IDS_POR_CONSULTA para las cláusulas IN
+	private static List<List<Integer>> dividirEnBloques(Collection<Integer> ids) {
+		List<List<Integer>> bloques = new ArrayList<>();
+		List<Integer> bloque = new ArrayList<>(MAXIMO_IDS_POR_CONSULTA);
+		for (Integer id : ids) {
+			bloque.add(id);
+			if (bloque.size() == MAXIMO_IDS_POR_CONSULTA) {
+				bloques.add(bloque);
+				bloque = new ArrayList<>(MAXIMO_IDS_POR_CONSULTA);
+			}
+		}
+		if (!bloque.isEmpty()) {
+			bloques.add(bloque);
+		}
+		return bloques;
+	}
+
+	/*
+	 * Método para cargar el libro y el lector de un préstamo antes de cerrar la transacción.
+	 * 
+	 * Solo es necesario cuando el DAO trabaja con una SessionFactory: la sesión se cierra
+	 * al terminar cada operación y el libro y el lector, que se cargan de forma perezosa,
+	 * ya no podrían leerse desde el préstamo devuelto.
+	 */
+	private void inicializarAsociaciones(Prestamo prestamo) {
+		if (prestamo != null && this.session == null) {
+			Hibernate.initialize(prestamo.getLibro());
+			Hibernate.initialize(prestamo.getLector());
+		}
+	}
+
 }
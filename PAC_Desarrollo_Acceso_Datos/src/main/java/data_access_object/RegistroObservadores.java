@@ -0,0 +1,127 @@
+package data_access_object;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.SessionFactory;
+
+/**
+ * Clase que guarda los observadores de las entidades de una SessionFactory
+ * 
+ * Cada SessionFactory tiene un único registro, compartido por todos los DAO creados a partir
+ * de ella o de sus sesiones, de forma que un observador recibe los cambios de cualquier DAO.
+ * Un error en un observador se muestra por consola, pero no afecta a la operación del DAO
+ * (que ya se ha confirmado) ni al resto de observadores.
+ * 
+ * @author Simon Gil
+ */
+public class RegistroObservadores {
+	//Registro de cada SessionFactory. Se libera cuando la SessionFactory deja de utilizarse
+	private static final Map<SessionFactory, RegistroObservadores> REGISTROS = new WeakHashMap<>();
+
+	private Map<Class<?>, List<ObservadorEntidad<?>>> observadores = new ConcurrentHashMap<>();
+	private List<ObservadorDisponibilidad> observadoresDisponibilidad = new CopyOnWriteArrayList<>();
+
+	private RegistroObservadores() {
+	}
+
+	/*
+	 * Método para obtener el registro de una SessionFactory.
+	 */
+	public static synchronized RegistroObservadores de(SessionFactory sessionFactory) {
+		return REGISTROS.computeIfAbsent(sessionFactory, sf -> new RegistroObservadores());
+	}
+
+	/*
+	 * Método para registrar un observador de los cambios de una entidad.
+	 */
+	public <T> void registrar(Class<T> clase, ObservadorEntidad<? super T> observador) {
+		this.observadores.computeIfAbsent(clase, c -> new CopyOnWriteArrayList<>()).add(observador);
+	}
+
+	/*
+	 * Método para dejar de notificar a un observador.
+	 */
+	public <T> void eliminar(Class<T> clase, ObservadorEntidad<? super T> observador) {
+		List<ObservadorEntidad<?>> lista = this.observadores.get(clase);
+		if (lista != null) {
+			lista.remove(observador);
+		}
+	}
+
+	/*
+	 * Métodos para registrar y eliminar un observador de la disponibilidad de los libros.
+	 */
+	public void registrarDisponibilidad(ObservadorDisponibilidad observador) {
+		this.observadoresDisponibilidad.add(observador);
+	}
+
+	public void eliminarDisponibilidad(ObservadorDisponibilidad observador) {
+		this.observadoresDisponibilidad.remove(observador);
+	}
+
+	/*
+	 * Métodos para notificar a los observadores de una entidad.
+	 * 
+	 * Los invocan los DAO después de confirmar cada operación.
+	 */
+	public <T> void notificarInsercion(Class<T> clase, T entidad) {
+		for (ObservadorEntidad<? super T> observador : observadoresDe(clase)) {
+			try {
+				observador.insertada(entidad);
+			} catch (RuntimeException e) {
+				informarError(observador, e);
+			}
+		}
+	}
+
+	public <T> void notificarActualizacion(Class<T> clase, T entidad) {
+		for (ObservadorEntidad<? super T> observador : observadoresDe(clase)) {
+			try {
+				observador.actualizada(entidad);
+			} catch (RuntimeException e) {
+				informarError(observador, e);
+			}
+		}
+	}
+
+	public <T> void notificarBorrado(Class<T> clase, int id) {
+		for (ObservadorEntidad<? super T> observador : observadoresDe(clase)) {
+			try {
+				observador.borrada(id);
+			} catch (RuntimeException e) {
+				informarError(observador, e);
+			}
+		}
+	}
+
+	public void notificarDisponibilidad(Collection<Integer> idsLibro, boolean disponible) {
+		if (idsLibro.isEmpty()) {
+			return;
+		}
+		for (ObservadorDisponibilidad observador : this.observadoresDisponibilidad) {
+			try {
+				observador.disponibilidadCambiada(idsLibro, disponible);
+			} catch (RuntimeException e) {
+				informarError(observador, e);
+			}
+		}
+	}
+
+	//Solo se añaden observadores del tipo de la clase con la que se registran
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private <T> List<ObservadorEntidad<? super T>> observadoresDe(Class<T> clase) {
+		List lista = this.observadores.get(clase);
+		return lista != null ? lista : Collections.emptyList();
+	}
+
+	private static void informarError(Object observador, RuntimeException e) {
+		System.out.println("Error al notificar un cambio al observador " + observador.getClass().getSimpleName() + ":");
+		e.printStackTrace();
+	}
+}
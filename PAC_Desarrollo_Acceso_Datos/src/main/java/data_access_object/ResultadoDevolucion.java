@@ -0,0 +1,18 @@
+package data_access_object;
+
+/**
+ * Resultado de la devolución de un libro
+ * 
+ * PrestamoDAO.devolver devuelve uno por cada libro recibido para indicar
+ * si su préstamo se ha cerrado o por qué motivo no ha sido posible.
+ * 
+ * @author Simon Gil
+ */
+public enum ResultadoDevolucion {
+	//El préstamo pendiente se ha cerrado y el libro vuelve a estar disponible
+	DEVUELTO,
+	//El libro no existe o no tiene ningún préstamo pendiente de devolución
+	SIN_PRESTAMO_PENDIENTE,
+	//Error de la base de datos; no se ha devuelto ningún libro del lote
+	ERROR
+}
@@ -0,0 +1,20 @@
+package data_access_object;
+
+/**
+ * Resultado de una operación de préstamo
+ * 
+ * Lo devuelve PrestamoDAO.prestar para indicar si el préstamo se ha realizado
+ * o por qué motivo no ha sido posible.
+ * 
+ * @author Simon Gil
+ */
+public enum ResultadoPrestamo {
+	//El libro se ha marcado como no disponible y el préstamo se ha insertado
+	REALIZADO,
+	//El libro no existe o ya está prestado
+	LIBRO_NO_DISPONIBLE,
+	//No existe ningún lector con el ID indicado
+	LECTOR_DESCONOCIDO,
+	//Error inesperado de la base de datos; no se ha modificado nada
+	ERROR
+}
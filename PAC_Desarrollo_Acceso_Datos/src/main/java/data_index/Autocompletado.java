@@ -0,0 +1,148 @@
+package data_index;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.hibernate.SessionFactory;
+
+import data_access_object.LectorDAO;
+import data_access_object.LibroDAO;
+import data_access_object.ObservadorEntidad;
+import data_access_object.RegistroObservadores;
+import data_model.Lector;
+import data_model.Libro;
+
+/**
+ * Clase con los índices de autocompletado de la aplicación
+ *
+ * Contiene un IndicePrefijos con los títulos de los libros y otro con el nombre y los
+ * apellidos de los lectores. Se cargan desde la base de datos al crearse y se mantienen
+ * actualizados con los cambios de LibroDAO y LectorDAO.
+ *
+ * La memoria máxima se lee de la propiedad "biblioteca.autocompletado.memoria_maxima_mb"
+ * de la configuración de la SessionFactory (hibernate.cfg.xml o el archivo externo de
+ * FactoriaSesiones) y se reparte a partes iguales entre los dos índices.
+ *
+ * @author Simon Gil
+ */
+public class Autocompletado {
+	//Propiedad de configuración con la memoria máxima de los índices, en megabytes
+	public static final String PROPIEDAD_MEMORIA_MAXIMA = "biblioteca.autocompletado.memoria_maxima_mb";
+	public static final long MEMORIA_MAXIMA_POR_DEFECTO_MB = 64;
+	//Autocompletado de cada SessionFactory. Se libera cuando la SessionFactory deja de utilizarse
+	private static final Map<SessionFactory, Autocompletado> AUTOCOMPLETADOS = new WeakHashMap<>();
+
+	private IndicePrefijos titulos;
+	private IndicePrefijos lectores;
+
+	private Autocompletado(long memoriaMaxima) {
+		this.titulos = new IndicePrefijos(memoriaMaxima / 2);
+		this.lectores = new IndicePrefijos(memoriaMaxima / 2);
+	}
+
+	/*
+	 * Método para obtener el autocompletado de una SessionFactory.
+	 *
+	 * La primera llamada carga los índices con la memoria máxima de la configuración;
+	 * las siguientes devuelven los mismos índices, que se mantienen actualizados. La aplicación
+	 * la hace al arrancar (ver Main), para que la primera sugerencia no espere a la carga.
+	 */
+	public static synchronized Autocompletado de(SessionFactory sessionFactory) {
+		Autocompletado autocompletado = AUTOCOMPLETADOS.get(sessionFactory);
+		if (autocompletado == null) {
+			autocompletado = construir(sessionFactory, leerMemoriaMaxima(sessionFactory));
+			AUTOCOMPLETADOS.put(sessionFactory, autocompletado);
+		}
+		return autocompletado;
+	}
+
+	/*
+	 * Método para construir los índices con todos los libros y lectores de la base de datos.
+	 *
+	 * Recibe la memoria máxima en bytes. Registra los observadores antes de recorrer las tablas
+	 * para no perder los cambios confirmados durante la carga, y los índices se cargan entre
+	 * iniciarCarga y terminarCarga para que las filas leídas no sustituyan esos cambios.
+	 */
+	public static Autocompletado construir(SessionFactory sessionFactory, long memoriaMaxima) {
+		Autocompletado autocompletado = new Autocompletado(memoriaMaxima);
+		IndicePrefijos titulos = autocompletado.titulos;
+		IndicePrefijos lectores = autocompletado.lectores;
+		titulos.iniciarCarga();
+		lectores.iniciarCarga();
+		RegistroObservadores observadores = RegistroObservadores.de(sessionFactory);
+		observadores.registrar(Libro.class, new ObservadorEntidad<Libro>() {
+			public void insertada(Libro libro) {
+				titulos.anadir(libro.getIdLibro(), libro.getTitulo());
+			}
+			public void actualizada(Libro libro) {
+				titulos.anadir(libro.getIdLibro(), libro.getTitulo());
+			}
+			public void borrada(int idLibro) {
+				titulos.eliminar(idLibro);
+			}
+		});
+		observadores.registrar(Lector.class, new ObservadorEntidad<Lector>() {
+			public void insertada(Lector lector) {
+				lectores.anadir(lector.getIdLector(), nombreCompleto(lector.getNombre(), lector.getApellidos()));
+			}
+			public void actualizada(Lector lector) {
+				lectores.anadir(lector.getIdLector(), nombreCompleto(lector.getNombre(), lector.getApellidos()));
+			}
+			public void borrada(int idLector) {
+				lectores.eliminar(idLector);
+			}
+		});
+		new LibroDAO(sessionFactory).recorrerFilasLibros(fila -> titulos.anadirLeido(fila.getIdLibro(), fila.getTitulo()));
+		titulos.terminarCarga();
+		new LectorDAO(sessionFactory).recorrerFilasLectores(
+				fila -> lectores.anadirLeido(fila.getIdLector(), nombreCompleto(fila.getNombre(), fila.getApellidos())));
+		lectores.terminarCarga();
+		if (titulos.getDescartados() + lectores.getDescartados() > 0) {
+			System.out.println("Aviso: la memoria del autocompletado no es suficiente. Se han descartado "
+					+ titulos.getDescartados() + " títulos y " + lectores.getDescartados() + " lectores.");
+		}
+		return autocompletado;
+	}
+
+	/*
+	 * Método para obtener los títulos de libros que empiezan por un texto.
+	 */
+	public List<Sugerencia> sugerirTitulos(String prefijo, int maximo) {
+		return this.titulos.sugerir(prefijo, maximo);
+	}
+
+	/*
+	 * Método para obtener los lectores cuyo nombre o apellidos empiezan por un texto.
+	 */
+	public List<Sugerencia> sugerirLectores(String prefijo, int maximo) {
+		return this.lectores.sugerir(prefijo, maximo);
+	}
+
+	public IndicePrefijos getTitulos() {
+		return titulos;
+	}
+
+	public IndicePrefijos getLectores() {
+		return lectores;
+	}
+
+	//Nombre y apellidos de un lector separados por un espacio, sin los que sean null
+	private static String nombreCompleto(String nombre, String apellidos) {
+		if (apellidos == null) {
+			return nombre;
+		}
+		return nombre == null ? apellidos : nombre + " " + apellidos;
+	}
+
+	//Lee la memoria máxima de la configuración de la SessionFactory y la devuelve en bytes
+	private static long leerMemoriaMaxima(SessionFactory sessionFactory) {
+		Object memoria = sessionFactory.getProperties().get(PROPIEDAD_MEMORIA_MAXIMA);
+		try {
+			long megabytes = memoria == null ? MEMORIA_MAXIMA_POR_DEFECTO_MB : Long.parseLong(memoria.toString().trim());
+			return megabytes * 1024 * 1024;
+		} catch (NumberFormatException e) {
+			return MEMORIA_MAXIMA_POR_DEFECTO_MB * 1024 * 1024;
+		}
+	}
+}
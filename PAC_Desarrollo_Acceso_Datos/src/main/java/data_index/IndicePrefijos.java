@@ -0,0 +1,227 @@
+package data_index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Índice en memoria para autocompletar textos a partir de su comienzo
+ *
+ * Guarda en un mapa ordenado (ConcurrentSkipListMap) una clave por cada palabra de cada texto:
+ * el texto normalizado desde esa palabra hasta el final, seguido del ID del elemento. Así,
+ * "Cien años de soledad" se encuentra escribiendo "cien a" o "sole". Una búsqueda se sitúa en
+ * la primera clave mayor o igual que el prefijo y avanza mientras las claves empiecen por él,
+ * por lo que su coste depende del número de sugerencias pedidas y no del número de textos.
+ * Las sugerencias se devuelven en orden alfabético del texto encontrado.
+ *
+ * Las búsquedas no bloquean y pueden ejecutarse a la vez que las modificaciones.
+ * La memoria ocupada se estima al añadir cada texto: si se supera la memoria máxima indicada
+ * al crear el índice, el texto no se indexa y se cuenta como descartado.
+ *
+ * Para cargarlo desde la base de datos mientras se reciben cambios, los textos leídos se añaden
+ * con anadirLeido entre iniciarCarga y terminarCarga: los que cambian durante la carga conservan
+ * el cambio, aunque la lectura devuelva datos anteriores.
+ *
+ * @author Simon Gil
+ */
+public class IndicePrefijos {
+	//Separa el texto de cada clave del ID del elemento; es menor que cualquier carácter del texto
+	private static final char SEPARADOR = '\u0000';
+	//Las claves se recortan a esta longitud para limitar la memoria de los textos largos
+	public static final int LONGITUD_MAXIMA_CLAVE = 64;
+	//Estimación de los bytes ocupados por cada clave (nodo del mapa, String y su array)
+	//y por cada texto (entrada del mapa de textos, String y su array), sin contar los caracteres
+	private static final int BYTES_POR_CLAVE = 112;
+	private static final int BYTES_POR_TEXTO = 96;
+
+	private long memoriaMaxima;
+	private volatile long memoriaUsada;
+	private volatile int descartados;
+	//Claves de búsqueda, con el ID del elemento como valor
+	private ConcurrentSkipListMap<String, Integer> claves = new ConcurrentSkipListMap<>();
+	//Texto original de cada elemento, para mostrarlo y para quitar sus claves
+	private Map<Integer, String> textos = new ConcurrentHashMap<>();
+	//IDs de los elementos añadidos o eliminados durante la carga, cuyos textos leídos se descartan.
+	//Es null cuando el índice no se está cargando
+	private Set<Integer> cambiosDuranteCarga;
+
+	/*
+	 * Constructor de la clase.
+	 *
+	 * Recibe la memoria máxima aproximada, en bytes, que puede ocupar el índice.
+	 */
+	public IndicePrefijos(long memoriaMaxima) {
+		this.memoriaMaxima = memoriaMaxima;
+	}
+
+	/*
+	 * Método para añadir un texto al índice o sustituir el que tenía el elemento.
+	 *
+	 * Devuelve false si el texto no se ha indexado por superar la memoria máxima
+	 * (el texto anterior del elemento, si lo había, se quita igualmente).
+	 */
+	public synchronized boolean anadir(int id, String texto) {
+		if (this.cambiosDuranteCarga != null) {
+			this.cambiosDuranteCarga.add(id);
+		}
+		return indexar(id, texto);
+	}
+
+	/*
+	 * Método para empezar a cargar el índice.
+	 *
+	 * Desde este momento se apuntan los elementos que se añaden o eliminan, para que los
+	 * textos leídos con anadirLeido no sustituyan esos cambios.
+	 */
+	public synchronized void iniciarCarga() {
+		this.cambiosDuranteCarga = new HashSet<>();
+	}
+
+	/*
+	 * Método para añadir un texto leído durante la carga del índice.
+	 *
+	 * Si el elemento ha cambiado desde que empezó la carga, el texto leído puede ser anterior
+	 * al cambio y no se añade. Devuelve false solo si el texto se descarta por la memoria máxima.
+	 */
+	public synchronized boolean anadirLeido(int id, String texto) {
+		if (this.cambiosDuranteCarga != null && this.cambiosDuranteCarga.contains(id)) {
+			return true;
+		}
+		return indexar(id, texto);
+	}
+
+	/*
+	 * Método para terminar la carga del índice.
+	 */
+	public synchronized void terminarCarga() {
+		this.cambiosDuranteCarga = null;
+	}
+
+	//Añade un texto al índice o sustituye el que tenía el elemento. Debe llamarse sincronizado
+	private boolean indexar(int id, String texto) {
+		quitar(id);
+		if (texto == null || texto.trim().isEmpty()) {
+			return true;
+		}
+		List<String> clavesTexto = clavesDe(id, texto);
+		long memoria = BYTES_POR_TEXTO + texto.length();
+		for (String clave : clavesTexto) {
+			memoria += BYTES_POR_CLAVE + clave.length();
+		}
+		if (this.memoriaUsada + memoria > this.memoriaMaxima) {
+			this.descartados++;
+			return false;
+		}
+		this.textos.put(id, texto);
+		for (String clave : clavesTexto) {
+			this.claves.put(clave, id);
+		}
+		this.memoriaUsada += memoria;
+		return true;
+	}
+
+	/*
+	 * Método para quitar un elemento del índice.
+	 */
+	public synchronized void eliminar(int id) {
+		if (this.cambiosDuranteCarga != null) {
+			this.cambiosDuranteCarga.add(id);
+		}
+		quitar(id);
+	}
+
+	/*
+	 * Método para obtener las sugerencias que empiezan por un prefijo.
+	 *
+	 * El prefijo se normaliza igual que los textos, por lo que no se tienen en cuenta
+	 * mayúsculas ni tildes. Devuelve como máximo "maximo" elementos distintos.
+	 */
+	public List<Sugerencia> sugerir(String prefijo, int maximo) {
+		List<Sugerencia> sugerencias = new ArrayList<>();
+		String normalizado = recortar(Normalizador.frase(prefijo));
+		if (normalizado.isEmpty() || maximo <= 0) {
+			return sugerencias;
+		}
+		Set<Integer> vistos = new LinkedHashSet<>();
+		for (Map.Entry<String, Integer> clave : this.claves.tailMap(normalizado).entrySet()) {
+			if (!clave.getKey().startsWith(normalizado)) {
+				break;
+			}
+			// Un mismo texto puede empezar por el prefijo en varias de sus palabras
+			if (vistos.add(clave.getValue())) {
+				String texto = this.textos.get(clave.getValue());
+				if (texto != null) {
+					sugerencias.add(new Sugerencia(clave.getValue(), texto));
+					if (sugerencias.size() == maximo) {
+						break;
+					}
+				}
+			}
+		}
+		return sugerencias;
+	}
+
+	//Número de elementos indexados
+	public int getNumElementos() {
+		return this.textos.size();
+	}
+
+	//Memoria aproximada ocupada por el índice, en bytes
+	public long getMemoriaUsada() {
+		return memoriaUsada;
+	}
+
+	public long getMemoriaMaxima() {
+		return memoriaMaxima;
+	}
+
+	//Número de textos que no se han indexado por superar la memoria máxima
+	public int getDescartados() {
+		return descartados;
+	}
+
+	//Quita las claves de un elemento y descuenta su memoria. Debe llamarse sincronizado
+	private void quitar(int id) {
+		String texto = this.textos.remove(id);
+		if (texto == null) {
+			return;
+		}
+		long memoria = BYTES_POR_TEXTO + texto.length();
+		for (String clave : clavesDe(id, texto)) {
+			this.claves.remove(clave);
+			memoria += BYTES_POR_CLAVE + clave.length();
+		}
+		this.memoriaUsada -= memoria;
+	}
+
+	/*
+	 * Método para obtener las claves de un texto.
+	 *
+	 * Genera una clave desde el comienzo del texto y otra desde cada palabra que no sea
+	 * una palabra vacía, recortadas a LONGITUD_MAXIMA_CLAVE y seguidas del ID del elemento.
+	 */
+	private static List<String> clavesDe(int id, String texto) {
+		String frase = Normalizador.frase(texto);
+		String sufijoId = SEPARADOR + Integer.toString(id);
+		List<String> clavesTexto = new ArrayList<>();
+		int inicio = 0;
+		while (inicio < frase.length()) {
+			int fin = frase.indexOf(' ', inicio);
+			String palabra = fin < 0 ? frase.substring(inicio) : frase.substring(inicio, fin);
+			if (inicio == 0 || !Normalizador.esPalabraVacia(palabra)) {
+				clavesTexto.add(recortar(frase.substring(inicio)) + sufijoId);
+			}
+			inicio = fin < 0 ? frase.length() : fin + 1;
+		}
+		return clavesTexto;
+	}
+
+	private static String recortar(String texto) {
+		return texto.length() > LONGITUD_MAXIMA_CLAVE ? texto.substring(0, LONGITUD_MAXIMA_CLAVE) : texto;
+	}
+}
@@ -0,0 +1,349 @@
+package data_index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hibernate.SessionFactory;
+
+import data_access_object.LibroDAO;
+import data_access_object.ObservadorEntidad;
+import data_access_object.RegistroObservadores;
+import data_model.Libro;
+
+/**
+ * Índice invertido en memoria para buscar libros por palabras del título y del autor
+ *
+ * Para cada palabra normalizada (ver Normalizador) guarda la lista ordenada de IDs de los
+ * libros que la contienen junto con su peso en cada libro. Una búsqueda devuelve los libros
+ * que contienen todas las palabras de la consulta, recorriendo la lista más corta y buscando
+ * cada ID en las demás, por lo que no depende del número total de libros ni lanza consultas
+ * LIKE '%texto%' contra la base de datos.
+ *
+ * Los resultados se ordenan por relevancia: cada palabra suma su peso en el libro (las del
+ * título pesan el doble que las del autor, y pesan más cuanto más corto es el texto)
+ * multiplicado por su rareza en el catálogo (IDF), de forma que las palabras poco frecuentes
+ * deciden el orden. Solo se conservan los k mejores resultados mientras se recorren.
+ *
+ * El índice se registra como observador de LibroDAO y se actualiza después de cada inserción,
+ * modificación o borrado confirmado. Los cambios que se notifican mientras se construye tienen
+ * prioridad sobre las filas que lee el recorrido inicial, como en MapaDisponibilidad, para que el
+ * recorrido no sustituya un cambio más reciente. Admite búsquedas simultáneas desde varios hilos.
+ *
+ * @author Simon Gil
+ */
+public class IndiceTextoLibros implements ObservadorEntidad<Libro> {
+	//Peso de cada aparición de una palabra en el título y en el autor
+	private static final float PESO_TITULO = 2f;
+	private static final float PESO_AUTOR = 1f;
+	//Índice de cada SessionFactory. Se libera cuando la SessionFactory deja de utilizarse
+	private static final Map<SessionFactory, IndiceTextoLibros> INDICES = new WeakHashMap<>();
+	//Orden de los candidatos: primero el de menor puntuación y, a igual puntuación, el de mayor ID
+	private static final Comparator<Candidato> PEOR_PRIMERO = Comparator
+			.comparingDouble((Candidato c) -> c.puntuacion).thenComparing(c -> -c.idLibro);
+
+	//Libros en los que aparece cada palabra
+	private Map<String, Apariciones> palabras = new HashMap<>();
+	//Título y autor de cada libro indexado, para mostrar los resultados y para quitar
+	//sus palabras del índice cuando se modifica o se elimina
+	private Map<Integer, String[]> libros = new HashMap<>();
+	//IDs de los libros indexados o eliminados durante la construcción, que el recorrido inicial
+	//ya no debe indexar con los datos que lee. Es null cuando el índice no se está construyendo
+	private Set<Integer> cambiosDuranteConstruccion;
+	private ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+	/*
+	 * Método para obtener el índice de una SessionFactory.
+	 *
+	 * La primera llamada construye el índice con todos los libros de la base de datos;
+	 * las siguientes devuelven el mismo índice, que se mantiene actualizado.
+	 */
+	public static synchronized IndiceTextoLibros de(SessionFactory sessionFactory) {
+		IndiceTextoLibros indice = INDICES.get(sessionFactory);
+		if (indice == null) {
+			indice = construir(sessionFactory);
+			INDICES.put(sessionFactory, indice);
+		}
+		return indice;
+	}
+
+	/*
+	 * Método para construir un índice nuevo con todos los libros de la base de datos.
+	 *
+	 * Registra el índice como observador antes de recorrer la tabla Libro, para no perder los
+	 * cambios que se confirmen durante la carga. Los libros se leen con un cursor y una
+	 * consulta de proyección, sin cargar la tabla completa en memoria. El cursor puede devolver
+	 * un libro con datos anteriores a un cambio ya notificado (o un libro ya borrado), así que
+	 * se apuntan los IDs que cambian durante el recorrido y sus filas leídas se descartan.
+	 */
+	public static IndiceTextoLibros construir(SessionFactory sessionFactory) {
+		IndiceTextoLibros indice = new IndiceTextoLibros();
+		indice.cambiosDuranteConstruccion = new HashSet<>();
+		RegistroObservadores.de(sessionFactory).registrar(Libro.class, indice);
+		new LibroDAO(sessionFactory)
+				.recorrerFilasLibros(fila -> indice.indexar(fila.getIdLibro(), fila.getTitulo(), fila.getAutor(), true));
+		indice.cerrojo.writeLock().lock();
+		try {
+			indice.cambiosDuranteConstruccion = null;
+		} finally {
+			indice.cerrojo.writeLock().unlock();
+		}
+		return indice;
+	}
+
+	/*
+	 * Método para añadir un libro al índice o sustituir sus datos si ya estaba indexado.
+	 */
+	public void indexar(int idLibro, String titulo, String autor) {
+		indexar(idLibro, titulo, autor, false);
+	}
+
+	//Indexa un libro. Si lo ha leído el recorrido de la construcción y ha cambiado después, no hace nada
+	private void indexar(int idLibro, String titulo, String autor, boolean leidoEnConstruccion) {
+		// Peso de cada palabra del libro, normalizado por el número total de palabras
+		Map<String, Float> pesos = new LinkedHashMap<>();
+		List<String> palabrasTitulo = Normalizador.palabras(titulo);
+		List<String> palabrasAutor = Normalizador.palabras(autor);
+		palabrasTitulo.forEach(palabra -> pesos.merge(palabra, PESO_TITULO, Float::sum));
+		palabrasAutor.forEach(palabra -> pesos.merge(palabra, PESO_AUTOR, Float::sum));
+		float norma = (float) (1 / Math.sqrt(Math.max(1, palabrasTitulo.size() + palabrasAutor.size())));
+		this.cerrojo.writeLock().lock();
+		try {
+			if (!anotarCambio(idLibro, leidoEnConstruccion)) {
+				return;
+			}
+			quitar(idLibro);
+			for (Map.Entry<String, Float> peso : pesos.entrySet()) {
+				this.palabras.computeIfAbsent(peso.getKey(), p -> new Apariciones())
+						.anadir(idLibro, peso.getValue() * norma);
+			}
+			this.libros.put(idLibro, new String[] { titulo, autor });
+		} finally {
+			this.cerrojo.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Método para quitar un libro del índice.
+	 */
+	public void eliminar(int idLibro) {
+		this.cerrojo.writeLock().lock();
+		try {
+			anotarCambio(idLibro, false);
+			quitar(idLibro);
+		} finally {
+			this.cerrojo.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Método para buscar libros por palabras del título o del autor.
+	 *
+	 * Recibe el texto de la búsqueda, que se normaliza igual que los libros indexados, y el
+	 * número máximo de resultados. Devuelve los libros que contienen todas las palabras de
+	 * la consulta, del más relevante al menos relevante, o una lista vacía si la consulta
+	 * no tiene ninguna palabra que buscar.
+	 */
+	public List<ResultadoBusqueda> buscar(String consulta, int maximo) {
+		Set<String> terminos = new LinkedHashSet<>(Normalizador.palabras(consulta));
+		if (terminos.isEmpty() || maximo <= 0) {
+			return new ArrayList<>();
+		}
+		this.cerrojo.readLock().lock();
+		try {
+			Apariciones[] listas = new Apariciones[terminos.size()];
+			int i = 0;
+			for (String termino : terminos) {
+				listas[i] = this.palabras.get(termino);
+				if (listas[i++] == null) {
+					return new ArrayList<>();
+				}
+			}
+			// Se recorre la lista más corta y se busca cada libro en las demás
+			Arrays.sort(listas, Comparator.comparingInt((Apariciones a) -> a.tamano));
+			double[] idf = new double[listas.length];
+			for (i = 0; i < listas.length; i++) {
+				idf[i] = Math.log(1 + (double) this.libros.size() / listas[i].tamano);
+			}
+			PriorityQueue<Candidato> mejores = new PriorityQueue<>(maximo + 1, PEOR_PRIMERO);
+			Apariciones primera = listas[0];
+			candidatos: for (int posicion = 0; posicion < primera.tamano; posicion++) {
+				int idLibro = primera.ids[posicion];
+				double puntuacion = idf[0] * primera.pesos[posicion];
+				for (i = 1; i < listas.length; i++) {
+					int encontrado = listas[i].posicion(idLibro);
+					if (encontrado < 0) {
+						continue candidatos;
+					}
+					puntuacion += idf[i] * listas[i].pesos[encontrado];
+				}
+				if (mejores.size() < maximo) {
+					mejores.add(new Candidato(idLibro, puntuacion));
+				} else if (mejores.peek().esPeorQue(idLibro, puntuacion)) {
+					mejores.poll();
+					mejores.add(new Candidato(idLibro, puntuacion));
+				}
+			}
+			List<ResultadoBusqueda> resultados = new ArrayList<>(mejores.size());
+			while (!mejores.isEmpty()) {
+				Candidato candidato = mejores.poll();
+				String[] libro = this.libros.get(candidato.idLibro);
+				resultados.add(new ResultadoBusqueda(candidato.idLibro, libro[0], libro[1], candidato.puntuacion));
+			}
+			// La cola devuelve primero el peor resultado
+			Collections.reverse(resultados);
+			return resultados;
+		} finally {
+			this.cerrojo.readLock().unlock();
+		}
+	}
+
+	//Número de libros indexados
+	public int getNumLibros() {
+		this.cerrojo.readLock().lock();
+		try {
+			return this.libros.size();
+		} finally {
+			this.cerrojo.readLock().unlock();
+		}
+	}
+
+	//Número de palabras distintas del índice
+	public int getNumPalabras() {
+		this.cerrojo.readLock().lock();
+		try {
+			return this.palabras.size();
+		} finally {
+			this.cerrojo.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Métodos de ObservadorEntidad: mantienen el índice actualizado con los cambios de LibroDAO.
+	 */
+	@Override
+	public void insertada(Libro libro) {
+		indexar(libro.getIdLibro(), libro.getTitulo(), libro.getAutor());
+	}
+
+	@Override
+	public void actualizada(Libro libro) {
+		indexar(libro.getIdLibro(), libro.getTitulo(), libro.getAutor());
+	}
+
+	@Override
+	public void borrada(int idLibro) {
+		eliminar(idLibro);
+	}
+
+	/*
+	 * Método para apuntar el cambio de un libro durante la construcción del índice.
+	 *
+	 * Los cambios notificados se apuntan; las filas del recorrido inicial se descartan si su libro
+	 * ya ha cambiado. Devuelve false si el cambio debe descartarse. Debe llamarse con el cerrojo de escritura.
+	 */
+	private boolean anotarCambio(int idLibro, boolean leidoEnConstruccion) {
+		if (this.cambiosDuranteConstruccion == null) {
+			return true;
+		}
+		if (leidoEnConstruccion) {
+			return !this.cambiosDuranteConstruccion.contains(idLibro);
+		}
+		this.cambiosDuranteConstruccion.add(idLibro);
+		return true;
+	}
+
+	//Quita las palabras de un libro del índice. Debe llamarse con el cerrojo de escritura
+	private void quitar(int idLibro) {
+		String[] libro = this.libros.remove(idLibro);
+		if (libro == null) {
+			return;
+		}
+		Set<String> palabrasLibro = new LinkedHashSet<>(Normalizador.palabras(libro[0]));
+		palabrasLibro.addAll(Normalizador.palabras(libro[1]));
+		for (String palabra : palabrasLibro) {
+			Apariciones apariciones = this.palabras.get(palabra);
+			if (apariciones != null && apariciones.quitar(idLibro) && apariciones.tamano == 0) {
+				this.palabras.remove(palabra);
+			}
+		}
+	}
+
+	/*
+	 * Lista de los libros en los que aparece una palabra.
+	 *
+	 * Guarda los IDs ordenados en un array de enteros, y el peso de la palabra en cada libro
+	 * en un array paralelo, para ocupar poca memoria y poder buscar un ID por búsqueda binaria.
+	 * Los IDs nuevos suelen ser mayores que los existentes, por lo que se añaden al final.
+	 */
+	private static final class Apariciones {
+		private int[] ids = new int[2];
+		private float[] pesos = new float[2];
+		private int tamano;
+
+		//Añade un libro a la lista, o actualiza su peso si ya estaba
+		void anadir(int idLibro, float peso) {
+			int posicion = this.tamano == 0 || this.ids[this.tamano - 1] < idLibro ? -(this.tamano + 1)
+					: posicion(idLibro);
+			if (posicion >= 0) {
+				this.pesos[posicion] = peso;
+				return;
+			}
+			posicion = -(posicion + 1);
+			if (this.tamano == this.ids.length) {
+				int capacidad = this.ids.length + (this.ids.length >> 1) + 1;
+				this.ids = Arrays.copyOf(this.ids, capacidad);
+				this.pesos = Arrays.copyOf(this.pesos, capacidad);
+			}
+			System.arraycopy(this.ids, posicion, this.ids, posicion + 1, this.tamano - posicion);
+			System.arraycopy(this.pesos, posicion, this.pesos, posicion + 1, this.tamano - posicion);
+			this.ids[posicion] = idLibro;
+			this.pesos[posicion] = peso;
+			this.tamano++;
+		}
+
+		//Quita un libro de la lista. Devuelve false si no estaba
+		boolean quitar(int idLibro) {
+			int posicion = posicion(idLibro);
+			if (posicion < 0) {
+				return false;
+			}
+			System.arraycopy(this.ids, posicion + 1, this.ids, posicion, this.tamano - posicion - 1);
+			System.arraycopy(this.pesos, posicion + 1, this.pesos, posicion, this.tamano - posicion - 1);
+			this.tamano--;
+			return true;
+		}
+
+		//Posición de un libro en la lista, o un número negativo si no está (como Arrays.binarySearch)
+		int posicion(int idLibro) {
+			return Arrays.binarySearch(this.ids, 0, this.tamano, idLibro);
+		}
+	}
+
+	//Libro candidato a aparecer en los resultados de una búsqueda
+	private static final class Candidato {
+		private final int idLibro;
+		private final double puntuacion;
+
+		Candidato(int idLibro, double puntuacion) {
+			this.idLibro = idLibro;
+			this.puntuacion = puntuacion;
+		}
+
+		//Mismo criterio que PEOR_PRIMERO, sin crear un candidato para cada libro recorrido
+		boolean esPeorQue(int idOtro, double puntuacionOtro) {
+			return this.puntuacion < puntuacionOtro || (this.puntuacion == puntuacionOtro && this.idLibro > idOtro);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package data_index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hibernate.SessionFactory;
+
+import data_access_object.LibroDAO;
+import data_access_object.ObservadorDisponibilidad;
+import data_access_object.ObservadorEntidad;
+import data_access_object.RegistroObservadores;
+import data_model.Libro;
+
+/**
+ * Mapa de bits en memoria con la disponibilidad de los libros
+ *
+ * El bit de posición idLibro está activo si el libro existe y está disponible para préstamo.
+ * Permite comprobar si un libro está disponible, contar los disponibles y obtener los primeros
+ * disponibles sin consultar la base de datos, ocupando un bit por ID (unos 125 KB por cada
+ * millón de IDs).
+ *
+ * Se mantiene actualizado con los préstamos, devoluciones y borrados de lectores
+ * (ObservadorDisponibilidad) y con las inserciones, modificaciones y borrados de libros
+ * (ObservadorEntidad). Puede reconstruirse desde la base de datos con un único recorrido de
+ * los IDs de los libros disponibles; los cambios que se notifican durante la reconstrucción
+ * se aplican también al mapa nuevo, para no perderlos.
+ *
+ * La aplicación construye el mapa al arrancar (Main) y lo utiliza en BibliotecaService para
+ * comprobar si un libro puede prestarse y para obtener los libros disponibles. La comprobación
+ * definitiva se hace en la base de datos, en PrestamoDAO.prestar.
+ *
+ * @author Simon Gil
+ */
+public class MapaDisponibilidad implements ObservadorEntidad<Libro>, ObservadorDisponibilidad {
+	//Mapa de cada SessionFactory. Se libera cuando la SessionFactory deja de utilizarse: el mapa no
+	//guarda ninguna referencia a ella (ni a un DAO), porque impediría liberar la clave del WeakHashMap
+	private static final Map<SessionFactory, MapaDisponibilidad> MAPAS = new WeakHashMap<>();
+
+	private BitSet disponibles = new BitSet();
+	private int numDisponibles;
+	//Cambios recibidos durante una reconstrucción: última disponibilidad de cada libro
+	private Map<Integer, Boolean> cambiosDuranteReconstruccion;
+	private ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+	private MapaDisponibilidad() {
+	}
+
+	/*
+	 * Método para obtener el mapa de disponibilidad de una SessionFactory.
+	 *
+	 * La primera llamada construye el mapa desde la base de datos;
+	 * las siguientes devuelven el mismo mapa, que se mantiene actualizado.
+	 */
+	public static synchronized MapaDisponibilidad de(SessionFactory sessionFactory) {
+		MapaDisponibilidad mapa = MAPAS.get(sessionFactory);
+		if (mapa == null) {
+			mapa = construir(sessionFactory);
+			MAPAS.put(sessionFactory, mapa);
+		}
+		return mapa;
+	}
+
+	/*
+	 * Método para construir un mapa nuevo con la disponibilidad de la base de datos.
+	 *
+	 * Registra el mapa como observador antes de leer la tabla Libro.
+	 */
+	public static MapaDisponibilidad construir(SessionFactory sessionFactory) {
+		MapaDisponibilidad mapa = new MapaDisponibilidad();
+		RegistroObservadores observadores = RegistroObservadores.de(sessionFactory);
+		observadores.registrar(Libro.class, mapa);
+		observadores.registrarDisponibilidad(mapa);
+		mapa.reconstruir(sessionFactory);
+		return mapa;
+	}
+
+	/*
+	 * Método para reconstruir el mapa desde la base de datos.
+	 *
+	 * Recibe la SessionFactory del mapa y recorre una sola vez los IDs de los libros disponibles,
+	 * sustituyendo el mapa actual, que puede seguir consultándose mientras tanto. Devuelve el
+	 * número de libros disponibles. Sirve para corregir el mapa si la base de datos se ha
+	 * modificado fuera de los DAO.
+	 */
+	public synchronized int reconstruir(SessionFactory sessionFactory) {
+		this.cerrojo.writeLock().lock();
+		try {
+			this.cambiosDuranteReconstruccion = new HashMap<>();
+		} finally {
+			this.cerrojo.writeLock().unlock();
+		}
+		BitSet nuevo = new BitSet();
+		new LibroDAO(sessionFactory).recorrerIdsLibrosDisponibles(nuevo::set);
+		this.cerrojo.writeLock().lock();
+		try {
+			this.cambiosDuranteReconstruccion.forEach(nuevo::set);
+			this.cambiosDuranteReconstruccion = null;
+			this.disponibles = nuevo;
+			this.numDisponibles = nuevo.cardinality();
+			return this.numDisponibles;
+		} finally {
+			this.cerrojo.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Método para comprobar si un libro está disponible.
+	 *
+	 * Devuelve false si el libro está prestado o no existe.
+	 */
+	public boolean estaDisponible(int idLibro) {
+		if (idLibro < 0) {
+			return false;
+		}
+		this.cerrojo.readLock().lock();
+		try {
+			return this.disponibles.get(idLibro);
+		} finally {
+			this.cerrojo.readLock().unlock();
+		}
+	}
+
+	//Número de libros disponibles
+	public int contarDisponibles() {
+		this.cerrojo.readLock().lock();
+		try {
+			return this.numDisponibles;
+		} finally {
+			this.cerrojo.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Método para obtener los IDs de los primeros libros disponibles.
+	 *
+	 * Devuelve como máximo "limite" IDs mayores que "despuesDeId", en orden, de forma que
+	 * pueden recorrerse todos los disponibles página a página (0 para la primera página).
+	 */
+	public List<Integer> obtenerDisponibles(int despuesDeId, int limite) {
+		List<Integer> ids = new ArrayList<>(Math.min(Math.max(limite, 0), 1024));
+		this.cerrojo.readLock().lock();
+		try {
+			for (int id = this.disponibles.nextSetBit(Math.max(despuesDeId + 1, 0)); id >= 0
+					&& ids.size() < limite; id = this.disponibles.nextSetBit(id + 1)) {
+				ids.add(id);
+			}
+		} finally {
+			this.cerrojo.readLock().unlock();
+		}
+		return ids;
+	}
+
+	/*
+	 * Métodos de los observadores: actualizan el mapa con los cambios de los DAO.
+	 */
+	@Override
+	public void insertada(Libro libro) {
+		cambiar(libro.getIdLibro(), libro.isDisponible());
+	}
+
+	@Override
+	public void actualizada(Libro libro) {
+		cambiar(libro.getIdLibro(), libro.isDisponible());
+	}
+
+	@Override
+	public void borrada(int idLibro) {
+		cambiar(idLibro, false);
+	}
+
+	@Override
+	public void disponibilidadCambiada(Collection<Integer> idsLibro, boolean disponible) {
+		this.cerrojo.writeLock().lock();
+		try {
+			for (Integer idLibro : idsLibro) {
+				cambiarBit(idLibro, disponible);
+			}
+		} finally {
+			this.cerrojo.writeLock().unlock();
+		}
+	}
+
+	private void cambiar(int idLibro, boolean disponible) {
+		this.cerrojo.writeLock().lock();
+		try {
+			cambiarBit(idLibro, disponible);
+		} finally {
+			this.cerrojo.writeLock().unlock();
+		}
+	}
+
+	//Cambia el bit de un libro y actualiza el contador. Debe llamarse con el cerrojo de escritura
+	private void cambiarBit(int idLibro, boolean disponible) {
+		if (this.disponibles.get(idLibro) != disponible) {
+			this.disponibles.set(idLibro, disponible);
+			this.numDisponibles += disponible ? 1 : -1;
+		}
+		if (this.cambiosDuranteReconstruccion != null) {
+			this.cambiosDuranteReconstruccion.put(idLibro, disponible);
+		}
+	}
+}
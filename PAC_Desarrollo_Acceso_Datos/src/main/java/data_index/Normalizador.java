@@ -0,0 +1,77 @@
+package data_index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Clase de utilidad para normalizar y dividir en palabras los textos indexados
+ * 
+ * La normalización pasa el texto a minúsculas y elimina tildes, diéresis y demás marcas
+ * diacríticas (la ñ se trata como n), de forma que "Cien años de soledad" y "cien anos de
+ * soledad" producen las mismas palabras. Se utiliza igual para los textos indexados y para
+ * las consultas.
+ * 
+ * @author Simon Gil
+ */
+public final class Normalizador {
+	//Marcas diacríticas que quedan separadas de su letra tras la descomposición NFD
+	private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+	//Cualquier secuencia de caracteres que no sean letras ni números separa dos palabras
+	private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+	//Palabras demasiado frecuentes en títulos en español como para distinguir unos de otros
+	private static final Set<String> PALABRAS_VACIAS = new HashSet<>(Arrays.asList("a", "al", "con", "de", "del",
+			"e", "el", "en", "la", "las", "lo", "los", "o", "para", "por", "u", "un", "una", "unas", "unos", "y"));
+
+	private Normalizador() {
+	}
+
+	/*
+	 * Método para normalizar un texto.
+	 * 
+	 * Devuelve el texto en minúsculas y sin marcas diacríticas, o una cadena vacía si es null.
+	 */
+	public static String normalizar(String texto) {
+		if (texto == null) {
+			return "";
+		}
+		String descompuesto = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+		return MARCAS.matcher(descompuesto).replaceAll("");
+	}
+
+	/*
+	 * Método para normalizar una frase completa.
+	 * 
+	 * Devuelve todas las palabras normalizadas del texto, incluidas las palabras vacías,
+	 * separadas por un único espacio. Se utiliza para comparar comienzos de texto.
+	 */
+	public static String frase(String texto) {
+		return String.join(" ", SEPARADORES.split(normalizar(texto).trim())).trim();
+	}
+
+	//Indica si una palabra normalizada es una palabra vacía
+	public static boolean esPalabraVacia(String palabra) {
+		return PALABRAS_VACIAS.contains(palabra);
+	}
+
+	/*
+	 * Método para dividir un texto en palabras normalizadas.
+	 * 
+	 * Devuelve las palabras en el orden del texto, incluidas las repetidas,
+	 * sin las palabras vacías (artículos, preposiciones y conjunciones).
+	 */
+	public static List<String> palabras(String texto) {
+		List<String> palabras = new ArrayList<>();
+		for (String palabra : SEPARADORES.split(normalizar(texto))) {
+			if (!palabra.isEmpty() && !PALABRAS_VACIAS.contains(palabra)) {
+				palabras.add(palabra);
+			}
+		}
+		return palabras;
+	}
+}
@@ -0,0 +1,44 @@
+package data_index;
+
+/* Clase de solo lectura con un libro encontrado por IndiceTextoLibros
+* 
+* Contiene los datos del libro guardados en el índice, por lo que no es necesario
+* consultar la base de datos para mostrar los resultados, y la puntuación con la
+* que se han ordenado (cuanto mayor, más relevante).
+* 
+* @author Simon Gil
+*/
+public final class ResultadoBusqueda {
+	//Atributos de la clase
+	private final int idLibro;
+	private final String titulo;
+	private final String autor;
+	private final double puntuacion;
+
+	//Constructor con todos los atributos
+	public ResultadoBusqueda(int idLibro, String titulo, String autor, double puntuacion) {
+		this.idLibro = idLibro;
+		this.titulo = titulo;
+		this.autor = autor;
+		this.puntuacion = puntuacion;
+	}
+
+	//Getters de la clase
+	public int getIdLibro() {
+		return idLibro;
+	}
+	public String getTitulo() {
+		return titulo;
+	}
+	public String getAutor() {
+		return autor;
+	}
+	public double getPuntuacion() {
+		return puntuacion;
+	}
+
+	//Método toString() con el formato de los listados de libros
+	public String toString() {
+		return "ID: " + this.idLibro + " | Título: " + this.titulo + " | Autor: " + this.autor;
+	}
+}
@@ -0,0 +1,32 @@
+package data_index;
+
+/* Clase de solo lectura con una sugerencia del autocompletado
+* 
+* Contiene el ID del libro o del lector sugerido y el texto tal como se muestra
+* (el título del libro, o el nombre y los apellidos del lector).
+* 
+* @author Simon Gil
+*/
+public final class Sugerencia {
+	//Atributos de la clase
+	private final int id;
+	private final String texto;
+
+	//Constructor con todos los atributos
+	public Sugerencia(int id, String texto) {
+		this.id = id;
+		this.texto = texto;
+	}
+
+	//Getters de la clase
+	public int getId() {
+		return id;
+	}
+	public String getTexto() {
+		return texto;
+	}
+
+	public String toString() {
+		return "ID: " + this.id + " | " + this.texto;
+	}
+}
@@ -0,0 +1,56 @@
+package data_model;
+
+import java.time.LocalDate;
+
+/* Clase de solo lectura con los datos de un lector para los listados
+* 
+* Se obtiene directamente de una consulta de proyección (SELECT new), por lo que no es 
+* una entidad gestionada por Hibernate: no entra en el contexto de persistencia ni en la 
+* caché de segundo nivel. Sus atributos no pueden modificarse una vez creada.
+* 
+* @author Simon Gil
+*/
+public final class FilaLector {
+	//Atributos de la clase
+	private final int idLector;
+	private final String nombre;
+	private final String apellidos;
+	private final String email;
+	private final LocalDate fechaNacimiento;
+
+	//Constructor con todos los atributos, utilizado por las consultas de proyección
+	public FilaLector(int idLector, String nombre, String apellidos, String email, LocalDate fechaNacimiento) {
+		this.idLector = idLector;
+		this.nombre = nombre;
+		this.apellidos = apellidos;
+		this.email = email;
+		this.fechaNacimiento = fechaNacimiento;
+	}
+
+	//Getters de la clase
+	public int getIdLector() {
+		return idLector;
+	}
+	public String getNombre() {
+		return nombre;
+	}
+	public String getApellidos() {
+		return apellidos;
+	}
+	public String getEmail() {
+		return email;
+	}
+	public LocalDate getFechaNacimiento() {
+		return fechaNacimiento;
+	}
+
+	//Método toString() con el mismo formato que Lector
+	public String toString() {
+		String fechaDeNacimiento = this.fechaNacimiento == null ? "desconocida" : this.fechaNacimiento.toString();
+		String nombre = this.nombre == null ? "desconocido" : this.nombre;
+		String apellidos = this.apellidos == null ? "desconocidos" : this.apellidos;
+		String email = this.email == null ? "desconocido" : this.email;
+		return "ID: " + this.idLector + " | Nombre: " + nombre + " | Apellidos: " + apellidos +
+				" | E-mail: " + email + " | Fecha de nacimiento: " + fechaDeNacimiento;
+	}
+}
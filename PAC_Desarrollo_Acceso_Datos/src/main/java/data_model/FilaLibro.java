@@ -0,0 +1,51 @@
+package data_model;
+
+/* Clase de solo lectura con los datos de un libro para los listados
+* 
+* Se obtiene directamente de una consulta de proyección (SELECT new), por lo que no es 
+* una entidad gestionada por Hibernate: no entra en el contexto de persistencia ni en la 
+* caché de segundo nivel. Sus atributos no pueden modificarse una vez creada.
+* 
+* @author Simon Gil
+*/
+public final class FilaLibro {
+	//Atributos de la clase
+	private final int idLibro;
+	private final String titulo;
+	private final String autor;
+	private final int anoPublicacion;
+	private final boolean disponible;
+
+	//Constructor con todos los atributos, utilizado por las consultas de proyección
+	public FilaLibro(int idLibro, String titulo, String autor, int anoPublicacion, boolean disponible) {
+		this.idLibro = idLibro;
+		this.titulo = titulo;
+		this.autor = autor;
+		this.anoPublicacion = anoPublicacion;
+		this.disponible = disponible;
+	}
+
+	//Getters de la clase
+	public int getIdLibro() {
+		return idLibro;
+	}
+	public String getTitulo() {
+		return titulo;
+	}
+	public String getAutor() {
+		return autor;
+	}
+	public int getAnoPublicacion() {
+		return anoPublicacion;
+	}
+	public boolean isDisponible() {
+		return disponible;
+	}
+
+	//Método toString() con el mismo formato que Libro
+	public String toString() {
+		String disponible = this.disponible ? "Sí" : "No";
+		return "ID: " + this.idLibro + " | Título: " + this.titulo + " | Autor: " + this.autor + 
+				" | Año de publicación: " + this.anoPublicacion + " | Disponible: " + disponible;
+	}
+}
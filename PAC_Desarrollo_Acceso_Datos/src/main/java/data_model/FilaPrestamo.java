@@ -0,0 +1,77 @@
+package data_model;
+
+import java.time.LocalDate;
+
+/* Clase de solo lectura con los datos de un préstamo para los listados
+* 
+* Además de los datos del préstamo incluye el título del libro y el nombre del lector,
+* que la consulta de proyección obtiene con un JOIN en la misma sentencia. No es una
+* entidad gestionada por Hibernate y sus atributos no pueden modificarse una vez creada.
+* 
+* @author Simon Gil
+*/
+public final class FilaPrestamo {
+	//Atributos de la clase
+	private final int idPrestamo;
+	private final LocalDate fechaPrestamo;
+	private final LocalDate fechaVencimiento;
+	private final LocalDate fechaDevolucion;
+	private final Integer idLibro;
+	private final String tituloLibro;
+	private final Integer idLector;
+	private final String nombreLector;
+	private final String apellidosLector;
+
+	//Constructor con todos los atributos, utilizado por las consultas de proyección
+	public FilaPrestamo(int idPrestamo, LocalDate fechaPrestamo, LocalDate fechaVencimiento, LocalDate fechaDevolucion,
+			Integer idLibro, String tituloLibro, Integer idLector, String nombreLector, String apellidosLector) {
+		this.idPrestamo = idPrestamo;
+		this.fechaPrestamo = fechaPrestamo;
+		this.fechaVencimiento = fechaVencimiento;
+		this.fechaDevolucion = fechaDevolucion;
+		this.idLibro = idLibro;
+		this.tituloLibro = tituloLibro;
+		this.idLector = idLector;
+		this.nombreLector = nombreLector;
+		this.apellidosLector = apellidosLector;
+	}
+
+	//Getters de la clase
+	public int getIdPrestamo() {
+		return idPrestamo;
+	}
+	public LocalDate getFechaPrestamo() {
+		return fechaPrestamo;
+	}
+	public LocalDate getFechaVencimiento() {
+		return fechaVencimiento;
+	}
+	public LocalDate getFechaDevolucion() {
+		return fechaDevolucion;
+	}
+	public Integer getIdLibro() {
+		return idLibro;
+	}
+	public String getTituloLibro() {
+		return tituloLibro;
+	}
+	public Integer getIdLector() {
+		return idLector;
+	}
+	public String getNombreLector() {
+		return nombreLector;
+	}
+	public String getApellidosLector() {
+		return apellidosLector;
+	}
+
+	//Método toString() para mostrar el préstamo por consola junto al título del libro y el nombre del lector
+	public String toString() {
+		String devolucion = this.fechaDevolucion != null ? this.fechaDevolucion.toString() : "No ha sido devuelto";
+		String lector = this.nombreLector == null ? "desconocido"
+				: this.nombreLector + (this.apellidosLector == null ? "" : " " + this.apellidosLector);
+		return "ID: " + this.idPrestamo + " | Fecha de préstamo: " + this.fechaPrestamo + 
+				" | Vence: " + this.fechaVencimiento + " | Fecha de devolución: " + devolucion + " | ID Libro: " + this.idLibro + " (" + this.tituloLibro + ")" +
+				" | ID Lector: " + this.idLector + " (" + lector + ")";
+	}
+}
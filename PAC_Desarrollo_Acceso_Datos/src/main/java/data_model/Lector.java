@@ -17,6 +17,8 @@ public class Lector {
 	private String apellidos;
 	private String email;
 	private LocalDate fechaNacimiento;
+	//Versión del registro para el bloqueo optimista, la gestiona Hibernate
+	private int version;
 	//Constructor vacío
 	public Lector() {}
 	
@@ -51,6 +53,12 @@ public class Lector {
 	public void setFechaNacimiento(LocalDate fechaNacimiento) {
 		this.fechaNacimiento = fechaNacimiento;
 	}
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
 	
 	//Método toString() para mostrar lectores por consola, se comprueba que los valores no sean null para evitar errores en tiempo de ejecución
 	public String toString() {
@@ -15,6 +15,8 @@ public class Libro {
 	private String autor;
 	private int anoPublicacion;
 	private boolean disponible;
+	//Versión del registro para el bloqueo optimista, la gestiona Hibernate
+	private int version;
 	
 	//Constructor vacío
 	public Libro() {
@@ -52,6 +54,12 @@ public class Libro {
 	public void setDisponible(boolean disponible) {
 		this.disponible = disponible;
 	}
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
 	
 	//Método toString() para mostrar información de los libros por consola
 	public String toString() {
@@ -10,16 +10,22 @@ import java.time.LocalDate;
 * @author Simon Gil
 */
 public class Prestamo {
+	//Días que dura un préstamo, desde la fecha de préstamo hasta la fecha de vencimiento
+	public static final int DIAS_PRESTAMO = 15;
 	//Atributos de la clase
 	private int idPrestamo;
 	private LocalDate fechaPrestamo;
+	private LocalDate fechaVencimiento;
 	private LocalDate fechaDevolucion;
 	private Libro libro;
 	private Lector lector;
+	//Versión del registro para el bloqueo optimista, la gestiona Hibernate
+	private int version;
     
 	//Constructor vacío
 	public Prestamo() {
 		this.fechaPrestamo = LocalDate.now();
+		this.fechaVencimiento = this.fechaPrestamo.plusDays(DIAS_PRESTAMO);
 	}
 	
    //Constructor con Libro y Lector como parámetros
@@ -28,6 +34,8 @@ public class Prestamo {
 		this.lector = lector;
 		//La fecha del prestamo será la fecha de creación del objeto
 		this.fechaPrestamo = LocalDate.now();
+		//El libro debe devolverse antes de que pasen DIAS_PRESTAMO días
+		this.fechaVencimiento = this.fechaPrestamo.plusDays(DIAS_PRESTAMO);
 	}
 	
 	//Getters y Setters
@@ -43,6 +51,12 @@ public class Prestamo {
 	public void setFechaPrestamo(LocalDate fechaPrestamo) {
 		this.fechaPrestamo = fechaPrestamo;
 	}
+	public LocalDate getFechaVencimiento() {
+		return fechaVencimiento;
+	}
+	public void setFechaVencimiento(LocalDate fechaVencimiento) {
+		this.fechaVencimiento = fechaVencimiento;
+	}
 	public LocalDate getFechaDevolucion() {
 		return fechaDevolucion;
 	}
@@ -61,12 +75,23 @@ public class Prestamo {
 	public void setLector(Lector lector) {
 		this.lector = lector;
 	}
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
+	
+	//Un préstamo está vencido en una fecha si no se ha devuelto y su fecha de vencimiento es anterior
+	public boolean estaVencido(LocalDate fecha) {
+		return this.fechaDevolucion == null && this.fechaVencimiento != null && this.fechaVencimiento.isBefore(fecha);
+	}
 	
 	//Método toString() para mostrar prestamos por consola
 	public String toString() {
 		//Evaluamos si el libro ha sido devuelto (fechaDevolucion != null). Si ha sido devuelto mostramos fecha, si no, informamos de ello
 		String devolucion = this.fechaDevolucion != null? this.fechaDevolucion.toString() : "No ha sido devuelto";
 		return "ID: " + this.idPrestamo + " | Fecha de préstamo: " + this.fechaPrestamo.toString() + 
-				" | Fecha de devolución: " + devolucion + " | ID Libro: " + this.libro.getIdLibro() + " | ID Lector: " + this.lector.getIdLector();
+				" | Vence: " + this.fechaVencimiento + " | Fecha de devolución: " + devolucion + " | ID Libro: " + this.libro.getIdLibro() + " | ID Lector: " + this.lector.getIdLector();
 	}
 }
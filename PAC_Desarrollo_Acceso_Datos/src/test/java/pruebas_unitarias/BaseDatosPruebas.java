@@ -0,0 +1,50 @@
+package pruebas_unitarias;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import data_access_object.FactoriaSesiones;
+import data_access_object.MetricasDAO;
+
+/**
+ * Base de datos común de las pruebas unitarias
+ *
+ * Cada clase de pruebas crea una única SessionFactory antes de su primera prueba (@BeforeClass)
+ * y la cierra después de la última, en lugar de crear una por prueba. Para que las pruebas sigan
+ * siendo independientes, antes de cada una se vacían las tablas, las cachés de Hibernate, las
+ * estadísticas y las métricas de los DAO.
+ *
+ * La base de datos es la del perfil indicado en la propiedad de sistema "biblioteca.perfil"
+ * (ver FactoriaSesiones): Maven ejecuta las pruebas con el perfil "h2", en memoria, salvo
+ * con el perfil de Maven "mysql".
+ *
+ * @author Simon Gil
+ */
+public class BaseDatosPruebas {
+    private BaseDatosPruebas() {
+    }
+
+    public static SessionFactory crearSessionFactory() {
+        return FactoriaSesiones.crearSessionFactory();
+    }
+
+    /*
+     * Método para dejar la base de datos como recién creada.
+     *
+     * Los préstamos se borran antes que los libros y los lectores por las claves ajenas.
+     * Las secuencias de los IDs no se reinician.
+     */
+    public static void vaciar(SessionFactory sessionFactory) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("DELETE FROM Prestamo").executeUpdate();
+            session.createQuery("DELETE FROM Libro").executeUpdate();
+            session.createQuery("DELETE FROM Lector").executeUpdate();
+            tx.commit();
+        }
+        sessionFactory.getCache().evictAllRegions();
+        sessionFactory.getStatistics().clear();
+        MetricasDAO.de(sessionFactory).reiniciar();
+    }
+}
@@ -1,31 +1,54 @@
 package pruebas_unitarias;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import data_access_object.EstadisticasCache;
 import data_access_object.LectorDAO;
+import data_access_object.LibroDAO;
+import data_access_object.PrestamoDAO;
+import data_index.Autocompletado;
+import data_index.Sugerencia;
 import data_model.Lector;
+import data_model.Libro;
 
 public class LectorDAOTest {
-    private SessionFactory sessionFactory;
+    private static SessionFactory sessionFactory;
     private Session session;
     private LectorDAO lectorDAO;
 
+    @BeforeClass
+    public static void crearSessionFactory() {
+        // Una única SessionFactory para todas las pruebas de la clase
+        sessionFactory = BaseDatosPruebas.crearSessionFactory();
+    }
+
+    @AfterClass
+    public static void cerrarSessionFactory() {
+        sessionFactory.close();
+    }
+
     @Before
     public void setUp() throws Exception {
-        // Configurar la sesión de Hibernate
-        Configuration configuration = new Configuration().configure();
-        sessionFactory = configuration.buildSessionFactory();
+        // Partimos de una base de datos vacía y abrimos la sesión de Hibernate
+        BaseDatosPruebas.vaciar(sessionFactory);
         session = sessionFactory.openSession();
 
         // Crear el objeto LectorDAO con la sesión de prueba
@@ -36,7 +59,6 @@ public class LectorDAOTest {
     public void tearDown() throws Exception {
         // Cerrar la sesión de Hibernate
         session.close();
-        sessionFactory.close();
     }
 
     @Test
@@ -117,4 +139,157 @@ public class LectorDAOTest {
         // Verificar que se hayan obtenido todos los lectores esperados
         assertEquals(numLectoresObtenidosAntes + 3, lectores.size());
     }
+
+    @Test
+    public void testInsertarLectores() {
+    	//Comprobamos el numero de lectores antes de la inserción
+    	int numLectoresAntes = lectorDAO.obtenerLectores().size();
+    	//Insertamos una lista de lectores en una sola llamada
+    	List<Lector> lectores = new ArrayList<>();
+    	for (int i = 0; i < 120; i++) {
+    		Lector lector = new Lector();
+    		lector.setNombre("Lector " + i);
+    		lectores.add(lector);
+    	}
+    	List<Integer> ids = lectorDAO.insertarLectores(lectores);
+    	//Verificamos que se devuelve un ID por lector y que todos se han insertado
+    	assertEquals(120, ids.size());
+    	assertEquals(numLectoresAntes + 120, lectorDAO.obtenerLectores().size());
+    	assertEquals("Lector 119", lectorDAO.obtenerLector(ids.get(119)).getNombre());
+    }
+
+    @Test
+    public void testRecorrerLectores() {
+    	//Insertamos algunos lectores y comprobamos que el recorrido visita todos los de la tabla
+    	Lector lector1 = new Lector();
+    	lector1.setNombre("Lector 1");
+    	lectorDAO.insertarLector(lector1);
+    	Lector lector2 = new Lector();
+    	lector2.setNombre("Lector 2");
+    	lectorDAO.insertarLector(lector2);
+    	List<String> nombres = new ArrayList<>();
+    	long recorridos = lectorDAO.recorrerLectores(l -> nombres.add(l.getNombre()));
+    	assertEquals(lectorDAO.obtenerLectores().size(), recorridos);
+    	assertTrue(nombres.contains("Lector 1") && nombres.contains("Lector 2"));
+    }
+    @Test
+    public void testContarYExistenLectores() {
+    	assertEquals(0, lectorDAO.contarLectores());
+    	assertFalse(lectorDAO.existenLectores());
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	assertEquals(1, lectorDAO.contarLectores());
+    	assertTrue(lectorDAO.existenLectores());
+    	assertTrue(lectorDAO.existeLector(idLector));
+    	assertFalse(lectorDAO.existeLector(idLector + 1000));
+    }
+    @Test
+    public void testBorrarLectorConPrestamos() {
+    	LibroDAO libroDAO = new LibroDAO(session);
+    	PrestamoDAO prestamoDAO = new PrestamoDAO(session);
+    	Statistics estadisticas = sessionFactory.getStatistics();
+    	//El número de sentencias no depende del número de préstamos del lector
+    	long[] sentencias = new long[2];
+    	int[] numPrestamos = {2, 40};
+    	for (int i = 0; i < numPrestamos.length; i++) {
+    		Lector lector = new Lector();
+    		lector.setNombre("Lector " + i);
+    		int idLector = lectorDAO.insertarLector(lector);
+    		for (int j = 0; j < numPrestamos[i]; j++) {
+    			Libro libro = new Libro();
+    			libro.setTitulo("Libro " + i + "-" + j);
+    			libro.setDisponible(true);
+    			int idLibro = libroDAO.insertarLibro(libro);
+    			prestamoDAO.prestar(idLibro, idLector);
+    		}
+    		//La mitad de los préstamos ya se han devuelto
+    		prestamoDAO.devolver(prestamoDAO.obtenerHistorialPrestamos(idLector).stream()
+    				.limit(numPrestamos[i] / 2).map(p -> p.getLibro().getIdLibro()).collect(Collectors.toList()), null);
+    		estadisticas.clear();
+    		lectorDAO.borrarLector(idLector);
+    		sentencias[i] = estadisticas.getPrepareStatementCount();
+    		assertNull(lectorDAO.obtenerLector(idLector));
+    		assertFalse(prestamoDAO.existenPrestamosPendientesLector(idLector));
+    		assertTrue(prestamoDAO.obtenerHistorialPrestamos(idLector).isEmpty());
+    	}
+    	assertEquals(sentencias[0], sentencias[1]);
+    	//Los libros que tenía prestados vuelven a estar disponibles
+    	assertFalse(prestamoDAO.existenPrestamos());
+    	assertEquals(libroDAO.contarLibros(), libroDAO.contarLibrosDisponibles());
+    }
+    @Test
+    public void testBorrarLectorConservaCache() {
+    	Lector borrado = new Lector();
+    	borrado.setNombre("Borrado");
+    	int idBorrado = lectorDAO.insertarLector(borrado);
+    	Lector otro = new Lector();
+    	otro.setNombre("Otro");
+    	int idOtro = lectorDAO.insertarLector(otro);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro");
+    	libro.setDisponible(true);
+    	LibroDAO libroDAOFactoria = new LibroDAO(sessionFactory);
+    	int idLibro = libroDAOFactoria.insertarLibro(libro);
+    	Libro libroOtro = new Libro();
+    	libroOtro.setTitulo("Libro otro");
+    	libroOtro.setDisponible(true);
+    	int idLibroOtro = libroDAOFactoria.insertarLibro(libroOtro);
+    	new PrestamoDAO(sessionFactory).prestar(idLibro, idBorrado);
+    	//Las lecturas guardan los lectores y los libros en la caché de segundo nivel
+    	LectorDAO lectorDAOFactoria = new LectorDAO(sessionFactory);
+    	lectorDAOFactoria.obtenerLector(idBorrado);
+    	lectorDAOFactoria.obtenerLector(idOtro);
+    	libroDAOFactoria.obtenerLibro(idLibro);
+    	libroDAOFactoria.obtenerLibro(idLibroOtro);
+    	lectorDAOFactoria.borrarLector(idBorrado);
+    	//El borrado solo invalida las entradas del lector y de su libro: el resto se siguen leyendo de la caché
+    	EstadisticasCache estadisticasCache = new EstadisticasCache(sessionFactory);
+    	long aciertosLector = estadisticasCache.getAciertos(EstadisticasCache.REGION_LECTOR);
+    	long aciertosLibro = estadisticasCache.getAciertos(EstadisticasCache.REGION_LIBRO);
+    	assertNotNull(lectorDAOFactoria.obtenerLector(idOtro));
+    	assertTrue(libroDAOFactoria.obtenerLibro(idLibroOtro).isDisponible());
+    	assertEquals(aciertosLector + 1, estadisticasCache.getAciertos(EstadisticasCache.REGION_LECTOR));
+    	assertEquals(aciertosLibro + 1, estadisticasCache.getAciertos(EstadisticasCache.REGION_LIBRO));
+    	assertNull(lectorDAOFactoria.obtenerLector(idBorrado));
+    	assertTrue(libroDAOFactoria.obtenerLibro(idLibro).isDisponible());
+    }
+    @Test
+    public void testAutocompletarLectores() {
+    	Lector jose = new Lector();
+    	jose.setNombre("José");
+    	jose.setApellidos("García López");
+    	int idJose = lectorDAO.insertarLector(jose);
+    	Lector josefa = new Lector();
+    	josefa.setNombre("Josefa");
+    	josefa.setApellidos("Martín");
+    	int idJosefa = lectorDAO.insertarLector(josefa);
+    	Lector ana = new Lector();
+    	ana.setNombre("Ana");
+    	ana.setApellidos("Garcés");
+    	int idAna = lectorDAO.insertarLector(ana);
+    	Autocompletado autocompletado = Autocompletado.construir(sessionFactory, 1024 * 1024);
+    	assertEquals(3, autocompletado.getLectores().getNumElementos());
+    	//Por el nombre o por cualquiera de los apellidos, sin tildes ni mayúsculas y en orden alfabético
+    	assertEquals(Arrays.asList(idJose, idJosefa), ids(autocompletado.sugerirLectores("JOS", 10)));
+    	assertEquals(Arrays.asList(idAna, idJose), ids(autocompletado.sugerirLectores("garc", 10)));
+    	assertEquals(Arrays.asList(idJose), ids(autocompletado.sugerirLectores("lopez", 10)));
+    	assertEquals(1, autocompletado.sugerirLectores("jos", 1).size());
+    	assertTrue(autocompletado.sugerirLectores("", 10).isEmpty());
+    	//Los cambios de LectorDAO se reflejan en el índice
+    	josefa.setApellidos("Ruiz");
+    	lectorDAO.actualizarLector(josefa);
+    	assertTrue(autocompletado.sugerirLectores("mart", 10).isEmpty());
+    	assertEquals("Josefa Ruiz", autocompletado.sugerirLectores("ruiz", 10).get(0).getTexto());
+    	lectorDAO.borrarLector(idAna);
+    	assertEquals(Arrays.asList(idJose), ids(autocompletado.sugerirLectores("garc", 10)));
+    	Lector nuevo = new Lector();
+    	nuevo.setNombre("Gara");
+    	int idNuevo = lectorDAO.insertarLector(nuevo);
+    	assertEquals(Arrays.asList(idNuevo, idJose), ids(autocompletado.sugerirLectores("gar", 10)));
+    }
+
+    private static List<Integer> ids(List<Sugerencia> sugerencias) {
+    	return sugerencias.stream().map(Sugerencia::getId).collect(Collectors.toList());
+    }
 }
\ No newline at end of file
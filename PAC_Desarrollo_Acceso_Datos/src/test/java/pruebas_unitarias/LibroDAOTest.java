@@ -1,38 +1,88 @@
 package pruebas_unitarias;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.stream.Collectors;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.Configuration;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.stat.Statistics;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import data_access_object.ConflictoConcurrenciaException;
+import data_access_object.EjecutorAsincrono;
+import data_access_object.EstadisticasCache;
+import data_access_object.FactoriaSesiones;
+import data_access_object.HistogramaLatencias;
 import data_access_object.LectorDAO;
 import data_access_object.LibroDAO;
+import data_access_object.LoteInsertado;
+import data_access_object.MetricasDAO;
+import data_access_object.MetricasPool;
 import data_access_object.PrestamoDAO;
+import data_access_object.ResultadoPrestamo;
+import app.BibliotecaService;
+import data_index.Autocompletado;
+import data_index.IndicePrefijos;
+import data_index.IndiceTextoLibros;
+import data_index.MapaDisponibilidad;
+import data_index.ResultadoBusqueda;
+import data_index.Sugerencia;
+import data_model.FilaLibro;
 import data_model.Lector;
 import data_model.Libro;
 import data_model.Prestamo;
 
 public class LibroDAOTest {
-    private SessionFactory sessionFactory;
+    private static SessionFactory sessionFactory;
     private Session session;
     private LibroDAO libroDAO;
 
+    @BeforeClass
+    public static void crearSessionFactory() {
+        // Una única SessionFactory para todas las pruebas de la clase
+        sessionFactory = BaseDatosPruebas.crearSessionFactory();
+    }
+
+    @AfterClass
+    public static void cerrarSessionFactory() {
+        sessionFactory.close();
+    }
+
     @Before
     public void setUp() throws Exception {
-        // Configurar la sesión de Hibernate
-        Configuration configuration = new Configuration().configure();
-        sessionFactory = configuration.buildSessionFactory();
+        // Partimos de una base de datos vacía y abrimos la sesión de Hibernate
+        BaseDatosPruebas.vaciar(sessionFactory);
         session = sessionFactory.openSession();
 
         // Crear el objeto LibroDAO con la sesión de prueba
@@ -43,7 +93,6 @@ public class LibroDAOTest {
     public void tearDown() throws Exception {
         // Cerrar la sesión de Hibernate
         session.close();
-        sessionFactory.close();
     }
 
     @Test
@@ -188,4 +237,663 @@ public class LibroDAOTest {
         assertTrue(libroDAO.librosActualmentePrestadosLector(idLector).size() == 2);
 
     }
+    @Test
+    public void testInsertarLibros() {
+    	//Activamos las estadísticas para contar las sentencias JDBC preparadas
+    	Statistics estadisticas = sessionFactory.getStatistics();
+    	estadisticas.setStatisticsEnabled(true);
+    	int numLibros = libroDAO.getTamanoLote() * 4;
+    	//Insertamos los libros uno a uno y contamos las sentencias
+    	estadisticas.clear();
+    	for (int i = 0; i < numLibros; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro individual " + i);
+    		libroDAO.insertarLibro(libro);
+    	}
+    	long sentenciasIndividuales = estadisticas.getPrepareStatementCount();
+    	//Insertamos el mismo número de libros con la inserción masiva
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < numLibros; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro en lote " + i);
+    		libros.add(libro);
+    	}
+    	estadisticas.clear();
+    	List<Integer> ids = libroDAO.insertarLibros(libros);
+    	long sentenciasLote = estadisticas.getPrepareStatementCount();
+    	//Se devuelven todos los IDs y los libros pueden obtenerse
+    	assertEquals(numLibros, ids.size());
+    	assertEquals("Libro en lote 0", libroDAO.obtenerLibro(ids.get(0)).getTitulo());
+    	//Por cada lote solo se prepara el INSERT agrupado y, como mucho, la reserva de un bloque
+    	//de IDs de la secuencia, en lugar de una sentencia por libro
+    	int numLotes = numLibros / libroDAO.getTamanoLote();
+    	assertTrue(sentenciasIndividuales >= numLibros);
+    	assertTrue(sentenciasLote <= 2 * numLotes + 1);
+    }
+    @Test
+    public void testInsertarLibrosInformeLotes() {
+    	//Insertamos dos lotes completos y uno incompleto
+    	int tamanoLote = libroDAO.getTamanoLote();
+    	int numLibros = 2 * tamanoLote + 7;
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < numLibros; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro informado " + i);
+    		libros.add(libro);
+    	}
+    	List<LoteInsertado> lotes = new ArrayList<>();
+    	List<Integer> ids = libroDAO.insertarLibros(libros, lotes::add);
+    	assertEquals(numLibros, ids.size());
+    	//Se informa de cada lote en orden, con sus registros y su duración
+    	assertEquals(3, lotes.size());
+    	for (int i = 0; i < lotes.size(); i++) {
+    		assertEquals(i + 1, lotes.get(i).getNumLote());
+    		assertTrue(lotes.get(i).getDuracionNanos() > 0);
+    		assertTrue(lotes.get(i).getRegistrosPorSegundo() > 0);
+    	}
+    	assertEquals(tamanoLote, lotes.get(0).getRegistros());
+    	assertEquals(tamanoLote, lotes.get(1).getRegistros());
+    	assertEquals(7, lotes.get(2).getRegistros());
+    }
+    @Test
+    public void testRecorrerLibros() {
+    	//Insertamos más libros que el tamaño de fetch para recorrer varios bloques
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 250; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libros.add(libro);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	//Recorremos la tabla y comprobamos que se visitan todos los libros en orden de ID
+    	List<Integer> ids = new ArrayList<>();
+    	long recorridos = libroDAO.recorrerLibros(l -> ids.add(l.getIdLibro()));
+    	assertEquals(libroDAO.obtenerLibros().size(), recorridos);
+    	assertEquals(recorridos, ids.size());
+    	for (int i = 1; i < ids.size(); i++) {
+    		assertTrue(ids.get(i - 1) < ids.get(i));
+    	}
+    }
+    @Test
+    public void testObtenerLibrosPaginados() {
+    	//Insertamos 25 libros y los leemos en páginas de 10 a partir del último ID recibido
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 25; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libros.add(libro);
+    	}
+    	List<Integer> idsInsertados = libroDAO.insertarLibros(libros);
+    	int despuesDeId = idsInsertados.get(0) - 1;
+    	int leidos = 0;
+    	List<Libro> pagina;
+    	do {
+    		pagina = libroDAO.obtenerLibros(despuesDeId, 10);
+    		assertTrue(pagina.size() <= 10);
+    		leidos += pagina.size();
+    		if (!pagina.isEmpty()) {
+    			despuesDeId = pagina.get(pagina.size() - 1).getIdLibro();
+    		}
+    	} while (!pagina.isEmpty());
+    	//Se han leído todos los libros insertados, sin repetir ninguno
+    	assertEquals(25, leidos);
+    }
+    @Test
+    public void testCacheSegundoNivel() {
+    	EstadisticasCache estadisticasCache = new EstadisticasCache(sessionFactory);
+    	//Insertamos un libro y vaciamos la sesión para que no pueda obtenerse de ella
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro en caché");
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	session.clear();
+    	long aciertosAntes = estadisticasCache.getAciertos(EstadisticasCache.REGION_LIBRO);
+    	long cargasAntes = sessionFactory.getStatistics().getEntityLoadCount();
+    	//Al obtener el libro debe encontrarse en la caché sin cargarlo de la base de datos
+    	assertEquals("Libro en caché", libroDAO.obtenerLibro(idLibro).getTitulo());
+    	assertEquals(aciertosAntes + 1, estadisticasCache.getAciertos(EstadisticasCache.REGION_LIBRO));
+    	assertEquals(cargasAntes, sessionFactory.getStatistics().getEntityLoadCount());
+    	assertTrue(estadisticasCache.getRatioAciertos(EstadisticasCache.REGION_LIBRO) > 0);
+    }
+    @Test
+    public void testLibrosDisponiblesSinConsultas() {
+    	Statistics estadisticas = sessionFactory.getStatistics();
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 30; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro disponible " + i);
+    		libro.setDisponible(i % 3 != 0);
+    		libros.add(libro);
+    	}
+    	List<Integer> ids = libroDAO.insertarLibros(libros);
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = new LectorDAO(session).insertarLector(lector);
+    	MapaDisponibilidad.de(sessionFactory).reconstruir(sessionFactory);
+    	BibliotecaService servicio = new BibliotecaService(sessionFactory);
+    	//El primer listado lee de la base de datos los libros que no están en la caché
+    	List<Libro> disponibles = servicio.librosDisponibles();
+    	assertEquals(20, disponibles.size());
+    	//Un segundo listado sin cambios no prepara ninguna sentencia
+    	estadisticas.clear();
+    	assertEquals(20, servicio.librosDisponibles().size());
+    	assertEquals(0, estadisticas.getPrepareStatementCount());
+    	//Un préstamo y una devolución cambian el listado siguiente
+    	PrestamoDAO prestamoDAO = new PrestamoDAO(sessionFactory);
+    	int idPrestado = ids.get(1);
+    	assertEquals(ResultadoPrestamo.REALIZADO, prestamoDAO.prestar(idPrestado, idLector));
+    	disponibles = servicio.librosDisponibles();
+    	assertEquals(19, disponibles.size());
+    	assertTrue(disponibles.stream().noneMatch(l -> l.getIdLibro() == idPrestado));
+    	prestamoDAO.devolver(Arrays.asList(idPrestado), LocalDate.now());
+    	disponibles = servicio.librosDisponibles();
+    	assertEquals(20, disponibles.size());
+    	assertTrue(disponibles.stream().anyMatch(l -> l.getIdLibro() == idPrestado && l.isDisponible()));
+    	//Los libros se devuelven en orden de ID
+    	for (int i = 1; i < disponibles.size(); i++) {
+    		assertTrue(disponibles.get(i - 1).getIdLibro() < disponibles.get(i).getIdLibro());
+    	}
+    }
+    @Test
+    public void testMetricasPool() {
+    	//Realizamos una consulta para que se pida al menos una conexión al pool
+    	libroDAO.obtenerLibros();
+    	MetricasPool.Metricas metricas = MetricasPool.de(sessionFactory);
+    	assertNotNull(metricas);
+    	assertTrue(metricas.getConexionesObtenidas() > 0);
+    	assertTrue(metricas.getConexionesTotales() >= 1);
+    	assertTrue(metricas.getEsperaMaximaMillis() >= metricas.getEsperaMediaMillis());
+    }
+    @Test
+    public void testModoSessionFactoryConcurrente() throws Exception {
+    	//Un único DAO creado con la SessionFactory, compartido por varios hilos
+    	LibroDAO libroDAOCompartido = new LibroDAO(sessionFactory);
+    	ExecutorService hilos = Executors.newFixedThreadPool(8);
+    	List<Future<Boolean>> resultados = new ArrayList<>();
+    	for (int i = 0; i < 200; i++) {
+    		String titulo = "Libro concurrente " + i;
+    		resultados.add(hilos.submit(() -> {
+    			Libro libro = new Libro();
+    			libro.setTitulo(titulo);
+    			libro.setDisponible(true);
+    			int id = libroDAOCompartido.insertarLibro(libro);
+    			Libro obtenido = libroDAOCompartido.obtenerLibro(id);
+    			return id > 0 && obtenido != null && titulo.equals(obtenido.getTitulo());
+    		}));
+    	}
+    	for (Future<Boolean> resultado : resultados) {
+    		assertTrue(resultado.get());
+    	}
+    	hilos.shutdown();
+    	assertEquals(200, libroDAOCompartido.obtenerLibros().stream()
+    			.filter(l -> l.getTitulo() != null && l.getTitulo().startsWith("Libro concurrente ")).count());
+    }
+    @Test
+    public void testOperacionesAsincronas() {
+    	LibroDAO libroDAOAsincrono = new LibroDAO(sessionFactory);
+    	List<CompletableFuture<Integer>> inserciones = new ArrayList<>();
+    	for (int i = 0; i < 100; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro asíncrono " + i);
+    		inserciones.add(libroDAOAsincrono.insertarLibroAsincrono(libro));
+    	}
+    	CompletableFuture.allOf(inserciones.toArray(new CompletableFuture[0])).join();
+    	List<Integer> ids = inserciones.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    	assertTrue(ids.stream().allMatch(id -> id > 0));
+    	assertEquals(100, ids.stream().distinct().count());
+    	Libro obtenido = libroDAOAsincrono.obtenerLibroAsincrono(ids.get(42)).join();
+    	assertEquals("Libro asíncrono 42", obtenido.getTitulo());
+    	//Con una Session compartida la operación se ejecuta en el mismo hilo y el resultado ya está disponible
+    	CompletableFuture<Libro> sincrono = libroDAO.obtenerLibroAsincrono(ids.get(0));
+    	assertTrue(sincrono.isDone());
+    	assertEquals("Libro asíncrono 0", sincrono.join().getTitulo());
+    }
+    @Test
+    public void testLimiteEjecutorAsincrono() {
+    	EjecutorAsincrono ejecutor = EjecutorAsincrono.de(sessionFactory);
+    	//El límite es el tamaño máximo del pool de conexiones configurado
+    	assertEquals(Integer.parseInt(sessionFactory.getProperties().get("hibernate.hikari.maximumPoolSize").toString()),
+    			ejecutor.getLimite());
+    	AtomicInteger enCurso = new AtomicInteger();
+    	LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+    	List<CompletableFuture<Void>> tareas = new ArrayList<>();
+    	for (int i = 0; i < 5 * ejecutor.getLimite(); i++) {
+    		tareas.add(ejecutor.ejecutar(() -> {
+    			maximo.accumulate(enCurso.incrementAndGet());
+    			try {
+    				Thread.sleep(10);
+    			} catch (InterruptedException e) {
+    				Thread.currentThread().interrupt();
+    			}
+    			enCurso.decrementAndGet();
+    			return null;
+    		}));
+    	}
+    	CompletableFuture.allOf(tareas.toArray(new CompletableFuture[0])).join();
+    	assertTrue(maximo.get() <= ejecutor.getLimite());
+    	assertEquals(0, ejecutor.getTareasEnCurso());
+    }
+    @Test
+    public void testCerrarSessionFactoryLiberaRecursos() throws Exception {
+    	//SessionFactory propia, con otra base de datos en memoria y otro pool, para poder cerrarla.
+    	//No utiliza la caché de segundo nivel, cuyo CacheManager comparten todas las SessionFactory
+    	Properties propiedades = new Properties();
+    	propiedades.setProperty("hibernate.cache.use_second_level_cache", "false");
+    	propiedades.setProperty("hibernate.connection.url", "jdbc:h2:mem:cierre;MODE=MySQL;DATABASE_TO_LOWER=TRUE;INIT=CREATE SCHEMA IF NOT EXISTS biblioteca");
+    	propiedades.setProperty("hibernate.hikari.poolName", "cierre");
+    	SessionFactory propia = FactoriaSesiones.crearSessionFactory(propiedades);
+    	EjecutorAsincrono ejecutor = EjecutorAsincrono.de(propia);
+    	assertEquals(1, (int) ejecutor.ejecutar(() -> 1).join());
+    	MetricasDAO.de(propia);
+    	MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+    	ObjectName nombreMetricas = new ObjectName("biblioteca:type=MetricasDAO,name=\"cierre\"");
+    	ObjectName nombreHibernate = new ObjectName("biblioteca:type=EstadisticasHibernate,name=\"cierre\"");
+    	assertTrue(servidor.isRegistered(nombreMetricas));
+    	assertTrue(servidor.isRegistered(nombreHibernate));
+    	propia.close();
+    	//Al cerrar la SessionFactory se eliminan sus MBeans y los de la SessionFactory de las pruebas siguen registrados
+    	assertFalse(servidor.isRegistered(nombreMetricas));
+    	assertFalse(servidor.isRegistered(nombreHibernate));
+    	assertTrue(servidor.isRegistered(new ObjectName("biblioteca:type=MetricasDAO,name=\"biblioteca\"")));
+    	//Al cerrar la SessionFactory el ejecutor deja de aceptar tareas
+    	try {
+    		ejecutor.ejecutar(() -> 2);
+    		fail("El ejecutor de una SessionFactory cerrada no debe aceptar tareas");
+    	} catch (RejectedExecutionException e) {
+    		//Correcto
+    	}
+    }
+    @Test
+    public void testLecturaSoloLectura() {
+    	Libro libro = new Libro();
+    	libro.setTitulo("Título original");
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	session.clear();
+    	Statistics estadisticas = sessionFactory.getStatistics();
+    	long flushesAntes = estadisticas.getFlushCount();
+    	Libro obtenido = libroDAO.obtenerLibro(idLibro);
+    	libroDAO.obtenerLibros();
+    	//Las entidades leídas son de solo lectura y el commit de la lectura no hace flush
+    	assertTrue(session.isReadOnly(obtenido));
+    	assertEquals(flushesAntes, estadisticas.getFlushCount());
+    	//Una entidad leída como de solo lectura puede modificarse con actualizarLibro
+    	obtenido.setTitulo("Título modificado");
+    	libroDAO.actualizarLibro(obtenido);
+    	try (Session otraSesion = sessionFactory.openSession()) {
+    		assertEquals("Título modificado", otraSesion.get(Libro.class, idLibro).getTitulo());
+    	}
+    }
+    @Test
+    public void testObtenerFilasLibros() {
+    	Libro libro = new Libro();
+    	libro.setTitulo("Rayuela");
+    	libro.setAutor("Julio Cortázar");
+    	libro.setAnoPublicacion(1963);
+    	libro.setDisponible(true);
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	List<FilaLibro> filas = libroDAO.obtenerFilasLibros(idLibro - 1, 10);
+    	assertEquals(1, filas.size());
+    	//La fila tiene los mismos datos y se muestra igual que la entidad
+    	assertEquals(libro.toString(), filas.get(0).toString());
+    	List<FilaLibro> recorridas = new ArrayList<>();
+    	assertEquals(1, libroDAO.recorrerFilasLibros(recorridas::add));
+    	assertEquals(idLibro, recorridas.get(0).getIdLibro());
+    	//El recorrido de los disponibles no incluye los libros prestados
+    	Libro prestado = new Libro();
+    	prestado.setTitulo("Prestado");
+    	prestado.setDisponible(false);
+    	libroDAO.insertarLibro(prestado);
+    	List<FilaLibro> disponibles = new ArrayList<>();
+    	assertEquals(1, libroDAO.recorrerFilasLibrosDisponibles(disponibles::add));
+    	assertEquals(idLibro, disponibles.get(0).getIdLibro());
+    }
+    @Test
+    public void testContarYExistenLibros() {
+    	assertEquals(0, libroDAO.contarLibros());
+    	assertFalse(libroDAO.existenLibros());
+    	Libro disponible = new Libro();
+    	disponible.setTitulo("Disponible");
+    	disponible.setDisponible(true);
+    	int idLibro = libroDAO.insertarLibro(disponible);
+    	Libro prestado = new Libro();
+    	prestado.setTitulo("Prestado");
+    	libroDAO.insertarLibro(prestado);
+    	assertEquals(2, libroDAO.contarLibros());
+    	assertEquals(1, libroDAO.contarLibrosDisponibles());
+    	assertTrue(libroDAO.existenLibros());
+    	assertTrue(libroDAO.existeLibro(idLibro));
+    	assertFalse(libroDAO.existeLibro(idLibro + 1000));
+    }
+    @Test
+    public void testConflictoVersionLibro() {
+    	Libro libro = new Libro();
+    	libro.setTitulo("Original");
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	//Dos copias del mismo libro leídas en sesiones distintas, con la misma versión
+    	LibroDAO libroDAOSesiones = new LibroDAO(sessionFactory);
+    	Libro copia1 = libroDAOSesiones.obtenerLibro(idLibro);
+    	Libro copia2 = libroDAOSesiones.obtenerLibro(idLibro);
+    	copia1.setTitulo("Primera modificación");
+    	libroDAOSesiones.actualizarLibro(copia1);
+    	assertEquals(copia2.getVersion() + 1, copia1.getVersion());
+    	//La segunda copia ha quedado obsoleta: su actualización no debe sobrescribir la primera
+    	copia2.setTitulo("Segunda modificación");
+    	try {
+    		libroDAOSesiones.actualizarLibro(copia2);
+    		fail("Se esperaba un conflicto de versión");
+    	} catch (ConflictoConcurrenciaException e) {
+    		assertTrue(e.isReintentable());
+    	}
+    	assertEquals("Primera modificación", libroDAOSesiones.obtenerLibro(idLibro).getTitulo());
+    }
+    @Test
+    public void testActualizacionesConcurrentesSinPerdidas() throws Exception {
+    	Libro libro = new Libro();
+    	libro.setTitulo("Contador");
+    	libro.setAnoPublicacion(0);
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	LibroDAO libroDAOCompartido = new LibroDAO(sessionFactory);
+    	AtomicInteger conflictos = new AtomicInteger();
+    	int incrementos = 200;
+    	ExecutorService hilos = Executors.newFixedThreadPool(8);
+    	List<Future<?>> resultados = new ArrayList<>();
+    	for (int i = 0; i < incrementos; i++) {
+    		//Lectura, modificación y escritura, repitiendo la operación si otro hilo se ha adelantado
+    		resultados.add(hilos.submit(() -> {
+    			while (true) {
+    				Libro actual = libroDAOCompartido.obtenerLibro(idLibro);
+    				actual.setAnoPublicacion(actual.getAnoPublicacion() + 1);
+    				try {
+    					libroDAOCompartido.actualizarLibro(actual);
+    					return;
+    				} catch (ConflictoConcurrenciaException e) {
+    					conflictos.incrementAndGet();
+    				}
+    			}
+    		}));
+    	}
+    	for (Future<?> resultado : resultados) {
+    		resultado.get();
+    	}
+    	hilos.shutdown();
+    	//Ningún incremento se ha perdido aunque haya habido conflictos
+    	Libro finalLibro = libroDAOCompartido.obtenerLibro(idLibro);
+    	assertEquals(incrementos, finalLibro.getAnoPublicacion());
+    	assertEquals(incrementos, finalLibro.getVersion());
+    	System.out.println("Conflictos resueltos con reintento: " + conflictos.get());
+    }
+    @Test
+    public void testBorrarLibroConPrestamos() {
+    	LectorDAO lectorDAO = new LectorDAO(session);
+    	PrestamoDAO prestamoDAO = new PrestamoDAO(session);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro con préstamos");
+    	libro.setDisponible(true);
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	Libro otro = new Libro();
+    	otro.setTitulo("Otro libro");
+    	otro.setDisponible(true);
+    	int idOtro = libroDAO.insertarLibro(otro);
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	//Varios préstamos ya devueltos y uno pendiente del libro, y uno de otro libro
+    	for (int i = 0; i < 5; i++) {
+    		prestamoDAO.prestar(idLibro, idLector);
+    		prestamoDAO.devolver(Arrays.asList(idLibro), null);
+    	}
+    	prestamoDAO.prestar(idLibro, idLector);
+    	prestamoDAO.prestar(idOtro, idLector);
+    	libroDAO.borrarLibro(idLibro);
+    	assertNull(libroDAO.obtenerLibro(idLibro));
+    	//No quedan préstamos huérfanos y los del resto de libros se conservan
+    	assertEquals(1, prestamoDAO.contarPrestamos());
+    	assertTrue(prestamoDAO.existePrestamoPendiente(idOtro, idLector));
+    }
+    @Test
+    public void testBuscarLibros() {
+    	Libro cronica = new Libro();
+    	cronica.setTitulo("Crónica de una muerte anunciada");
+    	cronica.setAutor("Gabriel García Márquez");
+    	int idCronica = libroDAO.insertarLibro(cronica);
+    	Libro ensayo = new Libro();
+    	ensayo.setTitulo("Márquez y su tiempo");
+    	ensayo.setAutor("Otro Autor");
+    	int idEnsayo = libroDAO.insertarLibro(ensayo);
+    	//El índice se carga con los libros que ya están en la base de datos
+    	IndiceTextoLibros indice = IndiceTextoLibros.construir(sessionFactory);
+    	assertEquals(2, indice.getNumLibros());
+    	//Sin tener en cuenta mayúsculas ni tildes, y con la palabra del título antes que la del autor
+    	List<ResultadoBusqueda> resultados = indice.buscar("MARQUEZ", 10);
+    	assertEquals(Arrays.asList(idEnsayo, idCronica),
+    			resultados.stream().map(ResultadoBusqueda::getIdLibro).collect(Collectors.toList()));
+    	assertEquals(1, indice.buscar("garcia cronica", 10).size());
+    	assertTrue(indice.buscar("garcia tiempo", 10).isEmpty());
+    	assertTrue(indice.buscar("de la y", 10).isEmpty());
+    	assertEquals(1, indice.buscar("marquez", 1).size());
+    	//Las inserciones, modificaciones y borrados se reflejan en el índice
+    	Libro soledad = new Libro();
+    	soledad.setTitulo("Cien años de soledad");
+    	soledad.setAutor("Gabriel García Márquez");
+    	int idSoledad = libroDAO.insertarLibro(soledad);
+    	assertEquals(idSoledad, indice.buscar("cien anos", 10).get(0).getIdLibro());
+    	soledad.setTitulo("El otoño del patriarca");
+    	libroDAO.actualizarLibro(soledad);
+    	assertTrue(indice.buscar("soledad", 10).isEmpty());
+    	assertEquals(idSoledad, indice.buscar("otono patriarca", 10).get(0).getIdLibro());
+    	libroDAO.borrarLibro(idSoledad);
+    	assertTrue(indice.buscar("patriarca", 10).isEmpty());
+    	assertEquals(1, indice.buscar("gabriel", 10).size());
+    	assertEquals(2, indice.getNumLibros());
+    }
+    @Test
+    //Prueba del índice sin base de datos: los libros se indexan directamente. El tiempo de las
+    //búsquedas se mide en PAC_Benchmarks (BusquedaLibrosBenchmark)
+    public void testBusquedaMuchosLibros() {
+    	IndiceTextoLibros indice = new IndiceTextoLibros();
+    	Random aleatorio = new Random(42);
+    	int numLibros = 30000;
+    	for (int i = 1; i <= numLibros; i++) {
+    		//Una palabra muy frecuente en el 10% de los títulos y el resto de un vocabulario de 20.000 palabras
+    		String titulo = (i % 10 == 0 ? "Historia " : "") + "palabra" + aleatorio.nextInt(20000) + " palabra"
+    				+ aleatorio.nextInt(20000) + " palabra" + aleatorio.nextInt(20000);
+    		indice.indexar(i, titulo, "Autor" + aleatorio.nextInt(2000));
+    	}
+    	assertEquals(numLibros, indice.getNumLibros());
+    	int consultas = 2000;
+    	long encontrados = 0;
+    	for (int i = 0; i < consultas; i++) {
+    		String consulta = i % 2 == 0 ? "historia palabra" + aleatorio.nextInt(20000)
+    				: "palabra" + aleatorio.nextInt(20000) + " autor" + aleatorio.nextInt(2000);
+    		encontrados += indice.buscar(consulta, 10).size();
+    	}
+    	assertTrue(encontrados > 0);
+    	//La palabra más frecuente devuelve solo el número máximo de resultados
+    	assertEquals(10, indice.buscar("historia", 10).size());
+    }
+    @Test
+    public void testAutocompletarTitulos() {
+    	List<Libro> libros = new ArrayList<>();
+    	for (String titulo : Arrays.asList("Cien años de soledad", "Ciencia ficción", "El amor en los tiempos del cólera")) {
+    		Libro libro = new Libro();
+    		libro.setTitulo(titulo);
+    		libros.add(libro);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	Autocompletado autocompletado = Autocompletado.construir(sessionFactory, 1024 * 1024);
+    	assertEquals(Arrays.asList("Cien años de soledad", "Ciencia ficción"), textos(autocompletado.sugerirTitulos("cien", 10)));
+    	assertEquals(Arrays.asList("Cien años de soledad"), textos(autocompletado.sugerirTitulos("Cien A", 10)));
+    	assertEquals(Arrays.asList("Cien años de soledad"), textos(autocompletado.sugerirTitulos("sol", 10)));
+    	assertEquals(Arrays.asList("El amor en los tiempos del cólera"), textos(autocompletado.sugerirTitulos("colera", 10)));
+    	//Las inserciones por lotes también se notifican
+    	Libro nuevo = new Libro();
+    	nuevo.setTitulo("Cielo abierto");
+    	libroDAO.insertarLibros(Arrays.asList(nuevo));
+    	assertEquals(Arrays.asList("Cielo abierto", "Cien años de soledad", "Ciencia ficción"),
+    			textos(autocompletado.sugerirTitulos("cie", 10)));
+    }
+    @Test
+    public void testMemoriaAutocompletado() {
+    	//Con poca memoria solo se indexan los títulos que caben, y al quitarlos se libera
+    	IndicePrefijos pequeno = new IndicePrefijos(10000);
+    	for (int i = 1; i <= 1000; i++) {
+    		pequeno.anadir(i, "Título de prueba número " + i);
+    	}
+    	assertTrue(pequeno.getDescartados() > 0);
+    	assertTrue(pequeno.getMemoriaUsada() <= pequeno.getMemoriaMaxima());
+    	assertEquals(1000, pequeno.getNumElementos() + pequeno.getDescartados());
+    	for (int i = 1; i <= 1000; i++) {
+    		pequeno.eliminar(i);
+    	}
+    	assertEquals(0, pequeno.getMemoriaUsada());
+    	//Sin límite de memoria se indexan todos los títulos. El tiempo de las sugerencias se mide en
+    	//PAC_Benchmarks (AutocompletadoBenchmark)
+    	IndicePrefijos indice = new IndicePrefijos(Long.MAX_VALUE);
+    	Random aleatorio = new Random(7);
+    	int numTitulos = 20000;
+    	for (int i = 1; i <= numTitulos; i++) {
+    		indice.anadir(i, "palabra" + aleatorio.nextInt(50000) + " de la palabra" + aleatorio.nextInt(50000));
+    	}
+    	assertEquals(numTitulos, indice.getNumElementos());
+    	assertEquals(0, indice.getDescartados());
+    	long encontradas = 0;
+    	for (int i = 0; i < 1000; i++) {
+    		encontradas += indice.sugerir("palabra" + aleatorio.nextInt(5000), 10).size();
+    	}
+    	assertTrue(encontradas > 0);
+    	assertEquals(10, indice.sugerir("palabra", 10).size());
+    }
+    @Test
+    public void testCargaAutocompletadoConCambios() {
+    	//Los textos leídos durante la carga no sustituyen los cambios recibidos mientras tanto
+    	IndicePrefijos indice = new IndicePrefijos(Long.MAX_VALUE);
+    	indice.iniciarCarga();
+    	indice.anadir(1, "Título nuevo");
+    	indice.eliminar(2);
+    	indice.anadirLeido(1, "Título antiguo");
+    	indice.anadirLeido(2, "Libro borrado");
+    	indice.anadirLeido(3, "Libro sin cambios");
+    	indice.terminarCarga();
+    	assertEquals(Arrays.asList("Título nuevo"), textos(indice.sugerir("titulo", 10)));
+    	assertTrue(indice.sugerir("libro borrado", 10).isEmpty());
+    	assertEquals(Arrays.asList("Libro sin cambios"), textos(indice.sugerir("libro", 10)));
+    	//Terminada la carga, los textos leídos vuelven a sustituir a los anteriores
+    	indice.anadirLeido(1, "Título corregido");
+    	assertEquals(Arrays.asList("Título corregido"), textos(indice.sugerir("titulo", 10)));
+    }
+
+    private static List<String> textos(List<Sugerencia> sugerencias) {
+    	return sugerencias.stream().map(Sugerencia::getTexto).collect(Collectors.toList());
+    }
+    @Test
+    public void testMapaDisponibilidad() {
+    	LectorDAO lectorDAO = new LectorDAO(session);
+    	PrestamoDAO prestamoDAO = new PrestamoDAO(session);
+    	List<Integer> ids = new ArrayList<>();
+    	for (int i = 0; i < 5; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libro.setDisponible(i < 4);
+    		ids.add(libroDAO.insertarLibro(libro));
+    	}
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	MapaDisponibilidad mapa = MapaDisponibilidad.construir(sessionFactory);
+    	assertEquals(4, mapa.contarDisponibles());
+    	assertFalse(mapa.estaDisponible(ids.get(4)));
+    	assertFalse(mapa.estaDisponible(-1));
+    	assertEquals(ids.subList(0, 2), mapa.obtenerDisponibles(0, 2));
+    	assertEquals(ids.subList(2, 4), mapa.obtenerDisponibles(ids.get(1), 10));
+    	//Préstamo, devolución, modificación y borrado se reflejan sin consultar la base de datos
+    	prestamoDAO.prestar(ids.get(0), idLector);
+    	assertFalse(mapa.estaDisponible(ids.get(0)));
+    	prestamoDAO.devolver(Arrays.asList(ids.get(0)), null);
+    	assertTrue(mapa.estaDisponible(ids.get(0)));
+    	Libro libro = libroDAO.obtenerLibro(ids.get(4));
+    	libro.setDisponible(true);
+    	libroDAO.actualizarLibro(libro);
+    	assertTrue(mapa.estaDisponible(ids.get(4)));
+    	libroDAO.borrarLibro(ids.get(3));
+    	assertFalse(mapa.estaDisponible(ids.get(3)));
+    	prestamoDAO.prestar(ids.get(1), idLector);
+    	assertEquals(3, mapa.contarDisponibles());
+    	//Al borrar un lector sus libros pendientes vuelven a estar disponibles
+    	lectorDAO.borrarLector(idLector);
+    	assertTrue(mapa.estaDisponible(ids.get(1)));
+    	assertEquals(libroDAO.contarLibrosDisponibles(), mapa.contarDisponibles());
+    	//Un cambio hecho fuera de los DAO se corrige reconstruyendo el mapa
+    	Session otra = sessionFactory.openSession();
+    	Transaction tx = otra.beginTransaction();
+    	otra.createQuery("UPDATE Libro l SET l.disponible = false").executeUpdate();
+    	tx.commit();
+    	otra.close();
+    	assertEquals(4, mapa.contarDisponibles());
+    	assertEquals(0, mapa.reconstruir(sessionFactory));
+    	assertTrue(mapa.obtenerDisponibles(0, 10).isEmpty());
+    }
+    @Test
+    public void testHistogramaLatencias() {
+    	//Latencias de 1 a 1000 microsegundos: los percentiles tienen un error máximo del 12,5%
+    	HistogramaLatencias histograma = new HistogramaLatencias();
+    	for (int i = 1; i <= 1000; i++) {
+    		histograma.registrar(i * 1000L, i % 100 == 0);
+    	}
+    	assertEquals(1000, histograma.getLlamadas());
+    	assertEquals(10, histograma.getErrores());
+    	assertEquals(0.5, histograma.getP50Millis(), 0.5 * 0.125);
+    	assertEquals(0.99, histograma.getP99Millis(), 0.99 * 0.125);
+    	assertEquals(1.0, histograma.getMaximoMillis(), 0.0);
+    	assertEquals(0.5005, histograma.getMediaMillis(), 0.0001);
+    	assertEquals(0, new HistogramaLatencias().getP99Millis(), 0.0);
+    }
+    @Test
+    public void testMetricasDAOyJMX() throws Exception {
+    	MetricasDAO metricas = MetricasDAO.de(sessionFactory);
+    	metricas.reiniciar();
+    	for (int i = 0; i < 20; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libroDAO.insertarLibro(libro);
+    	}
+    	libroDAO.contarLibros();
+    	//Un libro que no existe provoca un conflicto de versión, que cuenta como error
+    	Libro inexistente = new Libro();
+    	inexistente.setIdLibro(-1);
+    	try {
+    		libroDAO.actualizarLibro(inexistente);
+    		fail("Debería lanzar ConflictoConcurrenciaException");
+    	} catch (ConflictoConcurrenciaException e) {
+    	}
+    	//Un error capturado dentro del método también cuenta: el libro y el lector no están guardados
+    	assertEquals(-1, new PrestamoDAO(sessionFactory).insertarPrestamo(new Libro(), new Lector()));
+    	assertEquals(20, metricas.llamadas("LibroDAO.insertarLibro"));
+    	assertEquals(0, metricas.errores("LibroDAO.insertarLibro"));
+    	assertEquals(1, metricas.errores("LibroDAO.actualizarLibro"));
+    	assertEquals(1, metricas.errores("PrestamoDAO.insertarPrestamo"));
+    	assertEquals(1, metricas.llamadas("LibroDAO.contarLibros"));
+    	HistogramaLatencias histograma = metricas.getHistograma("LibroDAO.insertarLibro");
+    	assertTrue(histograma.getP50Millis() > 0);
+    	assertTrue(histograma.getP50Millis() <= histograma.getP99Millis());
+    	assertTrue(histograma.getP99Millis() <= histograma.getMaximoMillis());
+    	//Las métricas y las estadísticas de Hibernate pueden leerse por JMX
+    	MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+    	ObjectName nombreMetricas = new ObjectName("biblioteca:type=MetricasDAO,name=\"biblioteca\"");
+    	assertEquals(23L, servidor.getAttribute(nombreMetricas, "LlamadasTotales"));
+    	assertEquals(20L, servidor.invoke(nombreMetricas, "llamadas", new Object[] { "LibroDAO.insertarLibro" },
+    			new String[] { String.class.getName() }));
+    	ObjectName nombreHibernate = new ObjectName("biblioteca:type=EstadisticasHibernate,name=\"biblioteca\"");
+    	assertTrue((Long) servidor.getAttribute(nombreHibernate, "EntidadesInsertadas") >= 20);
+    	assertTrue((Long) servidor.getAttribute(nombreHibernate, "ConsultasEjecutadas") > 0);
+    	//Volcado a un archivo bajo demanda
+    	File archivo = File.createTempFile("metricas", ".txt");
+    	archivo.deleteOnExit();
+    	servidor.invoke(nombreMetricas, "volcar", new Object[] { archivo.getPath() }, new String[] { String.class.getName() });
+    	String volcado = new String(Files.readAllBytes(archivo.toPath()), StandardCharsets.UTF_8);
+    	assertTrue(volcado.contains("LibroDAO.insertarLibro | Llamadas: 20 | Errores: 0"));
+    	//Desactivadas desde JMX, las llamadas no se miden
+    	servidor.setAttribute(nombreMetricas, new Attribute("Activas", false));
+    	libroDAO.contarLibros();
+    	assertEquals(1, metricas.llamadas("LibroDAO.contarLibros"));
+    	metricas.setActivas(true);
+    }
 }
\ No newline at end of file
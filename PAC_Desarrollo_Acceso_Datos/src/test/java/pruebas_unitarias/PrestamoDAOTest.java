@@ -1,38 +1,66 @@
 package pruebas_unitarias;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import data_access_object.EstadisticasCache;
 import data_access_object.LectorDAO;
 import data_access_object.LibroDAO;
+import data_access_object.MetricasDAO;
 import data_access_object.PrestamoDAO;
+import data_access_object.ResultadoDevolucion;
+import data_access_object.ResultadoPrestamo;
+import data_model.FilaPrestamo;
 import data_model.Lector;
 import data_model.Libro;
 import data_model.Prestamo;
 
 public class PrestamoDAOTest {
-    private SessionFactory sessionFactory;
+    private static SessionFactory sessionFactory;
     private Session session;
     private PrestamoDAO prestamoDAO;
     private LectorDAO lectorDAO;
     private LibroDAO libroDAO;
     
+    @BeforeClass
+    public static void crearSessionFactory() {
+        // Una única SessionFactory para todas las pruebas de la clase
+        sessionFactory = BaseDatosPruebas.crearSessionFactory();
+    }
+
+    @AfterClass
+    public static void cerrarSessionFactory() {
+        sessionFactory.close();
+    }
+
     @Before
     public void setUp() throws Exception {
-        // Configurar la sesión de Hibernate
-        Configuration configuration = new Configuration().configure();
-        sessionFactory = configuration.buildSessionFactory();
+        // Partimos de una base de datos vacía y abrimos la sesión de Hibernate
+        BaseDatosPruebas.vaciar(sessionFactory);
         session = sessionFactory.openSession();
 
         // Crear los objetos DAO con la sesión de prueba. Necesitaremos
@@ -46,7 +74,6 @@ public class PrestamoDAOTest {
     public void tearDown() throws Exception {
         // Cerrar la sesión de Hibernate
         session.close();
-        sessionFactory.close();
     }
     
     @Test
@@ -143,6 +170,431 @@ public class PrestamoDAOTest {
     	//Comprobamos que el prestamo obtenido con el metodo anterior tenga el mismo id
     	//que el prestamo insertado en la base de datos.
     	assertEquals(idPrestamo, prestamo.getIdPrestamo());
-    	
+    	//Un libro sin préstamos pendientes no es un error: devuelve null y no cuenta en las métricas
+    	prestamoDAO.devolver(Collections.singletonList(idLibro), LocalDate.now());
+    	MetricasDAO metricas = MetricasDAO.de(sessionFactory);
+    	long errores = metricas.errores("PrestamoDAO.obtenerPrestamoPorLibro");
+    	assertNull(prestamoDAO.obtenerPrestamoPorLibro(idLibro));
+    	assertEquals(errores, metricas.errores("PrestamoDAO.obtenerPrestamoPorLibro"));
+    }
+
+    @Test
+    public void testInsertarPrestamos() {
+    	//Insertamos un lector y varios libros para prestárselos en una sola llamada
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	List<Prestamo> prestamos = new ArrayList<>();
+    	for (int i = 0; i < 10; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libroDAO.insertarLibro(libro);
+    		prestamos.add(new Prestamo(libro, lector));
+    	}
+    	List<Integer> ids = prestamoDAO.insertarPrestamos(prestamos);
+    	//Todos los préstamos se han insertado y aparecen en el historial del lector
+    	assertEquals(10, ids.size());
+    	assertEquals(10, prestamoDAO.obtenerHistorialPrestamos(idLector).size());
+    }
+
+    @Test
+    public void testObtenerPrestamosPaginados() {
+    	//Insertamos un lector, un libro y dos préstamos
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	lectorDAO.insertarLector(lector);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro");
+    	libroDAO.insertarLibro(libro);
+    	int idPrestamo1 = prestamoDAO.insertarPrestamo(libro, lector);
+    	//Los préstamos nuevos vencen DIAS_PRESTAMO días después de la fecha de préstamo
+    	assertEquals(LocalDate.now().plusDays(Prestamo.DIAS_PRESTAMO), prestamoDAO.obtenerPrestamo(idPrestamo1).getFechaVencimiento());
+    	int idPrestamo2 = prestamoDAO.insertarPrestamo(libro, lector);
+    	//Pedimos la página que empieza justo antes del primer préstamo
+    	List<Prestamo> pagina = prestamoDAO.obtenerPrestamos(idPrestamo1 - 1, 2);
+    	assertEquals(2, pagina.size());
+    	assertEquals(idPrestamo1, pagina.get(0).getIdPrestamo());
+    	assertEquals(idPrestamo2, pagina.get(1).getIdPrestamo());
+    	//Los préstamos de la página traen su libro y lector cargados, por lo que pueden mostrarse
+    	assertEquals("Libro", pagina.get(0).getLibro().getTitulo());
+    	assertNotNull(pagina.get(1).toString());
+    }
+    @Test
+    public void testObtenerPrestamoModoSessionFactory() {
+    	//Con una SessionFactory la sesión se cierra tras cada operación, así que el libro y el
+    	//lector del préstamo deben poder leerse después
+    	PrestamoDAO prestamoDAOFactoria = new PrestamoDAO(sessionFactory);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro de prueba");
+    	libroDAO.insertarLibro(libro);
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector de prueba");
+    	lectorDAO.insertarLector(lector);
+    	int idPrestamo = prestamoDAOFactoria.insertarPrestamo(libro, lector);
+    	Prestamo prestamo = prestamoDAOFactoria.obtenerPrestamo(idPrestamo);
+    	assertNotNull(prestamo);
+    	assertEquals("Libro de prueba", prestamo.getLibro().getTitulo());
+    	assertEquals("Lector de prueba", prestamo.getLector().getNombre());
+    	assertEquals(1, prestamoDAOFactoria.obtenerHistorialPrestamos(lector.getIdLector()).size());
+    	assertNotNull(prestamoDAOFactoria.obtenerPrestamoPorLibro(libro.getIdLibro()).getLector().toString());
+    }
+    @Test
+    /* Comprueba con EXPLAIN que las consultas por libro y por lector utilizan los índices
+       compuestos de la tabla prestamo en lugar de recorrerla completa. */
+    public void testPlanesUsanIndices() {
+    	List<Libro> libros = new ArrayList<>();
+    	List<Lector> lectores = new ArrayList<>();
+    	for (int i = 0; i < 20; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libros.add(libro);
+    		Lector lector = new Lector();
+    		lector.setNombre("Lector " + i);
+    		lectores.add(lector);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	lectorDAO.insertarLectores(lectores);
+    	List<Prestamo> prestamos = new ArrayList<>();
+    	for (int i = 0; i < 400; i++) {
+    		Prestamo prestamo = new Prestamo(libros.get(i % 20), lectores.get(i % 20));
+    		//Solo el último préstamo de cada libro sigue abierto
+    		if (i < 380) {
+    			prestamo.setFechaDevolucion(LocalDate.now());
+    		}
+    		prestamos.add(prestamo);
+    	}
+    	prestamoDAO.insertarPrestamos(prestamos);
+    	int idLibro = libros.get(3).getIdLibro();
+    	int idLector = lectores.get(3).getIdLector();
+    	//obtenerPrestamoPorLibro
+    	assertTrue(plan("SELECT * FROM biblioteca.prestamo WHERE id_libro_fk = " + idLibro
+    			+ " AND fecha_devolucion IS NULL").contains("idx_prestamo_libro_devolucion"));
+    	//librosActualmentePrestadosLector
+    	assertTrue(plan("SELECT * FROM biblioteca.prestamo WHERE id_lector_fk = " + idLector
+    			+ " AND fecha_devolucion IS NULL").contains("idx_prestamo_lector_devolucion"));
+    	//obtenerHistorialPrestamos: puede usar el índice compuesto o el de la clave ajena, que
+    	//algunas bases de datos crean por su cuenta, pero nunca recorrer la tabla completa
+    	assertFalse(recorreTablaCompleta(plan("SELECT * FROM biblioteca.prestamo WHERE id_lector_fk = " + idLector)));
+    }
+
+    //Indica si el plan recorre la tabla completa (tipo ALL en MySQL, tableScan en H2)
+    private boolean recorreTablaCompleta(String plan) {
+    	return plan.contains(", all,") || plan.contains("tablescan");
+    }
+
+    //Devuelve en minúsculas el texto completo del plan de ejecución de una consulta SQL
+    private String plan(String sql) {
+    	StringBuilder plan = new StringBuilder();
+    	for (Object fila : session.createNativeQuery("EXPLAIN " + sql).getResultList()) {
+    		plan.append(fila instanceof Object[] ? Arrays.toString((Object[]) fila) : String.valueOf(fila)).append('\n');
+    	}
+    	return plan.toString().toLowerCase();
+    }
+    @Test
+    /* Comprueba que el número de sentencias para listar préstamos no depende del número de
+       préstamos: el libro y el lector llegan en la misma consulta y no se cargan uno a uno. */
+    public void testListarPrestamosSinConsultasAdicionales() {
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	assertEquals(sentenciasAlMostrar(() -> prestamoDAO.obtenerHistorialPrestamos(idLector), lector, 2),
+    			sentenciasAlMostrar(() -> prestamoDAO.obtenerHistorialPrestamos(idLector), lector, 20));
+    	assertEquals(sentenciasAlMostrar(() -> prestamoDAO.obtenerPrestamos(), lector, 2),
+    			sentenciasAlMostrar(() -> prestamoDAO.obtenerPrestamos(), lector, 20));
+    	assertEquals(1, sentenciasAlMostrar(() -> prestamoDAO.obtenerHistorialPrestamos(idLector), lector, 0));
+    }
+
+    /* Inserta nuevos préstamos de libros distintos al lector y devuelve el número de sentencias
+       ejecutadas al obtener la lista de préstamos y mostrarlos, partiendo de las cachés vacías. */
+    private long sentenciasAlMostrar(Supplier<List<Prestamo>> consulta, Lector lector,
+    		int nuevosPrestamos) {
+    	for (int i = 0; i < nuevosPrestamos; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libroDAO.insertarLibro(libro);
+    		prestamoDAO.insertarPrestamo(libro, lector);
+    	}
+    	session.clear();
+    	sessionFactory.getCache().evictAllRegions();
+    	Statistics estadisticas = sessionFactory.getStatistics();
+    	long sentenciasAntes = estadisticas.getPrepareStatementCount();
+    	for (Prestamo prestamo : consulta.get()) {
+    		assertNotNull(prestamo.toString());
+    	}
+    	return estadisticas.getPrepareStatementCount() - sentenciasAntes;
+    }
+    @Test
+    public void testRecorrerFilasPrestamos() {
+    	Lector lector = new Lector();
+    	lector.setNombre("Ana");
+    	lector.setApellidos("García");
+    	lectorDAO.insertarLector(lector);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Niebla");
+    	libroDAO.insertarLibro(libro);
+    	int idPrestamo = prestamoDAO.insertarPrestamo(libro, lector);
+    	List<FilaPrestamo> filas = new ArrayList<>();
+    	assertEquals(1, prestamoDAO.recorrerFilasPrestamos(filas::add));
+    	FilaPrestamo fila = filas.get(0);
+    	assertEquals(idPrestamo, fila.getIdPrestamo());
+    	assertEquals("Niebla", fila.getTituloLibro());
+    	assertEquals("Ana", fila.getNombreLector());
+    	assertEquals("García", fila.getApellidosLector());
+    	assertNull(fila.getFechaDevolucion());
+    	assertTrue(fila.toString().contains("(Niebla)"));
+    	//La página de filas no carga entidades en la sesión
+    	session.clear();
+    	assertEquals(1, prestamoDAO.obtenerFilasPrestamos(0, 10).size());
+    	assertEquals(0, session.getStatistics().getEntityCount());
+    }
+    @Test
+    public void testContarYExistenPrestamos() {
+    	assertFalse(prestamoDAO.existenPrestamos());
+    	assertFalse(prestamoDAO.existenPrestamosPendientes());
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	Libro devuelto = new Libro();
+    	devuelto.setTitulo("Devuelto");
+    	int idDevuelto = libroDAO.insertarLibro(devuelto);
+    	Libro pendiente = new Libro();
+    	pendiente.setTitulo("Pendiente");
+    	int idPendiente = libroDAO.insertarLibro(pendiente);
+    	Prestamo prestamoDevuelto = new Prestamo(devuelto, lector);
+    	prestamoDevuelto.setFechaDevolucion(LocalDate.now());
+    	prestamoDAO.insertarPrestamos(List.of(prestamoDevuelto));
+    	assertTrue(prestamoDAO.existenPrestamos());
+    	assertFalse(prestamoDAO.existenPrestamosPendientes());
+    	assertFalse(prestamoDAO.existenPrestamosPendientesLector(idLector));
+    	int idPrestamo = prestamoDAO.insertarPrestamo(pendiente, lector);
+    	assertEquals(2, prestamoDAO.contarPrestamos());
+    	assertEquals(1, prestamoDAO.contarPrestamosPendientes());
+    	assertTrue(prestamoDAO.existePrestamo(idPrestamo));
+    	assertTrue(prestamoDAO.existenPrestamosPendientesLector(idLector));
+    	assertTrue(prestamoDAO.existePrestamoPendiente(idPendiente, idLector));
+    	assertFalse(prestamoDAO.existePrestamoPendiente(idDevuelto, idLector));
+    	assertFalse(prestamoDAO.existePrestamoPendiente(idPendiente, idLector + 1000));
+    }
+    @Test
+    public void testPrestar() {
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro");
+    	libro.setDisponible(true);
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	//Un lector inexistente no reserva el libro
+    	assertEquals(ResultadoPrestamo.LECTOR_DESCONOCIDO, prestamoDAO.prestar(idLibro, idLector + 1000));
+    	assertEquals(1, libroDAO.contarLibrosDisponibles());
+    	assertEquals(ResultadoPrestamo.REALIZADO, prestamoDAO.prestar(idLibro, idLector));
+    	assertTrue(prestamoDAO.existePrestamoPendiente(idLibro, idLector));
+    	assertEquals(0, libroDAO.contarLibrosDisponibles());
+    	//El libro ya está prestado, y un libro inexistente tampoco está disponible
+    	assertEquals(ResultadoPrestamo.LIBRO_NO_DISPONIBLE, prestamoDAO.prestar(idLibro, idLector));
+    	assertEquals(ResultadoPrestamo.LIBRO_NO_DISPONIBLE, prestamoDAO.prestar(idLibro + 1000, idLector));
+    	assertEquals(1, prestamoDAO.contarPrestamos());
+    	//La sesión compartida sigue pudiendo utilizarse tras el préstamo rechazado
+    	assertNotNull(lectorDAO.obtenerLector(idLector));
+    }
+    @Test
+    /* Muchos hilos intentan prestar a la vez los mismos 5 libros: cada libro solo puede
+       prestarse una vez y nunca debe quedar más de un préstamo abierto por libro. */
+    public void testPrestarConcurrente() throws Exception {
+    	PrestamoDAO prestamoDAOCompartido = new PrestamoDAO(sessionFactory);
+    	List<Lector> lectores = new ArrayList<>();
+    	for (int i = 0; i < 50; i++) {
+    		Lector lector = new Lector();
+    		lector.setNombre("Lector " + i);
+    		lectores.add(lector);
+    	}
+    	lectorDAO.insertarLectores(lectores);
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 5; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libro.setDisponible(true);
+    		libros.add(libro);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	ExecutorService hilos = Executors.newFixedThreadPool(32);
+    	List<Future<ResultadoPrestamo>> resultados = new ArrayList<>();
+    	for (int i = 0; i < 1000; i++) {
+    		int idLibro = libros.get(i % 5).getIdLibro();
+    		int idLector = lectores.get(i % 50).getIdLector();
+    		resultados.add(hilos.submit(() -> prestamoDAOCompartido.prestar(idLibro, idLector)));
+    	}
+    	Map<ResultadoPrestamo, Long> recuento = new EnumMap<>(ResultadoPrestamo.class);
+    	for (Future<ResultadoPrestamo> resultado : resultados) {
+    		recuento.merge(resultado.get(), 1L, Long::sum);
+    	}
+    	hilos.shutdown();
+    	assertEquals(Long.valueOf(5), recuento.get(ResultadoPrestamo.REALIZADO));
+    	assertEquals(Long.valueOf(995), recuento.get(ResultadoPrestamo.LIBRO_NO_DISPONIBLE));
+    	assertEquals(5, prestamoDAO.contarPrestamos());
+    	Map<Integer, Long> prestamosPorLibro = prestamoDAO.obtenerPrestamos().stream()
+    			.collect(Collectors.groupingBy(p -> p.getLibro().getIdLibro(), Collectors.counting()));
+    	assertEquals(5, prestamosPorLibro.size());
+    	assertTrue(prestamosPorLibro.values().stream().allMatch(n -> n == 1));
+    	assertEquals(0, libroDAO.contarLibrosDisponibles());
+    }
+    @Test
+    public void testPrestarTrasModificarLibro() {
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Título original");
+    	libro.setDisponible(true);
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	//La sesión compartida tiene el libro cargado y otra operación cambia su título
+    	libroDAO.obtenerLibro(idLibro);
+    	LibroDAO libroDAOFactoria = new LibroDAO(sessionFactory);
+    	Libro modificado = libroDAOFactoria.obtenerLibro(idLibro);
+    	modificado.setTitulo("Título nuevo");
+    	libroDAOFactoria.actualizarLibro(modificado);
+    	//El cambio de versión no impide el préstamo: solo se comprueba la disponibilidad
+    	assertEquals(ResultadoPrestamo.REALIZADO, prestamoDAO.prestar(idLibro, idLector));
+    	assertEquals(ResultadoPrestamo.LIBRO_NO_DISPONIBLE, prestamoDAO.prestar(idLibro, idLector));
+    	//La sesión compartida y la caché ya no tienen la copia anterior del libro
+    	Libro prestado = libroDAO.obtenerLibro(idLibro);
+    	assertFalse(prestado.isDisponible());
+    	assertEquals("Título nuevo", prestado.getTitulo());
+    	assertFalse(libroDAOFactoria.obtenerLibro(idLibro).isDisponible());
+    }
+    @Test
+    public void testDevolverConLibroDesactualizadoEnSesion() {
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	Libro libro = new Libro();
+    	libro.setTitulo("Libro");
+    	libro.setDisponible(true);
+    	int idLibro = libroDAO.insertarLibro(libro);
+    	//La sesión compartida tiene el libro como disponible y otro puesto lo presta
+    	libroDAO.obtenerLibro(idLibro);
+    	assertEquals(ResultadoPrestamo.REALIZADO, new PrestamoDAO(sessionFactory).prestar(idLibro, idLector));
+    	//La devolución con la sesión compartida marca el libro como disponible en la base de datos
+    	assertEquals(ResultadoDevolucion.DEVUELTO, prestamoDAO.devolver(Arrays.asList(idLibro), null).get(idLibro));
+    	assertTrue(new LibroDAO(sessionFactory).obtenerLibro(idLibro).isDisponible());
+    	assertTrue(libroDAO.obtenerLibro(idLibro).isDisponible());
+    	assertEquals(ResultadoPrestamo.REALIZADO, prestamoDAO.prestar(idLibro, idLector));
+    }
+    @Test
+    public void testPrestarConservaCacheLibros() {
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	int idLector = lectorDAO.insertarLector(lector);
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 2; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libro.setDisponible(true);
+    		libros.add(libro);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	int idPrestado = libros.get(0).getIdLibro();
+    	int idOtro = libros.get(1).getIdLibro();
+    	//Las lecturas guardan los dos libros en la caché de segundo nivel
+    	LibroDAO libroDAOFactoria = new LibroDAO(sessionFactory);
+    	libroDAOFactoria.obtenerLibro(idPrestado);
+    	libroDAOFactoria.obtenerLibro(idOtro);
+    	assertEquals(ResultadoPrestamo.REALIZADO, new PrestamoDAO(sessionFactory).prestar(idPrestado, idLector));
+    	//El préstamo solo invalida la entrada del libro prestado: el otro se sigue leyendo de la caché
+    	EstadisticasCache estadisticasCache = new EstadisticasCache(sessionFactory);
+    	long aciertos = estadisticasCache.getAciertos(EstadisticasCache.REGION_LIBRO);
+    	assertTrue(libroDAOFactoria.obtenerLibro(idOtro).isDisponible());
+    	assertEquals(aciertos + 1, estadisticasCache.getAciertos(EstadisticasCache.REGION_LIBRO));
+    	assertFalse(libroDAOFactoria.obtenerLibro(idPrestado).isDisponible());
+    }
+    @Test
+    public void testDevolverLote() {
+    	//Más libros que el tamaño de bloque de las cláusulas IN, prestados todos menos los 100 últimos
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	lectorDAO.insertarLector(lector);
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 1200; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libro.setDisponible(i >= 1100);
+    		libros.add(libro);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	prestamoDAO.insertarPrestamos(libros.subList(0, 1100).stream().map(l -> new Prestamo(l, lector))
+    			.collect(Collectors.toList()));
+    	//El primer libro tiene dos préstamos pendientes, que se cierran los dos sin provocar un conflicto
+    	prestamoDAO.insertarPrestamo(libros.get(0), lector);
+    	List<Integer> ids = libros.stream().map(Libro::getIdLibro).collect(Collectors.toList());
+    	//Un ID repetido y otro que no corresponde a ningún libro
+    	ids.add(ids.get(0));
+    	ids.add(-1);
+    	LocalDate fecha = LocalDate.of(2024, 3, 1);
+    	Map<Integer, ResultadoDevolucion> resultados = prestamoDAO.devolver(ids, fecha);
+    	assertEquals(1201, resultados.size());
+    	Map<ResultadoDevolucion, Long> recuento = resultados.values().stream()
+    			.collect(Collectors.groupingBy(r -> r, () -> new EnumMap<>(ResultadoDevolucion.class), Collectors.counting()));
+    	assertEquals(Long.valueOf(1100), recuento.get(ResultadoDevolucion.DEVUELTO));
+    	assertEquals(Long.valueOf(101), recuento.get(ResultadoDevolucion.SIN_PRESTAMO_PENDIENTE));
+    	assertEquals(ResultadoDevolucion.SIN_PRESTAMO_PENDIENTE, resultados.get(-1));
+    	assertEquals(0, prestamoDAO.contarPrestamosPendientes());
+    	assertEquals(1200, libroDAO.contarLibrosDisponibles());
+    	List<FilaPrestamo> filas = new ArrayList<>();
+    	prestamoDAO.recorrerFilasPrestamos(filas::add);
+    	assertTrue(filas.stream().allMatch(f -> fecha.equals(f.getFechaDevolucion())));
+    	//Repetir la devolución no modifica nada
+    	assertTrue(prestamoDAO.devolver(ids.subList(0, 10), null).values().stream()
+    			.allMatch(r -> r == ResultadoDevolucion.SIN_PRESTAMO_PENDIENTE));
+    }
+    @Test
+    public void testPrestamosVencidos() {
+    	//Un préstamo por libro, con vencimientos repartidos en 10 días y uno de cada cuatro ya devuelto
+    	Lector lector = new Lector();
+    	lector.setNombre("Lector");
+    	lectorDAO.insertarLector(lector);
+    	List<Libro> libros = new ArrayList<>();
+    	for (int i = 0; i < 400; i++) {
+    		Libro libro = new Libro();
+    		libro.setTitulo("Libro " + i);
+    		libros.add(libro);
+    	}
+    	libroDAO.insertarLibros(libros);
+    	LocalDate hoy = LocalDate.of(2024, 5, 20);
+    	List<Prestamo> prestamos = new ArrayList<>();
+    	for (int i = 0; i < 400; i++) {
+    		Prestamo prestamo = new Prestamo(libros.get(i), lector);
+    		prestamo.setFechaVencimiento(hoy.minusDays(i % 10));
+    		if (i % 4 == 0) {
+    			prestamo.setFechaDevolucion(hoy.minusDays(20));
+    		}
+    		prestamos.add(prestamo);
+    	}
+    	prestamoDAO.insertarPrestamos(prestamos);
+    	//Vencidos hoy: sin devolver y con vencimiento anterior a hoy (i % 10 != 0)
+    	long esperados = prestamos.stream().filter(p -> p.estaVencido(hoy)).count();
+    	assertEquals(280, esperados);
+    	assertEquals(esperados, prestamoDAO.contarPrestamosVencidos(hoy));
+    	assertEquals(0, prestamoDAO.contarPrestamosVencidos(hoy.minusDays(9)));
+    	//La consulta utiliza el índice de préstamos abiertos por fecha de vencimiento
+    	assertTrue(plan("SELECT * FROM biblioteca.prestamo WHERE fecha_devolucion IS NULL AND fecha_vencimiento < DATE '"
+    			+ hoy + "'").contains("idx_prestamo_devolucion_vencimiento"));
+    	//Se procesan en bloques de 25 en orden de vencimiento, devolviendo los libros de cada bloque:
+    	//la lectura de los bloques siguientes no salta ni repite ningún préstamo
+    	PrestamoDAO prestamoDAOFactoria = new PrestamoDAO(sessionFactory);
+    	List<FilaPrestamo> procesados = new ArrayList<>();
+    	List<Integer> tamanos = new ArrayList<>();
+    	long total = prestamoDAOFactoria.procesarPrestamosVencidos(hoy, 25, bloque -> {
+    		tamanos.add(bloque.size());
+    		procesados.addAll(bloque);
+    		prestamoDAOFactoria.devolver(bloque.stream().map(FilaPrestamo::getIdLibro).collect(Collectors.toList()), hoy);
+    	});
+    	assertEquals(esperados, total);
+    	assertEquals(esperados, procesados.stream().map(FilaPrestamo::getIdPrestamo).distinct().count());
+    	assertTrue(tamanos.stream().allMatch(n -> n <= 25));
+    	for (int i = 1; i < procesados.size(); i++) {
+    		assertFalse(procesados.get(i).getFechaVencimiento().isBefore(procesados.get(i - 1).getFechaVencimiento()));
+    	}
+    	assertEquals(0, prestamoDAO.contarPrestamosVencidos(hoy));
+    	assertEquals(0, prestamoDAOFactoria.procesarPrestamosVencidos(hoy, 25, bloque -> { }));
     }
 }